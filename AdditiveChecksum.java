@@ -0,0 +1,28 @@
+/**
+ * The original checksum: the sum of the sequence number, the ack number and
+ * each character of the payload.  Cheap, but blind to reordered characters.
+ */
+public class AdditiveChecksum implements PacketChecksum
+{
+    public int compute(int seqnum, int acknum, String payload)
+    {
+        int checksum = 0;
+        checksum += seqnum;
+        checksum += acknum;
+
+        for (int i = 0; i < payload.length(); i++)
+            checksum += payload.charAt(i);
+
+        return checksum;
+    }
+
+    public int getBits()
+    {
+        return 32;
+    }
+
+    public String getName()
+    {
+        return "additive";
+    }
+}
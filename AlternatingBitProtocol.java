@@ -0,0 +1,25 @@
+/**
+ * The alternating-bit protocol: stop-and-wait with a one bit sequence.
+ */
+public class AlternatingBitProtocol implements ProtocolFactory
+{
+    public String getName()
+    {
+        return "abp";
+    }
+
+    public String getVersion()
+    {
+        return "1";
+    }
+
+    public Sender createSender(ProtocolHost host, ProtocolConfig config)
+    {
+        return new AlternatingBitSender(host, config);
+    }
+
+    public Receiver createReceiver(ProtocolHost host, ProtocolConfig config)
+    {
+        return new AlternatingBitReceiver(host, config);
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The alternating-bit receiver.  Delivers a packet if it carries the
+ * expected bit and always ACKs the last packet delivered.
+ */
+public class AlternatingBitReceiver implements Receiver
+{
+    private static final int B = NetworkSimulator.B;
+    private static final int ACK = 1;
+
+    private final ProtocolHost mHost;
+    private final PacketCodec mCodec;
+    private final SequenceSpace mSpace;
+    private int mExpected;                  // Bit of the next packet to deliver
+
+    private long mNumberOfACK;
+    private long mPacketsTransmitted;
+    private long mCorruptPacketsReceived;
+
+    public AlternatingBitReceiver(ProtocolHost host, ProtocolConfig config)
+    {
+        mHost = host;
+        mSpace = new SequenceSpace(1);
+        mCodec = new PacketCodec(mSpace, config.createChecksum());
+    }
+
+    public void init()
+    {
+        mExpected = 0;
+        mNumberOfACK = 0;
+        mPacketsTransmitted = 0;
+        mCorruptPacketsReceived = 0;
+    }
+
+    public void input(Packet packet)
+    {
+        boolean corrupt = mCodec.isCorrupt(packet);
+
+        if (!corrupt && packet.getSeqnum() == mExpected)
+        {
+            mHost.toLayer5(B, packet.getPayload());
+            mExpected = mSpace.next(mExpected);
+            mNumberOfACK++;
+        }
+        else if (corrupt)
+        {
+            mCorruptPacketsReceived++;
+        }
+
+        // ACK the last packet delivered, which re-ACKs on damage or duplicates
+        mHost.toLayer3(B, mCodec.create(mSpace.previous(mExpected), ACK, "data"));
+        mPacketsTransmitted++;
+    }
+
+    // The receiver starts no timers
+    public void timerExpired(int tag)
+    {
+    }
+
+    // Data always goes straight up; the receive buffer is not supported
+    public int getBuffered()
+    {
+        return 0;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mExpected);
+        out.writeLong(mNumberOfACK);
+        out.writeLong(mPacketsTransmitted);
+        out.writeLong(mCorruptPacketsReceived);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mExpected = in.readInt();
+        mNumberOfACK = in.readLong();
+        mPacketsTransmitted = in.readLong();
+        mCorruptPacketsReceived = in.readLong();
+    }
+
+    public void report(Statistics statistics)
+    {
+        statistics.add("Number of packets transmitted", mPacketsTransmitted);
+        statistics.set("Number of ACK packets", mNumberOfACK);
+        statistics.add("Number of corrupt packets", mCorruptPacketsReceived);
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The alternating-bit (stop-and-wait) sender.  One packet is in flight at a
+ * time, numbered 0 or 1; messages that arrive while it is outstanding are
+ * dropped.
+ */
+public class AlternatingBitSender implements Sender
+{
+    private static final int A = NetworkSimulator.A;
+    private static final int ACK = 1;
+
+    private final double TIME_UNITS;
+
+    private final ProtocolHost mHost;
+    private final PacketCodec mCodec;
+    private final SequenceSpace mSpace;
+    private int mSequence;                  // Bit of the packet in flight, or of the next one
+    private boolean mWaiting;               // Whether a packet is waiting for its ACK
+    private Packet mOutstanding;            // The packet waiting for its ACK
+    private double mSendTime;               // When the outstanding packet was last sent
+
+    // Variables used for gathering statistics
+    private long mPacketsTransmitted;
+    private long mRetransmissions;
+    private long mCorruptPacketsReceived;
+    private long mTimeouts;
+    private double mTotalRTT;
+    private long mRTTCount;
+
+    public AlternatingBitSender(ProtocolHost host, ProtocolConfig config)
+    {
+        TIME_UNITS = config.getTimeout();
+        mHost = host;
+        mSpace = new SequenceSpace(1);
+        mCodec = new PacketCodec(mSpace, config.createChecksum());
+    }
+
+    public void init()
+    {
+        mSequence = 0;
+        mWaiting = false;
+        mOutstanding = null;
+
+        mPacketsTransmitted = 0;
+        mRetransmissions = 0;
+        mCorruptPacketsReceived = 0;
+        mTimeouts = 0;
+        mTotalRTT = 0;
+        mRTTCount = 0;
+    }
+
+    public boolean isReady()
+    {
+        return !mWaiting;
+    }
+
+    public int getOutstanding()
+    {
+        return mWaiting ? 1 : 0;
+    }
+
+    public long getRetransmissions()
+    {
+        return mRetransmissions;
+    }
+
+    public void output(Message message)
+    {
+        if (mWaiting)
+        {
+            FlightEvents.windowStall(mHost.getTime(), mSequence, mSequence, 1,
+                                     1, "waiting");
+            return;
+        }
+
+        mOutstanding = mCodec.create(mSequence, ACK, message.getData());
+        mWaiting = true;
+        mSendTime = mHost.getTime();
+
+        mHost.toLayer3(A, mOutstanding);
+        mHost.startTimer(A, TIME_UNITS);
+        mPacketsTransmitted++;
+    }
+
+    public void input(Packet packet)
+    {
+        if (mCodec.isCorrupt(packet))
+        {
+            mCorruptPacketsReceived++;
+            return;
+        }
+
+        // A duplicate ACK for the previous packet; let the timer resend
+        if (!mWaiting || packet.getSeqnum() != mSequence)
+        {
+            return;
+        }
+
+        double rtt = mHost.getTime() - mSendTime;
+        mTotalRTT += rtt;
+        mRTTCount++;
+        mHost.recordRtt(rtt);
+
+        mHost.stopTimer(A);
+        mWaiting = false;
+        mOutstanding = null;
+        mSequence = mSpace.next(mSequence);
+    }
+
+    public void timerInterrupt()
+    {
+        mTimeouts++;
+
+        if (!mWaiting)
+        {
+            return;
+        }
+
+        FlightEvents.retransmissionBurst(mHost.getTime(), mSpace.previous(mSequence),
+                                         mSpace.next(mSequence), 1);
+
+        mSendTime = mHost.getTime();
+        mHost.toLayer3(A, mOutstanding);
+        mHost.startTimer(A, TIME_UNITS);
+        mRetransmissions++;
+    }
+
+    // Only the single per-entity timer is used
+    public void timerExpired(int tag)
+    {
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mSequence);
+        out.writeBoolean(mWaiting);
+        if (mWaiting)
+        {
+            mOutstanding.write(out);
+        }
+        out.writeDouble(mSendTime);
+
+        out.writeLong(mPacketsTransmitted);
+        out.writeLong(mRetransmissions);
+        out.writeLong(mCorruptPacketsReceived);
+        out.writeLong(mTimeouts);
+        out.writeDouble(mTotalRTT);
+        out.writeLong(mRTTCount);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mSequence = in.readInt();
+        mWaiting = in.readBoolean();
+        mOutstanding = mWaiting ? Packet.read(in) : null;
+        mSendTime = in.readDouble();
+
+        mPacketsTransmitted = in.readLong();
+        mRetransmissions = in.readLong();
+        mCorruptPacketsReceived = in.readLong();
+        mTimeouts = in.readLong();
+        mTotalRTT = in.readDouble();
+        mRTTCount = in.readLong();
+    }
+
+    public void report(Statistics statistics)
+    {
+        int headerBits = mCodec.getHeaderBits();
+
+        statistics.add("Number of packets transmitted", mPacketsTransmitted);
+        statistics.set("Number of re-transmissions", mRetransmissions);
+        statistics.add("Number of corrupt packets", mCorruptPacketsReceived);
+        statistics.set("Re-transmits due to corrupt or lost packets", mTimeouts);
+        statistics.set("Header bits per packet", headerBits);
+        statistics.set("Header overhead of a full packet",
+                headerBits / (double) (headerBits + 8 * NetworkSimulator.MAXDATASIZE));
+        statistics.set("Average RTT", mRTTCount > 0 ? (mTotalRTT / (double) mRTTCount) : 0.0);
+    }
+}
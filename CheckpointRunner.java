@@ -0,0 +1,66 @@
+import java.io.IOException;
+
+/**
+ * Warms a run up to a point in simulated time and checkpoints it, or
+ * resumes a checkpoint, optionally with a different channel, and runs it
+ * to the end.
+ *
+ * Usage: java CheckpointRunner save <file> <time> <messages> <loss>
+ *                              <corrupt> <delay> <seed> [protocol]
+ *        java CheckpointRunner resume <file> [loss] [corrupt]
+ */
+public class CheckpointRunner
+{
+    public final static void main(String[] argv) throws IOException
+    {
+        if (argv.length >= 8 && argv[0].equals("save"))
+        {
+            double until = Double.parseDouble(argv[2]);
+            NetworkSimulator simulator = new NetworkSimulator(
+                Long.parseLong(argv[3]), Double.parseDouble(argv[4]),
+                Double.parseDouble(argv[5]), Double.parseDouble(argv[6]),
+                0, Long.parseLong(argv[7]));
+            if (argv.length > 8)
+            {
+                simulator.setProtocol(argv[8]);
+            }
+
+            simulator.start();
+            simulator.runUntil(until);
+            simulator.saveCheckpoint(argv[1]);
+
+            System.out.println("Saved " + argv[1] + " at time " +
+                               simulator.getTime() + " after " +
+                               simulator.getDeliveredMessages() +
+                               " deliveries");
+        }
+        else if (argv.length >= 2 && argv[0].equals("resume"))
+        {
+            // The constructor arguments are replaced by the checkpoint's
+            NetworkSimulator simulator =
+                new NetworkSimulator(1, 0.0, 0.0, 1.0, 0, 1);
+            simulator.restoreCheckpoint(argv[1]);
+
+            if (argv.length > 2)
+            {
+                simulator.setLossProbability(Double.parseDouble(argv[2]));
+            }
+            if (argv.length > 3)
+            {
+                simulator.setCorruptProbability(Double.parseDouble(argv[3]));
+            }
+
+            simulator.resume();
+            simulator.printStatistics();
+        }
+        else
+        {
+            System.out.println("Usage: java CheckpointRunner save <file> <time> " +
+                               "<messages> <loss> <corrupt> <delay> <seed> " +
+                               "[protocol]");
+            System.out.println("       java CheckpointRunner resume <file> " +
+                               "[loss] [corrupt]");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * State that is written to and read back from a simulator checkpoint.
+ * restore() is called on a freshly constructed and initialized object and
+ * must leave it exactly as it was when save() was called.
+ */
+public interface Checkpointable
+{
+    public void save(DataOutput out) throws IOException;
+    public void restore(DataInput in) throws IOException;
+}
@@ -0,0 +1,167 @@
+import java.util.Random;
+
+/**
+ * Measures the per-packet cost of each PacketChecksum and how many corrupted
+ * packets each one fails to detect.
+ *
+ * Usage: java ChecksumBenchmark [trials] [seed]
+ */
+public class ChecksumBenchmark
+{
+    private static final int PACKETS = 4096;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int TIMED_ROUNDS = 1000;
+
+    public final static void main(String[] argv)
+    {
+        long trials = argv.length > 0 ? Long.parseLong(argv[0]) : 10000000L;
+        long seed = argv.length > 1 ? Long.parseLong(argv[1]) : 1L;
+
+        PacketChecksum[] checksums = { new AdditiveChecksum(),
+                                       new InternetChecksum(),
+                                       new Crc32cChecksum() };
+
+        // Build a fixed set of packets so every checksum sees the same input
+        Random rand = new Random(seed);
+        int[] seqnums = new int[PACKETS];
+        int[] acknums = new int[PACKETS];
+        String[] payloads = new String[PACKETS];
+        for (int i = 0; i < PACKETS; i++)
+        {
+            seqnums[i] = rand.nextInt(1 << 16);
+            acknums[i] = 1;
+            payloads[i] = randomPayload(rand);
+        }
+
+        System.out.println("checksum   bits  ns/packet  channel-undetected" +
+                           "  swap-undetected  (" + trials + " trials each)");
+
+        for (PacketChecksum checksum : checksums)
+        {
+            double nanos = timeChecksum(checksum, seqnums, acknums, payloads);
+            long channelMisses = countChannelMisses(checksum, trials, seed);
+            long swapMisses = countSwapMisses(checksum, trials, seed);
+
+            System.out.println(String.format("%-10s %4d  %9.2f  %18d  %15d",
+                               checksum.getName(), checksum.getBits(), nanos,
+                               channelMisses, swapMisses));
+        }
+    }
+
+    private static String randomPayload(Random rand)
+    {
+        char[] data = new char[1 + rand.nextInt(NetworkSimulator.MAXDATASIZE)];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (char)('a' + rand.nextInt(26));
+        }
+
+        return new String(data);
+    }
+
+    private static double timeChecksum(PacketChecksum checksum, int[] seqnums,
+                                       int[] acknums, String[] payloads)
+    {
+        int sink = 0;
+        for (int r = 0; r < WARMUP_ROUNDS; r++)
+        {
+            for (int i = 0; i < PACKETS; i++)
+            {
+                sink += checksum.compute(seqnums[i], acknums[i], payloads[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int r = 0; r < TIMED_ROUNDS; r++)
+        {
+            for (int i = 0; i < PACKETS; i++)
+            {
+                sink += checksum.compute(seqnums[i], acknums[i], payloads[i]);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Keep the JIT from discarding the loop
+        if (sink == 42)
+        {
+            System.out.print("");
+        }
+
+        return elapsed / (double)(TIMED_ROUNDS * (long)PACKETS);
+    }
+
+    /* Corrupts packets with the simulator's own channel model */
+    private static long countChannelMisses(PacketChecksum checksum, long trials,
+                                           long seed)
+    {
+        Random rand = new Random(seed);
+        long misses = 0;
+
+        for (long t = 0; t < trials; t++)
+        {
+            Packet original = new Packet(rand.nextInt(1 << 16), 1, 0,
+                                         randomPayload(rand));
+            int expected = checksum.compute(original.getSeqnum(),
+                                            original.getAcknum(),
+                                            original.getPayload());
+            Packet damaged = new Packet(original);
+            NetworkSimulator.corrupt(damaged, rand);
+
+            if (isMiss(checksum, original, damaged, expected))
+            {
+                misses++;
+            }
+        }
+
+        return misses;
+    }
+
+    /* Swaps two payload characters, which a plain sum cannot see */
+    private static long countSwapMisses(PacketChecksum checksum, long trials,
+                                        long seed)
+    {
+        Random rand = new Random(seed);
+        long misses = 0;
+
+        for (long t = 0; t < trials; t++)
+        {
+            Packet original = new Packet(rand.nextInt(1 << 16), 1, 0,
+                                         randomPayload(rand));
+            int expected = checksum.compute(original.getSeqnum(),
+                                            original.getAcknum(),
+                                            original.getPayload());
+
+            char[] data = original.getPayload().toCharArray();
+            int i = rand.nextInt(data.length);
+            int j = rand.nextInt(data.length);
+            char c = data[i];
+            data[i] = data[j];
+            data[j] = c;
+
+            Packet damaged = new Packet(original);
+            damaged.setPayload(new String(data));
+
+            if (isMiss(checksum, original, damaged, expected))
+            {
+                misses++;
+            }
+        }
+
+        return misses;
+    }
+
+    private static boolean isMiss(PacketChecksum checksum, Packet original,
+                                  Packet damaged, int expected)
+    {
+        // Damage that left the packet unchanged is not a corruption
+        if (original.getSeqnum() == damaged.getSeqnum() &&
+            original.getAcknum() == damaged.getAcknum() &&
+            original.getPayload().equals(damaged.getPayload()))
+        {
+            return false;
+        }
+
+        return checksum.compute(damaged.getSeqnum(), damaged.getAcknum(),
+                                damaged.getPayload()) == expected;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Packs small application messages into shared packets, Nagle style.  Each
+ * message becomes a frame of one length character followed by its data,
+ * and as many whole frames as fit go into one payload.  The receiving side
+ * walks the frames with frameLength() before handing them to layer 5.
+ *
+ * The creation time of every pending message is kept, in a ring of
+ * primitives, so that a partly filled packet is not held back too long.
+ */
+public class Coalescer implements Checkpointable
+{
+    public static final char FRAME_BASE = '0';
+    public static final int MAX_FRAME = NetworkSimulator.MAXDATASIZE - 1;
+
+    private final ArrayDeque<String> mPending = new ArrayDeque<String>();
+    private final StringBuilder mPacket =
+            new StringBuilder(NetworkSimulator.MAXDATASIZE);
+    private int mPendingBytes;              // Framed bytes waiting to be packed
+
+    // Creation times of the pending messages, [mHead, mTail).  Counters
+    // are absolute; slots wrap around the ring.
+    private double[] mTimes = new double[64];
+    private long mHead;
+    private long mTail;
+
+    private long mPackets;
+    private long mFrames;
+
+    public void add(String data, double time)
+    {
+        if (data.isEmpty() || data.length() > MAX_FRAME)
+        {
+            throw new IllegalArgumentException("cannot frame a message of " +
+                                               data.length() + " bytes");
+        }
+
+        if (mTail - mHead == mTimes.length)
+        {
+            grow();
+        }
+        mTimes[(int)(mTail++ & (mTimes.length - 1))] = time;
+
+        mPending.add(data);
+        mPendingBytes += data.length() + 1;
+    }
+
+    public boolean hasNext()
+    {
+        return !mPending.isEmpty();
+    }
+
+    // Whether the pending messages fill at least one packet
+    public boolean isFull()
+    {
+        return mPendingBytes >= NetworkSimulator.MAXDATASIZE;
+    }
+
+    // Creation time of the oldest message not yet packed
+    public double getOldestTime()
+    {
+        return mTimes[(int)(mHead & (mTimes.length - 1))];
+    }
+
+    /**
+     * Packs as many whole pending messages as fit into one payload.
+     */
+    public Message next()
+    {
+        mPacket.setLength(0);
+
+        while (!mPending.isEmpty() &&
+               mPacket.length() + mPending.peek().length() + 1 <=
+               NetworkSimulator.MAXDATASIZE)
+        {
+            String data = mPending.poll();
+            mPacket.append((char)(FRAME_BASE + data.length())).append(data);
+            mPendingBytes -= data.length() + 1;
+            mHead++;
+            mFrames++;
+        }
+        mPackets++;
+
+        return new Message(mPacket.toString());
+    }
+
+    /**
+     * Length of the frame at "offset" of a received payload, or -1 if the
+     * header is damaged.
+     */
+    public static int frameLength(String payload, int offset)
+    {
+        int length = payload.charAt(offset) - FRAME_BASE;
+        if (length < 1 || length > MAX_FRAME ||
+            offset + 1 + length > payload.length())
+        {
+            return -1;
+        }
+
+        return length;
+    }
+
+    public long getPackets()
+    {
+        return mPackets;
+    }
+
+    public long getFrames()
+    {
+        return mFrames;
+    }
+
+    private void grow()
+    {
+        double[] times = new double[mTimes.length * 2];
+        for (long i = mHead; i < mTail; i++)
+        {
+            times[(int)(i & (times.length - 1))] =
+                mTimes[(int)(i & (mTimes.length - 1))];
+        }
+        mTimes = times;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mPending.size());
+        for (String data : mPending)
+        {
+            out.writeUTF(data);
+        }
+
+        out.writeInt((int)(mTail - mHead));
+        for (long i = mHead; i < mTail; i++)
+        {
+            out.writeDouble(mTimes[(int)(i & (mTimes.length - 1))]);
+        }
+
+        out.writeLong(mPackets);
+        out.writeLong(mFrames);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mPending.clear();
+        mPendingBytes = 0;
+        int pending = in.readInt();
+        for (int i = 0; i < pending; i++)
+        {
+            String data = in.readUTF();
+            mPending.add(data);
+            mPendingBytes += data.length() + 1;
+        }
+
+        int times = in.readInt();
+        mTimes = new double[Math.max(64, Integer.highestOneBit(times) * 2)];
+        for (int i = 0; i < times; i++)
+        {
+            mTimes[i] = in.readDouble();
+        }
+        mHead = 0;
+        mTail = times;
+
+        mPackets = in.readLong();
+        mFrames = in.readLong();
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Runs the same small-message workload without coalescing and with a
+ * range of flush delays, and reports what packing buys in throughput and
+ * costs in latency.
+ *
+ * The default load stays below what the link carries without coalescing,
+ * so latency measures the flush delay rather than a growing queue.  Even
+ * so, A drops messages that find its window full unless they are
+ * coalesced, when they wait instead; the dropped column counts those,
+ * which the latencies of the "off" row leave out.
+ *
+ * Usage: java CoalescingBenchmark [messages] [size] [delay] [loss]
+ *                                 [corrupt] [seed]
+ */
+public class CoalescingBenchmark
+{
+    private static final double[] FLUSH_DELAYS = { 0, 1, 5, 10, 20, 50, 100 };
+
+    public final static void main(String[] argv)
+    {
+        int messages = argv.length > 0 ? Integer.parseInt(argv[0]) : 20000;
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 4;
+        double delay = argv.length > 2 ? Double.parseDouble(argv[2]) : 20.0;
+        double loss = argv.length > 3 ? Double.parseDouble(argv[3]) : 0.1;
+        double corrupt = argv.length > 4 ? Double.parseDouble(argv[4]) : 0.1;
+        long seed = argv.length > 5 ? Long.parseLong(argv[5]) : 1L;
+
+        System.out.println("messages=" + messages + " size=" + size +
+                           " delay=" + delay + " loss=" + loss +
+                           " corrupt=" + corrupt + " seed=" + seed);
+        System.out.println("flush-delay  delivered  dropped  msgs/time  bytes/time" +
+                           "   packets  msgs/packet  latency(avg)  latency(p99)");
+
+        run(messages, size, delay, loss, corrupt, seed, -1.0);
+        for (double flush : FLUSH_DELAYS)
+        {
+            run(messages, size, delay, loss, corrupt, seed, flush);
+        }
+    }
+
+    private static void run(int messages, int size, double delay, double loss,
+                            double corrupt, long seed, double flush)
+    {
+        NetworkSimulator simulator =
+            new NetworkSimulator(messages, loss, corrupt, delay, 0, seed);
+        simulator.setMessageSize(size);
+        if (flush >= 0.0)
+        {
+            simulator.setCoalescing(flush);
+        }
+        simulator.runSimulator();
+
+        Statistics result = simulator.getStatistics();
+        String label = flush >= 0.0 ? String.format("%11.1f", flush)
+                                    : String.format("%11s", "off");
+        // Every message A accepts is delivered in the end
+        long delivered = (long)result.get("Messages delivered");
+        System.out.println(String.format("%s  %9d  %7d  %9.4f  %10.4f  %8d  %11.2f  %12.2f  %12.2f",
+                           label,
+                           delivered,
+                           (long)result.get("Messages generated") - delivered,
+                           result.get("Throughput (messages per time unit)"),
+                           result.get("Goodput (bytes per time unit)"),
+                           (long)result.get("Packets sent to layer 3"),
+                           flush >= 0.0 ? result.get("Messages per packet") : 1.0,
+                           result.get("Average message latency"),
+                           result.get("Message latency p99")));
+    }
+}
@@ -0,0 +1,42 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * One message every "interval" time units.
+ */
+public class ConstantBitrateTraffic implements TrafficSource
+{
+    private final double mInterval;
+    private final int mSize;
+
+    public ConstantBitrateTraffic(double interval, int size)
+    {
+        mInterval = interval;
+        mSize = size;
+    }
+
+    public double nextGap(RandomGenerator rand)
+    {
+        return mInterval;
+    }
+
+    public int nextSize(RandomGenerator rand)
+    {
+        return mSize;
+    }
+
+    public int getMaxSize()
+    {
+        return mSize;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.zip.CRC32C;
+
+/**
+ * CRC-32C (Castagnoli) over the binary image of the packet.  The JIT compiles
+ * CRC32C.update into the SSE4.2/ARMv8 crc32c instructions where available.
+ */
+public class Crc32cChecksum implements PacketChecksum
+{
+    private final byte[] mImage = new byte[IMAGE_SIZE];
+    private final CRC32C mCrc = new CRC32C();
+
+    public int compute(int seqnum, int acknum, String payload)
+    {
+        int length = PacketChecksum.writeImage(mImage, seqnum, acknum, payload);
+
+        mCrc.reset();
+        mCrc.update(mImage, 0, length);
+
+        return (int)mCrc.getValue();
+    }
+
+    public int getBits()
+    {
+        return 32;
+    }
+
+    public String getName()
+    {
+        return "crc32c";
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Shares one link among traffic classes by deficit round robin.  Packets
+ * that find the link busy wait in their class's queue; whenever the link
+ * frees up, the classes with packets waiting take turns, and each turn a
+ * class may send as many packets as its deficit covers.  A turn adds the
+ * class's quantum, its weight times the link's mean delay, to the
+ * deficit.
+ *
+ * A packet costs the time it holds the link, its delay, rather than its
+ * length: a link carries one packet at a time and every packet holds it
+ * for a delay, whatever its size.  So a class of weight 2 gets about twice
+ * the link time of a class of weight 1 while both have packets waiting,
+ * and a class that has nothing waiting leaves its share to the others.
+ *
+ * The scheduler also keeps each class's counts and its latency, the time
+ * from joining the queue to arriving at the far end.
+ */
+public class DeficitRoundRobin implements Checkpointable
+{
+    /**
+     * A packet waiting for the link.  Its fate was drawn when it was sent.
+     */
+    public static class Entry
+    {
+        private final Packet mPacket;
+        private final boolean mCorrupted;
+        private final double mDelay;
+        private final double mSent;
+        private final int mClass;
+        private final boolean mBackground;  // Cross traffic, not the protocol's
+
+        public Entry(Packet packet, boolean corrupted, double delay,
+                     double sent, int trafficClass, boolean background)
+        {
+            mPacket = packet;
+            mCorrupted = corrupted;
+            mDelay = delay;
+            mSent = sent;
+            mClass = trafficClass;
+            mBackground = background;
+        }
+
+        public Packet getPacket()
+        {
+            return mPacket;
+        }
+
+        public boolean isCorrupted()
+        {
+            return mCorrupted;
+        }
+
+        public double getDelay()
+        {
+            return mDelay;
+        }
+
+        public double getSent()
+        {
+            return mSent;
+        }
+
+        public int getTrafficClass()
+        {
+            return mClass;
+        }
+
+        public boolean isBackground()
+        {
+            return mBackground;
+        }
+
+        void write(DataOutput out) throws IOException
+        {
+            mPacket.write(out);
+            out.writeBoolean(mCorrupted);
+            out.writeDouble(mDelay);
+            out.writeDouble(mSent);
+            out.writeInt(mClass);
+            out.writeBoolean(mBackground);
+        }
+
+        static Entry read(DataInput in) throws IOException
+        {
+            return new Entry(Packet.read(in), in.readBoolean(),
+                             in.readDouble(), in.readDouble(), in.readInt(),
+                             in.readBoolean());
+        }
+    }
+
+    private final double[] mQuantum;
+    private final int[] mLimit;             // 0 for an unlimited queue
+    private final ArrayDeque<Entry>[] mQueues;
+    private final double[] mDeficit;
+    private final ArrayDeque<Integer> mActive = new ArrayDeque<Integer>();
+    private boolean mFresh = true;          // The first active class has not had its quantum
+    private boolean mPending;               // A LINKFREE event is on its way
+
+    private final long[] mPackets;
+    private final long[] mDrops;
+    private final long[] mBytes;
+    private final Histogram[] mLatency;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DeficitRoundRobin(double[] weights, int[] limits, double meanDelay)
+    {
+        int classes = weights.length;
+        mQuantum = new double[classes];
+        mLimit = limits.clone();
+        mQueues = new ArrayDeque[classes];
+        mDeficit = new double[classes];
+        mPackets = new long[classes];
+        mDrops = new long[classes];
+        mBytes = new long[classes];
+        mLatency = new Histogram[classes];
+        for (int c = 0; c < classes; c++)
+        {
+            // A link with no delay still needs turns of some length
+            mQuantum[c] = weights[c] * Math.max(meanDelay, 1.0);
+            mQueues[c] = new ArrayDeque<Entry>();
+            mLatency[c] = new Histogram();
+        }
+    }
+
+    public int getClassCount()
+    {
+        return mQueues.length;
+    }
+
+    /**
+     * Whether a packet of class "trafficClass" finds its queue full, and is
+     * dropped.
+     */
+    public boolean isFull(int trafficClass)
+    {
+        if (mLimit[trafficClass] > 0 &&
+            mQueues[trafficClass].size() >= mLimit[trafficClass])
+        {
+            mDrops[trafficClass]++;
+            return true;
+        }
+
+        return false;
+    }
+
+    public void add(Entry entry)
+    {
+        ArrayDeque<Entry> queue = mQueues[entry.mClass];
+        if (queue.isEmpty())
+        {
+            mFresh |= mActive.isEmpty();
+            mActive.addLast(entry.mClass);
+        }
+        queue.addLast(entry);
+    }
+
+    public boolean hasNext()
+    {
+        return !mActive.isEmpty();
+    }
+
+    /**
+     * The packet to put on the link next.  Call only if hasNext().
+     */
+    public Entry next()
+    {
+        while (true)
+        {
+            int c = mActive.peekFirst();
+            if (mFresh)
+            {
+                mDeficit[c] += mQuantum[c];
+                mFresh = false;
+            }
+
+            Entry head = mQueues[c].peekFirst();
+            if (head.mDelay <= mDeficit[c])
+            {
+                mDeficit[c] -= head.mDelay;
+                mQueues[c].pollFirst();
+                if (mQueues[c].isEmpty())
+                {
+                    // An idle class keeps no credit
+                    mDeficit[c] = 0.0;
+                    mActive.pollFirst();
+                    mFresh = true;
+                }
+                return head;
+            }
+
+            mActive.addLast(mActive.pollFirst());
+            mFresh = true;
+        }
+    }
+
+    // A packet taken by next() arrives at "arrival"
+    public void sent(Entry entry, double arrival)
+    {
+        mPackets[entry.mClass]++;
+        mBytes[entry.mClass] += entry.mPacket.getPayload().length();
+        mLatency[entry.mClass].record(arrival - entry.mSent);
+    }
+
+    public boolean isPending()
+    {
+        return mPending;
+    }
+
+    public void setPending(boolean pending)
+    {
+        mPending = pending;
+    }
+
+    public long getPackets(int trafficClass)
+    {
+        return mPackets[trafficClass];
+    }
+
+    public long getDrops(int trafficClass)
+    {
+        return mDrops[trafficClass];
+    }
+
+    public long getBytes(int trafficClass)
+    {
+        return mBytes[trafficClass];
+    }
+
+    public Histogram getLatency(int trafficClass)
+    {
+        return mLatency[trafficClass];
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mQueues.length);
+        for (int c = 0; c < mQueues.length; c++)
+        {
+            out.writeDouble(mDeficit[c]);
+            out.writeLong(mPackets[c]);
+            out.writeLong(mDrops[c]);
+            out.writeLong(mBytes[c]);
+            mLatency[c].save(out);
+            out.writeInt(mQueues[c].size());
+            for (Entry entry : mQueues[c])
+            {
+                entry.write(out);
+            }
+        }
+        out.writeInt(mActive.size());
+        for (int c : mActive)
+        {
+            out.writeInt(c);
+        }
+        out.writeBoolean(mFresh);
+        out.writeBoolean(mPending);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        if (in.readInt() != mQueues.length)
+        {
+            throw new IOException("checkpoint traffic classes do not match");
+        }
+
+        for (int c = 0; c < mQueues.length; c++)
+        {
+            mDeficit[c] = in.readDouble();
+            mPackets[c] = in.readLong();
+            mDrops[c] = in.readLong();
+            mBytes[c] = in.readLong();
+            mLatency[c].restore(in);
+            mQueues[c].clear();
+            int queued = in.readInt();
+            for (int i = 0; i < queued; i++)
+            {
+                mQueues[c].addLast(Entry.read(in));
+            }
+        }
+        mActive.clear();
+        int active = in.readInt();
+        for (int i = 0; i < active; i++)
+        {
+            mActive.addLast(in.readInt());
+        }
+        mFresh = in.readBoolean();
+        mPending = in.readBoolean();
+    }
+}
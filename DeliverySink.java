@@ -0,0 +1,17 @@
+/**
+ * Watches application messages end to end: told about each message as
+ * layer 5 at A hands it to the transport, and again as it reaches layer 5
+ * at B.  Messages are reported by their contents, without allocating, so
+ * a sink can see every message of a long run.
+ */
+public interface DeliverySink extends Checkpointable
+{
+    // A message generated at "time" has been accepted for sending
+    public void created(double time, String data);
+
+    // The "length" characters of "data" at "offset" reached B at "time"
+    public void delivered(double time, String data, int offset, int length);
+
+    // Adds the sink's results to the run statistics
+    public void report(Statistics statistics);
+}
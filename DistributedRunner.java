@@ -0,0 +1,367 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs one scenario split across two JVMs on this machine, one hosting A
+ * and one hosting B, and prints the merged statistics.
+ *
+ * The launcher starts both workers.  B listens on a loopback port and A
+ * connects to it; packets sent to the other side travel over that socket
+ * as serialized FROMLAYER3 events.  The workers keep in step
+ * conservatively: after every round each sends the other the arrivals it
+ * produced, the time of its next event and whether its share of the work
+ * is done, a null message if it has nothing else to say.  No packet
+ * arrives sooner than the lookahead, the smallest delay of any link, after
+ * it was sent, so both can then safely run every event up to the earliest
+ * next event on either side plus the lookahead.  Every link is owned by
+ * its sender and draws from the same streams as in a single JVM, so a
+ * split run follows the same course as an ordinary one.
+ *
+ * A's layer 5 tells B about every message it creates in the same rounds,
+ * so that B's DeliverySink can measure latency end to end.
+ *
+ * Usage: java DistributedRunner <messages> <loss> <corrupt> <delay>
+ *                               [protocol] [seed]
+ */
+public class DistributedRunner
+{
+    private static final String PORT = "PORT";
+    private static final String STATISTIC = "STAT";
+
+    public final static void main(String[] argv)
+        throws IOException, InterruptedException
+    {
+        if (argv.length >= 9 && argv[0].equals("worker"))
+        {
+            work(Integer.parseInt(argv[1]), Integer.parseInt(argv[2]),
+                 scenario(argv, 3), Long.parseLong(argv[8]));
+            return;
+        }
+
+        if (argv.length < 4)
+        {
+            System.out.println("Usage: java DistributedRunner <messages> " +
+                               "<loss> <corrupt> <delay> [protocol] [seed]");
+            System.exit(1);
+        }
+
+        String protocol = argv.length > 4 ? argv[4] : ProtocolRegistry.DEFAULT;
+        String seed = argv.length > 5 ? argv[5] : "1";
+        String[] args = { argv[0], argv[1], argv[2], argv[3], protocol, seed };
+
+        long start = System.nanoTime();
+        Process b = launch(NetworkSimulator.B, 0, args);
+        BufferedReader bOut = new BufferedReader(
+                new InputStreamReader(b.getInputStream()));
+        String line = bOut.readLine();
+        if (line == null || !line.startsWith(PORT + " "))
+        {
+            throw new IOException("worker B did not start: " + line);
+        }
+        int port = Integer.parseInt(line.substring(PORT.length() + 1));
+
+        Process a = launch(NetworkSimulator.A, port, args);
+        BufferedReader aOut = new BufferedReader(
+                new InputStreamReader(a.getInputStream()));
+
+        Statistics statistics = new Statistics();
+        merge(aOut, statistics);
+        merge(bOut, statistics);
+        if (a.waitFor() != 0 || b.waitFor() != 0)
+        {
+            throw new IOException("a worker failed");
+        }
+        long wall = System.nanoTime() - start;
+
+        // Rates are recomputed over the whole run
+        double time = statistics.get("Simulated time");
+        statistics.set("Throughput (messages per time unit)",
+                time > 0.0 ? statistics.get("Messages delivered") / time : 0.0);
+        statistics.set("Goodput (bytes per time unit)",
+                time > 0.0 ? statistics.get("Bytes delivered") / time : 0.0);
+
+        System.out.println(scenario(args, 0) + " seed=" + seed);
+        System.out.println("2 workers in " + String.format("%.1f", wall / 1e6) +
+                           " ms");
+        System.out.println(statistics);
+    }
+
+    private static Scenario scenario(String[] argv, int first)
+    {
+        Scenario scenario = new Scenario(Long.parseLong(argv[first]),
+                                         Double.parseDouble(argv[first + 1]),
+                                         Double.parseDouble(argv[first + 2]),
+                                         Double.parseDouble(argv[first + 3]));
+        scenario.setProtocol(argv[first + 4]);
+        return scenario;
+    }
+
+    private static Process launch(int entity, int port, String[] args)
+        throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" +
+                    File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(DistributedRunner.class.getName());
+        command.add("worker");
+        command.add(String.valueOf(entity));
+        command.add(String.valueOf(port));
+        for (String arg : args)
+        {
+            command.add(arg);
+        }
+
+        return new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    }
+
+    /* Fold a worker's statistics into "statistics": the run lasted as long
+       as its longer half, and everything else is a count to add up */
+    private static void merge(BufferedReader in, Statistics statistics)
+        throws IOException
+    {
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            String[] fields = line.split("\t");
+            if (fields.length != 3 || !fields[0].equals(STATISTIC))
+            {
+                continue;
+            }
+
+            double value = Double.parseDouble(fields[2]);
+            if (fields[1].equals("Simulated time") && statistics.has(fields[1]))
+            {
+                value = Math.max(value, statistics.get(fields[1]));
+                statistics.set(fields[1], value);
+            }
+            else
+            {
+                statistics.add(fields[1], value);
+            }
+        }
+    }
+
+    /* One half of the run.  B listens on "port" 0, A connects to it. */
+    private static void work(int entity, int port, Scenario scenario, long seed)
+        throws IOException
+    {
+        NetworkSimulator simulator = scenario.create(seed);
+        simulator.setPartition(entity);
+        CreatedSink created = null;
+        if (entity == NetworkSimulator.A)
+        {
+            created = new CreatedSink();
+            simulator.setDeliverySink(created);
+        }
+
+        double lookahead = simulator.getLookahead();
+        if (!(lookahead > 0.0))
+        {
+            throw new IllegalArgumentException("a split run needs links " +
+                                               "with a minimum delay");
+        }
+
+        Socket socket;
+        if (entity == NetworkSimulator.B)
+        {
+            ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            System.out.println(PORT + " " + server.getLocalPort());
+            System.out.flush();
+            socket = server.accept();
+            server.close();
+        }
+        else
+        {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        }
+        socket.setTcpNoDelay(true);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                socket.getInputStream()));
+
+        simulator.start();
+        long rounds = 0;
+        while (true)
+        {
+            // A speaks first, so the two never wait on each other's writes
+            List<Event> sent = simulator.takeOutgoing();
+            double next = simulator.getNextEventTime();
+            boolean finished = simulator.isPartitionFinished();
+            Round peer;
+            if (entity == NetworkSimulator.A)
+            {
+                write(out, next, finished, sent, created);
+                peer = Round.read(in);
+            }
+            else
+            {
+                peer = Round.read(in);
+                write(out, next, finished, sent, created);
+            }
+
+            for (Event event : peer.mEvents)
+            {
+                simulator.deliver(event);
+            }
+            for (int i = 0; i < peer.mCreatedTimes.length; i++)
+            {
+                simulator.getDeliverySink().created(peer.mCreatedTimes[i],
+                                                    peer.mCreatedData.get(i));
+            }
+
+            if (finished && peer.mFinished)
+            {
+                break;
+            }
+
+            // Nothing either side still has to do can reach the other
+            // before this
+            double safe = Math.min(next, peer.mNext);
+            for (Event event : sent)
+            {
+                safe = Math.min(safe, event.getTime());
+            }
+            for (Event event : peer.mEvents)
+            {
+                safe = Math.min(safe, event.getTime());
+            }
+            if (safe == Double.POSITIVE_INFINITY)
+            {
+                break;
+            }
+
+            simulator.runUntil(safe + lookahead);
+            rounds++;
+        }
+        socket.close();
+
+        Statistics statistics = simulator.getStatistics();
+        if (entity == NetworkSimulator.A)
+        {
+            statistics.set("Synchronization rounds", rounds);
+        }
+        for (String name : statistics.names())
+        {
+            System.out.println(STATISTIC + "\t" + name + "\t" +
+                               statistics.get(name));
+        }
+    }
+
+    private static void write(DataOutputStream out, double next,
+                              boolean finished, List<Event> events,
+                              CreatedSink created)
+        throws IOException
+    {
+        out.writeDouble(next);
+        out.writeBoolean(finished);
+        out.writeInt(events.size());
+        for (Event event : events)
+        {
+            event.write(out);
+        }
+
+        if (created == null)
+        {
+            out.writeInt(0);
+        }
+        else
+        {
+            out.writeInt(created.mCount);
+            for (int i = 0; i < created.mCount; i++)
+            {
+                out.writeDouble(created.mTimes[i]);
+                out.writeUTF(created.mData.get(i));
+            }
+            created.mCount = 0;
+            created.mData.clear();
+        }
+        out.flush();
+    }
+
+    /* What the other worker said at the end of a round */
+    private static class Round
+    {
+        private double mNext;
+        private boolean mFinished;
+        private final List<Event> mEvents = new ArrayList<Event>();
+        private double[] mCreatedTimes;
+        private final List<String> mCreatedData = new ArrayList<String>();
+
+        static Round read(DataInput in) throws IOException
+        {
+            Round round = new Round();
+            round.mNext = in.readDouble();
+            round.mFinished = in.readBoolean();
+            int events = in.readInt();
+            for (int i = 0; i < events; i++)
+            {
+                round.mEvents.add(Event.read(in));
+            }
+            int created = in.readInt();
+            round.mCreatedTimes = new double[created];
+            for (int i = 0; i < created; i++)
+            {
+                round.mCreatedTimes[i] = in.readDouble();
+                round.mCreatedData.add(in.readUTF());
+            }
+            return round;
+        }
+    }
+
+    /* A's sink: passes every message created on to B's, which sees the
+       deliveries.  Times are kept unboxed, like LatencySink's. */
+    private static class CreatedSink implements DeliverySink
+    {
+        private double[] mTimes = new double[64];
+        private int mCount;
+        private final List<String> mData = new ArrayList<String>();
+
+        public void created(double time, String data)
+        {
+            if (mCount == mTimes.length)
+            {
+                mTimes = Arrays.copyOf(mTimes, mCount * 2);
+            }
+            mTimes[mCount++] = time;
+            mData.add(data);
+        }
+
+        public void delivered(double time, String data, int offset, int length)
+        {
+        }
+
+        public void report(Statistics statistics)
+        {
+        }
+
+        public void save(DataOutput out) throws IOException
+        {
+            throw new IOException("split runs cannot be checkpointed");
+        }
+
+        public void restore(DataInput in) throws IOException
+        {
+            throw new IOException("split runs cannot be checkpointed");
+        }
+    }
+}
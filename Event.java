@@ -1,9 +1,16 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Event
 {
     private double time;
     private int type;
     private int entity;
     private Packet packet;
+    private boolean corrupted;
+    private TimerHandle timer;
+    private int node = -1;
     
     public Event(double t, int ty, int ent)
     {
@@ -31,7 +38,10 @@ public class Event
     {
         if ((n != NetworkSimulator.TIMERINTERRUPT) &&
             (n != NetworkSimulator.FROMLAYER5) &&
-            (n != NetworkSimulator.FROMLAYER3))
+            (n != NetworkSimulator.FROMLAYER3) &&
+            (n != NetworkSimulator.FORWARD) &&
+            (n != NetworkSimulator.LINKFREE) &&
+            (n != NetworkSimulator.CROSSTRAFFIC))
         {
             type = -1;
             return false;
@@ -62,13 +72,30 @@ public class Event
         }        
         else
         {
-            packet = new Packet(p.getSeqnum(), p.getAcknum(),
-                                p.getChecksum(), p.getPayload());
+            packet = new Packet(p);
         }
         
         return true;
     }
     
+    public void setCorrupted(boolean c)
+    {
+        corrupted = c;
+    }
+    
+    // The router a FORWARD event finds its packet at, the path of a
+    // LINKFREE event or the flow of a CROSSTRAFFIC event
+    public void setNode(int n)
+    {
+        node = n;
+    }
+
+    // The timer a TIMERINTERRUPT event was queued for
+    public void setTimer(TimerHandle t)
+    {
+        timer = t;
+    }
+
     public double getTime()
     {
         return time;
@@ -88,6 +115,50 @@ public class Event
     {
         return packet;
     }
+
+    public boolean isCorrupted()
+    {
+        return corrupted;
+    }
+    
+    public TimerHandle getTimer()
+    {
+        return timer;
+    }
+    
+    public int getNode()
+    {
+        return node;
+    }
+    
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeDouble(time);
+        out.writeInt(type);
+        out.writeInt(entity);
+        out.writeBoolean(corrupted);
+        out.writeInt(node);
+        out.writeBoolean(packet != null);
+        if (packet != null)
+        {
+            packet.write(out);
+        }
+    }
+    
+    public static Event read(DataInput in) throws IOException
+    {
+        double t = in.readDouble();
+        int ty = in.readInt();
+        int ent = in.readInt();
+        boolean c = in.readBoolean();
+        int n = in.readInt();
+        
+        Event e = in.readBoolean() ? new Event(t, ty, ent, Packet.read(in))
+                                   : new Event(t, ty, ent);
+        e.setCorrupted(c);
+        e.setNode(n);
+        return e;
+    }
     
     public String toString()
     {
@@ -2,7 +2,6 @@ public interface EventList
 {
     public boolean add(Event e);
     public Event removeNext();
+    public double peekTime();
     public String toString();
-    public Event removeTimer(int entity);
-    public double getLastPacketTime(int entityTo);
 }
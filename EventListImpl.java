@@ -3,15 +3,26 @@ import java.util.Vector;
 public class EventListImpl implements EventList
 {
     private Vector data;
+    private int firstIndex;     // Index of the next event, or -1 if unknown
     
     public EventListImpl()
     {
         data = new Vector();
+        firstIndex = -1;
     }
     
     public boolean add(Event e)
     {
         data.addElement(e);
+        
+        // Only a strictly earlier event displaces the known first one, so
+        // simultaneous events still fire in the order they were added
+        if (firstIndex != -1 &&
+            e.getTime() < ((Event)data.elementAt(firstIndex)).getTime())
+        {
+            firstIndex = data.size() - 1;
+        }
+        
         return true;
     }
     
@@ -22,67 +33,45 @@ public class EventListImpl implements EventList
             return null;
         }
     
-        int firstIndex = 0;
-        double first = ((Event)data.elementAt(firstIndex)).getTime();
-        for (int i = 0; i < data.size(); i++)
-        {
-            if (((Event)data.elementAt(i)).getTime() < first)
-            {
-                first = ((Event)data.elementAt(i)).getTime();
-                firstIndex = i;
-            }
-        }
-        
-        Event next = (Event)data.elementAt(firstIndex);
-        data.removeElement(next);
+        findFirst();
+        Event next = (Event)data.remove(firstIndex);
+        firstIndex = -1;
     
         return next;
     }
     
-    public String toString()
-    {
-        return data.toString();
-    }
-
-    public Event removeTimer(int entity)
+    public double peekTime()
     {
-        int timerIndex = -1;
-        Event timer = null;
-        
-        for (int i = 0; i < data.size(); i++)
-        {
-            if ((((Event)(data.elementAt(i))).getType() == 
-                                           NetworkSimulator.TIMERINTERRUPT) &&
-                (((Event)(data.elementAt(i))).getEntity() == entity))
-            {
-                timerIndex = i;
-                break;
-            }
-        }
-        
-        if (timerIndex != -1)
+        if (data.isEmpty())
         {
-            timer = (Event)(data.elementAt(timerIndex));
-            data.removeElement(timer);
+            return Double.POSITIVE_INFINITY;
         }
         
-        return timer;
-            
+        findFirst();
+        return ((Event)data.elementAt(firstIndex)).getTime();
     }
     
-    public double getLastPacketTime(int entityTo)
+    private void findFirst()
     {
-        double time = 0.0;
+        if (firstIndex != -1)
+        {
+            return;
+        }
+        
+        firstIndex = 0;
+        double first = ((Event)data.elementAt(firstIndex)).getTime();
         for (int i = 0; i < data.size(); i++)
         {
-            if ((((Event)(data.elementAt(i))).getType() == 
-                                           NetworkSimulator.FROMLAYER3) &&
-                (((Event)(data.elementAt(i))).getEntity() == entityTo))
+            if (((Event)data.elementAt(i)).getTime() < first)
             {
-                time = ((Event)(data.elementAt(i))).getTime();
+                first = ((Event)data.elementAt(i)).getTime();
+                firstIndex = i;
             }
         }
+    }
     
-        return time;
+    public String toString()
+    {
+        return data.toString();
     }
 }
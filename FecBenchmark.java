@@ -0,0 +1,51 @@
+/**
+ * Runs Go-Back-N over a grid of loss rates with forward error correction
+ * off, at a few fixed block sizes and adaptive, and reports what the
+ * parity packets cost against what they buy in goodput and latency.
+ *
+ * Usage: java FecBenchmark [messages] [delay] [window] [corrupt] [seed]
+ */
+public class FecBenchmark
+{
+    private static final double[] LOSSES = { 0.01, 0.05, 0.1, 0.2, 0.3 };
+    private static final int[] BLOCKS = { 0, 8, 4, 2, ProtocolConfig.FEC_ADAPTIVE };
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 5000;
+        double delay = argv.length > 1 ? Double.parseDouble(argv[1]) : 10.0;
+        int window = argv.length > 2 ? Integer.parseInt(argv[2]) : 8;
+        double corrupt = argv.length > 3 ? Double.parseDouble(argv[3]) : 0.0;
+        long seed = argv.length > 4 ? Long.parseLong(argv[4]) : 1L;
+
+        System.out.println("messages=" + messages + " delay=" + delay +
+                           " window=" + window + " corrupt=" + corrupt +
+                           " seed=" + seed);
+        System.out.println(" loss       fec  overhead  bytes/time  recovered" +
+                           "  timeouts  latency(p50)  latency(p99)");
+
+        for (double loss : LOSSES)
+        {
+            for (int block : BLOCKS)
+            {
+                Scenario scenario = new Scenario(messages, loss, corrupt, delay);
+                scenario.getConfig().setWindowSize(window);
+                scenario.getConfig().setFecBlock(block);
+
+                Statistics result = scenario.run(seed);
+                String label = block == 0 ? "off" :
+                               block == ProtocolConfig.FEC_ADAPTIVE ? "adaptive" :
+                               String.valueOf(block);
+                System.out.println(String.format(
+                        "%5.2f  %8s  %8.3f  %10.4f  %9d  %8d  %12.2f  %12.2f",
+                        loss, label,
+                        block == 0 ? 0.0 : result.get("FEC overhead"),
+                        result.get("Goodput (bytes per time unit)"),
+                        block == 0 ? 0 : (long)result.get("Packets recovered by FEC"),
+                        (long)result.get("Re-transmits due to corrupt or lost packets"),
+                        result.get("Message latency p50"),
+                        result.get("Message latency p99")));
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the simulator and its protocols, so that
+ * protocol behaviour can be lined up with GC and CPU activity in JDK
+ * Mission Control.  All of them are disabled by default; turn them on with
+ * a JFR settings file or, for example,
+ *
+ *   java -XX:StartFlightRecording:filename=run.jfr,+rtp.PacketSent#enabled=true ...
+ *
+ * Until a recording starts, at launch or later through jcmd, each helper
+ * returns after one flag check, so JFR is never even loaded.  After that
+ * an event is only filled in and committed when it is enabled.
+ */
+public final class FlightEvents
+{
+    private static final String CATEGORY = "Network Simulator";
+
+    private FlightEvents()
+    {
+    }
+
+    public static void packetSent(double time, int entity, Packet packet)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        PacketSent event = new PacketSent();
+        if (event.shouldCommit())
+        {
+            event.set(time, entity, packet);
+            event.commit();
+        }
+    }
+
+    public static void packetLost(double time, int entity, Packet packet)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        PacketLost event = new PacketLost();
+        if (event.shouldCommit())
+        {
+            event.set(time, entity, packet);
+            event.commit();
+        }
+    }
+
+    public static void packetCorrupted(double time, int entity, Packet packet)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        PacketCorrupted event = new PacketCorrupted();
+        if (event.shouldCommit())
+        {
+            event.set(time, entity, packet);
+            event.commit();
+        }
+    }
+
+    public static void messageDelivered(double time, int entity, int length,
+                                        boolean corrupt)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        MessageDelivered event = new MessageDelivered();
+        if (event.shouldCommit())
+        {
+            event.simulatedTime = time;
+            event.entity = entity;
+            event.length = length;
+            event.undetectedCorruption = corrupt;
+            event.commit();
+        }
+    }
+
+    public static void timerStarted(double time, TimerHandle timer)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        TimerStarted event = new TimerStarted();
+        if (event.shouldCommit())
+        {
+            event.set(time, timer);
+            event.commit();
+        }
+    }
+
+    public static void timerStopped(double time, TimerHandle timer)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        TimerStopped event = new TimerStopped();
+        if (event.shouldCommit())
+        {
+            event.set(time, timer);
+            event.commit();
+        }
+    }
+
+    public static void timerExpired(double time, TimerHandle timer)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        TimerExpired event = new TimerExpired();
+        if (event.shouldCommit())
+        {
+            event.set(time, timer);
+            event.commit();
+        }
+    }
+
+    public static void retransmissionBurst(double time, int base, int next,
+                                           int packets)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        RetransmissionBurst event = new RetransmissionBurst();
+        if (event.shouldCommit())
+        {
+            event.simulatedTime = time;
+            event.base = base;
+            event.nextSequence = next;
+            event.packets = packets;
+            event.commit();
+        }
+    }
+
+    public static void windowStall(double time, int base, int next,
+                                   int outstanding, int window, String reason)
+    {
+        if (!FlightRecorder.isInitialized())
+        {
+            return;
+        }
+
+        WindowStall event = new WindowStall();
+        if (event.shouldCommit())
+        {
+            event.simulatedTime = time;
+            event.base = base;
+            event.nextSequence = next;
+            event.outstanding = outstanding;
+            event.windowSize = window;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    /* Fields shared by the per-packet events */
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class PacketEvent extends Event
+    {
+        @Label("Simulated Time")
+        double simulatedTime;
+
+        @Label("Sending Entity")
+        int entity;
+
+        @Label("Sequence Number")
+        int seqnum;
+
+        @Label("Ack Number")
+        int acknum;
+
+        @Label("Payload Length")
+        int length;
+
+        void set(double time, int from, Packet packet)
+        {
+            simulatedTime = time;
+            entity = from;
+            seqnum = packet.getSeqnum();
+            acknum = packet.getAcknum();
+            length = packet.getPayload().length();
+        }
+    }
+
+    @Name("rtp.PacketSent")
+    @Label("Packet Sent")
+    @Description("A packet handed to layer 3")
+    static class PacketSent extends PacketEvent
+    {
+    }
+
+    @Name("rtp.PacketLost")
+    @Label("Packet Lost")
+    @Description("A packet dropped by the channel")
+    static class PacketLost extends PacketEvent
+    {
+    }
+
+    @Name("rtp.PacketCorrupted")
+    @Label("Packet Corrupted")
+    @Description("A packet damaged by the channel, before the damage")
+    static class PacketCorrupted extends PacketEvent
+    {
+    }
+
+    @Name("rtp.MessageDelivered")
+    @Label("Message Delivered")
+    @Description("Data passed up to layer 5")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class MessageDelivered extends Event
+    {
+        @Label("Simulated Time")
+        double simulatedTime;
+
+        @Label("Entity")
+        int entity;
+
+        @Label("Length")
+        int length;
+
+        @Label("Undetected Corruption")
+        boolean undetectedCorruption;
+    }
+
+    /* Fields shared by the timer events */
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class TimerEvent extends Event
+    {
+        @Label("Simulated Time")
+        double simulatedTime;
+
+        @Label("Entity")
+        int entity;
+
+        @Label("Tag")
+        @Description("-1 for the one-per-entity timer")
+        int tag;
+
+        @Label("Deadline")
+        double deadline;
+
+        void set(double time, TimerHandle timer)
+        {
+            simulatedTime = time;
+            entity = timer.getEntity();
+            tag = timer.getTag();
+            deadline = timer.getDeadline();
+        }
+    }
+
+    @Name("rtp.TimerStarted")
+    @Label("Timer Started")
+    static class TimerStarted extends TimerEvent
+    {
+    }
+
+    @Name("rtp.TimerStopped")
+    @Label("Timer Stopped")
+    static class TimerStopped extends TimerEvent
+    {
+    }
+
+    @Name("rtp.TimerExpired")
+    @Label("Timer Expired")
+    static class TimerExpired extends TimerEvent
+    {
+    }
+
+    @Name("rtp.RetransmissionBurst")
+    @Label("Retransmission Burst")
+    @Description("A timeout that resent the outstanding window")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class RetransmissionBurst extends Event
+    {
+        @Label("Simulated Time")
+        double simulatedTime;
+
+        @Label("Window Base")
+        @Description("Sequence number of the last acknowledged packet")
+        int base;
+
+        @Label("Next Sequence Number")
+        int nextSequence;
+
+        @Label("Packets Resent")
+        int packets;
+    }
+
+    @Name("rtp.WindowStall")
+    @Label("Window Stall")
+    @Description("A message refused because the sender had no room for it")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class WindowStall extends Event
+    {
+        @Label("Simulated Time")
+        double simulatedTime;
+
+        @Label("Window Base")
+        int base;
+
+        @Label("Next Sequence Number")
+        int nextSequence;
+
+        @Label("Outstanding Packets")
+        int outstanding;
+
+        @Label("Window Size")
+        int windowSize;
+
+        @Label("Reason")
+        String reason;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Runs Go-Back-N against a receiver whose layer 5 consumes messages at a
+ * range of rates, and shows throughput following the consumer once it is
+ * slower than the offered load, with few packets thrown away at the
+ * receiver.
+ *
+ * Usage: java FlowControlBenchmark [messages] [delay] [receive buffer]
+ *                                  [loss] [corrupt] [seed]
+ */
+public class FlowControlBenchmark
+{
+    private static final double[] DRAIN_RATES = { 0.01, 0.02, 0.05, 0.1, 0.2, 1.0 };
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 5000;
+        double delay = argv.length > 1 ? Double.parseDouble(argv[1]) : 10.0;
+        int buffer = argv.length > 2 ? Integer.parseInt(argv[2]) : 4;
+        double loss = argv.length > 3 ? Double.parseDouble(argv[3]) : 0.1;
+        double corrupt = argv.length > 4 ? Double.parseDouble(argv[4]) : 0.1;
+        long seed = argv.length > 5 ? Long.parseLong(argv[5]) : 1L;
+
+        Scenario scenario = new Scenario(messages, loss, corrupt, delay);
+
+        System.out.println(scenario + " rbuf=" + buffer + " seed=" + seed);
+        System.out.println("drain-rate  delivered  msgs/time  retransmissions" +
+                           "  receiver-drops  probes");
+
+        run(scenario, seed, 0, 0.0);
+        for (double rate : DRAIN_RATES)
+        {
+            run(scenario, seed, buffer, rate);
+        }
+    }
+
+    private static void run(Scenario scenario, long seed, int buffer,
+                            double rate)
+    {
+        Scenario run = scenario.copy();
+        if (buffer > 0)
+        {
+            run.getConfig().setReceiveBuffer(buffer);
+            run.getConfig().setDrainRate(rate);
+        }
+
+        Statistics result = run.run(seed);
+        String label = buffer > 0 ? String.format("%10.2f", rate)
+                                  : String.format("%10s", "off");
+        System.out.print(String.format("%s  %9d  %9.4f  %15d", label,
+                         (long)result.get("Messages delivered"),
+                         result.get("Throughput (messages per time unit)"),
+                         (long)result.get("Number of re-transmissions")));
+        if (buffer > 0)
+        {
+            System.out.println(String.format("  %14d  %6d",
+                    (long)result.get("Packets dropped for a full receive buffer"),
+                    (long)result.get("Zero-window probes")));
+        }
+        else
+        {
+            System.out.println(String.format("  %14s  %6s", "-", "-"));
+        }
+    }
+}
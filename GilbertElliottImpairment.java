@@ -0,0 +1,115 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * A two-state Markov channel.  Before each packet the channel moves from
+ * the good state to the bad one with probability mGoodToBad, and back with
+ * probability mBadToGood; each state has its own chance of losing and of
+ * corrupting a packet.  Losses therefore come in bursts, a mean of
+ * 1 / mBadToGood packets long when the bad state loses everything.
+ *
+ * The channel starts in the good state.
+ */
+public class GilbertElliottImpairment implements Impairment
+{
+    private final double mGoodToBad;
+    private final double mBadToGood;
+    private final double mGoodLoss;
+    private final double mBadLoss;
+    private final double mGoodCorrupt;
+    private final double mBadCorrupt;
+    private boolean mBad;
+
+    public GilbertElliottImpairment(double goodToBad, double badToGood,
+                                    double goodLoss, double badLoss,
+                                    double goodCorrupt, double badCorrupt)
+    {
+        if (!(goodToBad >= 0.0 && goodToBad <= 1.0) ||
+            !(badToGood > 0.0 && badToGood <= 1.0))
+        {
+            throw new IllegalArgumentException("transition probabilities " +
+                    "must be in [0, 1], and leaving the bad state > 0");
+        }
+
+        mGoodToBad = goodToBad;
+        mBadToGood = badToGood;
+        mGoodLoss = goodLoss;
+        mBadLoss = badLoss;
+        mGoodCorrupt = goodCorrupt;
+        mBadCorrupt = badCorrupt;
+    }
+
+    /**
+     * The Gilbert model with the same long-run loss rate as a Bernoulli
+     * channel losing "loss" of its packets: the bad state loses every
+     * packet, in bursts a mean of "burst" packets long, and the good state
+     * none.  Corruption stays independent, "corrupt" in either state.
+     */
+    public static GilbertElliottImpairment withMeanLoss(double loss,
+                                                        double corrupt,
+                                                        double burst)
+    {
+        if (!(loss >= 0.0 && loss < 1.0) || !(burst >= 1.0))
+        {
+            throw new IllegalArgumentException("need 0 <= loss < 1 and " +
+                                               "burst >= 1");
+        }
+
+        // The bad state holds "loss" of the packets in the long run
+        double badToGood = 1.0 / burst;
+        double goodToBad = Math.min(1.0, loss * badToGood / (1.0 - loss));
+        return new GilbertElliottImpairment(goodToBad, badToGood, 0.0, 1.0,
+                                            corrupt, corrupt);
+    }
+
+    public void next(double time, RandomGenerator rand)
+    {
+        double x = rand.nextDouble();
+        mBad = mBad ? x >= mBadToGood : x < mGoodToBad;
+    }
+
+    public double getLoss(double loss)
+    {
+        return mBad ? mBadLoss : mGoodLoss;
+    }
+
+    public double getCorrupt(double corrupt)
+    {
+        return mBad ? mBadCorrupt : mGoodCorrupt;
+    }
+
+    public boolean isBad()
+    {
+        return mBad;
+    }
+
+    // Fraction of packets sent in the bad state, in the long run
+    public double getBadFraction()
+    {
+        return mGoodToBad / (mGoodToBad + mBadToGood);
+    }
+
+    public Impairment copy()
+    {
+        return new GilbertElliottImpairment(mGoodToBad, mBadToGood,
+                                            mGoodLoss, mBadLoss,
+                                            mGoodCorrupt, mBadCorrupt);
+    }
+
+    public String toString()
+    {
+        return "gilbert(p=" + mGoodToBad + " r=" + mBadToGood + ")";
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeBoolean(mBad);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mBad = in.readBoolean();
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Go-Back-N with cumulative ACKs and a single retransmission timer.
+ */
+public class GoBackNProtocol implements ProtocolFactory
+{
+    public String getName()
+    {
+        return "gbn";
+    }
+
+    public String getVersion()
+    {
+        return "1";
+    }
+
+    public Sender createSender(ProtocolHost host, ProtocolConfig config)
+    {
+        return new GoBackNSender(host, config);
+    }
+
+    public Receiver createReceiver(ProtocolHost host, ProtocolConfig config)
+    {
+        return new GoBackNReceiver(host, config);
+    }
+}
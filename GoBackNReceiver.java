@@ -0,0 +1,423 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The Go-Back-N receiver.  Delivers packets strictly in order and answers
+ * every arrival with a cumulative ACK for the last in-order packet.
+ *
+ * With a receive buffer configured, in-order data is queued for a layer 5
+ * that consumes DRAIN_RATE messages per time unit, and every ACK carries
+ * the free space left so that the sender can hold back.
+ *
+ * With several paths the packets of one window overtake each other, so
+ * packets that arrive ahead of a gap are held in a small reorder buffer
+ * and delivered once it is filled, rather than thrown away and resent.
+ *
+ * With forward error correction the reorder buffer is used the same way,
+ * and a parity packet rebuilds the one packet of its block that is neither
+ * delivered nor held, if there is exactly one.  Delivered payloads are
+ * kept for as long as a parity packet may still refer to them.
+ */
+public class GoBackNReceiver implements Receiver
+{
+    private static final int B = NetworkSimulator.B;
+    private static final int ACK = 1;
+    private static final int DRAIN = 0;     // Timer tag for layer 5 consumption
+
+    private final ProtocolHost mHost;
+    private final PacketCodec mCodec;
+    private final SequenceSpace mSpace;
+    private final int RECEIVE_BUFFER;
+    private final double DRAIN_RATE;
+    private final ArrayDeque<String> mBuffer;  // Data waiting for layer 5
+    private boolean mDraining;              // Whether the drain timer is running
+    private final String[] mReorder;        // Early arrivals by distance from mReorderHead; null with one path
+    private int mReorderHead;               // Slot of mExpectedSequenceNumber
+    private final XorParity mParity;        // Scratch for repairs; null without FEC
+    private final String[] mDelivered;      // Recent payloads by sequence number, for FEC
+    private final int WINDOW_SIZE;
+    private int mExpectedSequenceNumber;    // The sequence number the receiver expects to receive
+    private int mLastACKSequence;           // The last sequence that the receiver gave an ACK
+    private int mLastPath;                  // Path the latest packet came in on
+
+    // Variables used for gathering statistics
+    private long mNumberOfACK;              // Packets that received an ACK
+    private long mPacketsTransmitted;       // ACK packets transmitted
+    private long mCorruptPacketsReceived;   // Corrupt packets received
+    private long mBufferDrops;              // In-order packets dropped for lack of buffer
+    private long mReordered;                // Packets held until a gap before them filled
+    private long mRecovered;                // Packets rebuilt from parity
+    private boolean mComments = false;       // For my use: turn on and off comments for debugging.
+
+    public GoBackNReceiver(ProtocolHost host, ProtocolConfig config)
+    {
+        mHost = host;
+        mSpace = config.createSequenceSpace(config.getWindowSize());
+        mCodec = new PacketCodec(mSpace, config.createChecksum());
+        RECEIVE_BUFFER = config.getReceiveBuffer();
+        DRAIN_RATE = config.getDrainRate();
+        mBuffer = new ArrayDeque<String>();
+
+        // Early arrivals can only be told from old duplicates within the
+        // half of the sequence space that the window leaves free
+        WINDOW_SIZE = config.getWindowSize();
+        int reach = Math.min(WINDOW_SIZE, mSpace.size() - WINDOW_SIZE);
+        boolean fec = config.getFecBlock() != 0;
+        mReorder = (host.getPathCount() > 1 || fec) && reach > 1 ?
+                new String[reach] : null;
+
+        // A block reaches at most a window behind the next packet expected,
+        // so a power of two twice that never confuses two live entries
+        mParity = fec ? new XorParity() : null;
+        mDelivered = fec ? new String[Math.min(mSpace.size(),
+                Integer.highestOneBit(2 * WINDOW_SIZE - 1) << 1)] : null;
+    }
+
+    // This routine will be called once, before any of the other B-side
+    // routines are called.
+    public void init()
+    {
+        mExpectedSequenceNumber = 0;
+        mLastACKSequence = mSpace.previous(0);
+        mLastPath = 0;
+        mNumberOfACK = 0;
+        mPacketsTransmitted = 0;
+        mCorruptPacketsReceived = 0;
+        mBufferDrops = 0;
+        mBuffer.clear();
+        mDraining = false;
+        mReordered = 0;
+        mRecovered = 0;
+        mReorderHead = 0;
+        if (mReorder != null)
+        {
+            Arrays.fill(mReorder, null);
+        }
+        if (mDelivered != null)
+        {
+            Arrays.fill(mDelivered, null);
+        }
+    }
+
+    // This routine will be called whenever a packet sent from the A-side
+    // arrives at the B-side.  "packet" is the (possibly corrupted) packet
+    // sent from the A-side.
+    public void input(Packet packet)
+    {
+        if(mComments)
+            System.out.println("bInput received packet: " + packet.toString());
+
+        Packet responsePacket;
+        mLastPath = packet.getPath();
+
+        boolean corrupt = mCodec.isCorrupt(packet);
+        if(!corrupt && mParity != null && XorParity.isParity(packet))
+        {
+            repair(packet);
+            return;
+        }
+
+        boolean retransmission = packet.getSeqnum() != mExpectedSequenceNumber;
+        boolean full = RECEIVE_BUFFER > 0 && mBuffer.size() >= RECEIVE_BUFFER;
+
+        if(corrupt || retransmission || full)
+        {
+            if(corrupt)
+                mCorruptPacketsReceived++;
+            else if(full && !retransmission)
+                mBufferDrops++;
+            else if(retransmission && mReorder != null &&
+                    hold(packet.getSeqnum(), packet.getPayload()))
+                mReordered++;
+
+            responsePacket = mCodec.create(mLastACKSequence, ACK, ackPayload());
+
+            if(mComments)
+                System.out.println("bInput: detected corrupt or out of order packet, sending sequence of lastACK\n");
+        }
+        else
+        {
+            accept(packet.getPayload());
+
+            // Packets held behind this one can follow it now
+            if(mReorder != null)
+                release();
+
+            // Create ACK packet
+            responsePacket = mCodec.create(mLastACKSequence, ACK, ackPayload());
+
+            if(mComments)
+                System.out.println("bInput: packet is error free, sending ACK packet.\n");
+        }
+
+        // Answer on the path the packet came in on
+        responsePacket.setPath(packet.getPath());
+        mHost.toLayer3(B, responsePacket);
+        mPacketsTransmitted++;
+    }
+
+    /* Take the expected packet: send it up, or queue it for a slow layer 5 */
+    private void accept(String data)
+    {
+        if(RECEIVE_BUFFER == 0)
+        {
+            mHost.toLayer5(B, data);
+        }
+        else
+        {
+            mBuffer.add(data);
+            if(!mDraining)
+            {
+                mHost.startTimer(B, 1.0 / DRAIN_RATE, DRAIN);
+                mDraining = true;
+            }
+        }
+
+        if(mDelivered != null)
+        {
+            mDelivered[mExpectedSequenceNumber & (mDelivered.length - 1)] = data;
+        }
+
+        // Update state and statistics
+        mLastACKSequence = mExpectedSequenceNumber;
+        mExpectedSequenceNumber = mSpace.next(mExpectedSequenceNumber);
+        mNumberOfACK++;
+        if(mReorder != null)
+        {
+            mReorder[mReorderHead] = null;
+            mReorderHead = (mReorderHead + 1) % mReorder.length;
+        }
+    }
+
+    /* Keep a packet from the one expected onwards for release() to take.
+       In-order packets that find the receive buffer full are not held but
+       dropped, and counted in mBufferDrops.  Returns whether it was new. */
+    private boolean hold(int sequence, String data)
+    {
+        int ahead = mSpace.distance(mExpectedSequenceNumber, sequence);
+        if(ahead < mReorder.length)
+        {
+            int slot = (mReorderHead + ahead) % mReorder.length;
+            if(mReorder[slot] == null)
+            {
+                mReorder[slot] = data;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /* Rebuild the one missing packet of a parity packet's block, if only
+       one is missing, and ACK if that moved the window */
+    private void repair(Packet parity)
+    {
+        mParity.load(parity);
+        int count = mParity.getCount();
+        int missing = -1;
+
+        for(int i = 0; i < count; i++)
+        {
+            int sequence = mSpace.add(mParity.getFirst(), i);
+            int behind = mSpace.distance(sequence, mExpectedSequenceNumber);
+            int ahead = mSpace.distance(mExpectedSequenceNumber, sequence);
+
+            String data;
+            if(behind >= 1 && behind <= WINDOW_SIZE)
+            {
+                data = mDelivered[sequence & (mDelivered.length - 1)];
+            }
+            else if(ahead < mReorder.length)
+            {
+                data = mReorder[(mReorderHead + ahead) % mReorder.length];
+            }
+            else
+            {
+                return;     // A stale block, or one beyond our reach
+            }
+
+            if(data != null)
+            {
+                mParity.add(data);
+            }
+            else if(missing < 0)
+            {
+                missing = sequence;
+            }
+            else
+            {
+                return;     // Two losses are more than one parity can repair
+            }
+        }
+
+        if(missing < 0)
+        {
+            return;
+        }
+
+        mRecovered++;
+        hold(missing, mParity.getRecovered());
+
+        int last = mLastACKSequence;
+        release();
+        if(mLastACKSequence == last)
+        {
+            return;
+        }
+
+        Packet responsePacket = mCodec.create(mLastACKSequence, ACK, ackPayload());
+        responsePacket.setPath(parity.getPath());
+        mHost.toLayer3(B, responsePacket);
+        mPacketsTransmitted++;
+    }
+
+    /* Accept held packets while they continue the sequence */
+    private void release()
+    {
+        while(mReorder[mReorderHead] != null &&
+              (RECEIVE_BUFFER == 0 || mBuffer.size() < RECEIVE_BUFFER))
+        {
+            accept(mReorder[mReorderHead]);
+        }
+    }
+
+    public int getBuffered()
+    {
+        return mBuffer.size();
+    }
+
+    // Layer 5 has consumed one more message
+    public void timerExpired(int tag)
+    {
+        boolean wasFull = mBuffer.size() >= RECEIVE_BUFFER;
+        mHost.toLayer5(B, mBuffer.poll());
+        if(mReorder != null)
+            release();
+
+        // Tell a stalled sender about the space at once rather than waiting
+        // for its next probe
+        if(wasFull)
+        {
+            Packet responsePacket = mCodec.create(mLastACKSequence, ACK, ackPayload());
+            responsePacket.setPath(mLastPath);
+            mHost.toLayer3(B, responsePacket);
+            mPacketsTransmitted++;
+        }
+
+        mDraining = !mBuffer.isEmpty();
+        if(mDraining)
+        {
+            mHost.startTimer(B, 1.0 / DRAIN_RATE, DRAIN);
+        }
+    }
+
+    /* ACKs advertise the free buffer space when flow control is on */
+    private String ackPayload()
+    {
+        if(RECEIVE_BUFFER == 0)
+        {
+            return "data";
+        }
+
+        return PacketCodec.advertise(RECEIVE_BUFFER - mBuffer.size());
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mExpectedSequenceNumber);
+        out.writeInt(mLastACKSequence);
+        out.writeLong(mNumberOfACK);
+        out.writeLong(mPacketsTransmitted);
+        out.writeLong(mCorruptPacketsReceived);
+        out.writeLong(mBufferDrops);
+        out.writeInt(mLastPath);
+        out.writeBoolean(mDraining);
+        out.writeInt(mBuffer.size());
+        for (String data : mBuffer)
+        {
+            out.writeUTF(data);
+        }
+        if (mDelivered != null)
+        {
+            out.writeLong(mRecovered);
+            for (String data : mDelivered)
+            {
+                out.writeBoolean(data != null);
+                if (data != null)
+                {
+                    out.writeUTF(data);
+                }
+            }
+        }
+        if (mReorder != null)
+        {
+            out.writeLong(mReordered);
+            for (int i = 0; i < mReorder.length; i++)
+            {
+                String data = mReorder[(mReorderHead + i) % mReorder.length];
+                out.writeBoolean(data != null);
+                if (data != null)
+                {
+                    out.writeUTF(data);
+                }
+            }
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mExpectedSequenceNumber = in.readInt();
+        mLastACKSequence = in.readInt();
+        mNumberOfACK = in.readLong();
+        mPacketsTransmitted = in.readLong();
+        mCorruptPacketsReceived = in.readLong();
+        mBufferDrops = in.readLong();
+        mLastPath = in.readInt();
+        mDraining = in.readBoolean();
+        mBuffer.clear();
+        int buffered = in.readInt();
+        for (int i = 0; i < buffered; i++)
+        {
+            mBuffer.add(in.readUTF());
+        }
+        if (mDelivered != null)
+        {
+            mRecovered = in.readLong();
+            for (int i = 0; i < mDelivered.length; i++)
+            {
+                mDelivered[i] = in.readBoolean() ? in.readUTF() : null;
+            }
+        }
+        if (mReorder != null)
+        {
+            mReordered = in.readLong();
+            mReorderHead = 0;
+            for (int i = 0; i < mReorder.length; i++)
+            {
+                mReorder[i] = in.readBoolean() ? in.readUTF() : null;
+            }
+        }
+    }
+
+    public void report(Statistics statistics)
+    {
+        statistics.add("Number of packets transmitted", mPacketsTransmitted);
+        statistics.set("Number of ACK packets", mNumberOfACK);
+        statistics.add("Number of corrupt packets", mCorruptPacketsReceived);
+        if (RECEIVE_BUFFER > 0)
+        {
+            statistics.set("Packets dropped for a full receive buffer", mBufferDrops);
+        }
+        if (mReorder != null)
+        {
+            statistics.set("Packets held for reordering", mReordered);
+        }
+        if (mParity != null)
+        {
+            statistics.set("Packets recovered by FEC", mRecovered);
+        }
+    }
+}
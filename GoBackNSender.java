@@ -0,0 +1,552 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The Go-Back-N sender.  Keeps up to WINDOW_SIZE packets in flight, uses a
+ * single timer for the oldest one and resends the whole window when it
+ * expires.
+ *
+ * When the receiver advertises its free buffer space, no more packets are
+ * kept in flight than it has room for.  While it advertises none and
+ * nothing is in flight, a probe is sent every timeout so that the window
+ * update that reopens it cannot be lost for good.
+ *
+ * With several paths to the receiver, a PathScheduler picks the path of
+ * every packet sent or resent.
+ *
+ * With forward error correction on, an XOR parity packet follows every
+ * block of new data packets, so that the receiver can rebuild one loss
+ * per block instead of waiting for a timeout.  An adaptive block halves
+ * on every timeout and grows by one after every block sent without one.
+ *
+ * With pacing on, every packet leaves through a token bucket instead of
+ * going straight to layer 3, so that neither a full window of new data
+ * nor a timeout's resent window hits the link as one burst.  An automatic
+ * rate spreads a window over the smoothed RTT.  Packets are stamped with
+ * the time they leave the pacer, so its queue does not inflate the RTT.
+ */
+public class GoBackNSender implements Sender
+{
+    private static final int A = NetworkSimulator.A;
+    private static final int ACK = 1;
+    private static final int PROBE = 0;     // Timer tag for zero-window probes
+    private static final int PACE = 1;      // Timer tag for the pacer
+
+    private final int WINDOW_SIZE;
+    private final int BUFFER_SIZE;
+    private final double TIME_UNITS;
+    private final boolean FLOW_CONTROL;     // Whether ACKs advertise a receive window
+
+    private final ProtocolHost mHost;
+    private final PacketCodec mCodec;
+    private final SequenceSpace mSpace;     // k-bit sequence numbers shared by both sides
+    private final PathScheduler mScheduler; // Null with a single path
+    private final int[] mInFlight;          // Scratch counts of packets per path
+    private final XorParity mParity;        // The block being protected; null without FEC
+    private final boolean FEC_ADAPTIVE;
+    private final int MAX_FEC_BLOCK;        // Largest block the receiver can hold
+    private final Pacer mPacer;             // Null without pacing
+    private final boolean PACING_AUTO;      // Rate follows the RTT instead of the config
+    private double mSRTT;                   // Smoothed RTT for an automatic rate; 0 until measured
+    private int mFecBlock;                  // Data packets per parity packet
+    private boolean mTimedOut;              // A timeout since the last parity packet
+    private int mBase;                      // The sequence number of the last acknowledged packet
+    private int mNextSequence;              // The next sequence number outside of the current window
+    private boolean mTimerAvailable;        // Used to coordinate whether the timer is currently in use
+    private SendWindow mPacketBuffer;       // Packets that have no received ACK, with their send times
+    private int mAdvertised;                // Free space last advertised by the receiver
+    private boolean mProbing;               // Whether the probe timer is running
+
+    // Variables used for gathering statistics
+    private long mPacketsTransmitted;       // Packets transmitted
+    private long mRetransmissions;          // Packets that have been re-transmitted
+    private long mCorruptPacketsReceived;   // Corrupt packets received
+    private long mLostORCorrupt;            // How many times a re-transmit was necessary due to lost or corrupt packets
+    private double mTotalRTT;               // A sum of all RTTs
+    private long mRTTCount;                 // Number of RTTs to calculate for average
+    private long mProbes;                   // Zero-window probes sent
+    private long mParityPackets;            // FEC parity packets sent
+    private boolean mComments = false;       // For my use: turn on and off comments for debugging.
+
+    public GoBackNSender(ProtocolHost host, ProtocolConfig config)
+    {
+        WINDOW_SIZE = config.getWindowSize();
+        BUFFER_SIZE = config.getBufferSize();
+        TIME_UNITS = config.getTimeout();
+        FLOW_CONTROL = config.getReceiveBuffer() > 0;
+
+        if (WINDOW_SIZE > BUFFER_SIZE)
+        {
+            throw new IllegalArgumentException("window of " + WINDOW_SIZE +
+                    " does not fit a buffer of " + BUFFER_SIZE);
+        }
+
+        mHost = host;
+        mSpace = config.createSequenceSpace(WINDOW_SIZE);
+        mCodec = new PacketCodec(mSpace, config.createChecksum());
+
+        int paths = host.getPathCount();
+        mScheduler = paths > 1 ? config.createScheduler(paths) : null;
+        mInFlight = new int[paths];
+
+        // The receiver holds a block's packets behind a loss in its reorder
+        // buffer, which cannot reach further than this
+        int block = config.getFecBlock();
+        MAX_FEC_BLOCK = Math.min(XorParity.MAX_BLOCK,
+                Math.min(WINDOW_SIZE, mSpace.size() - WINDOW_SIZE));
+        if (block != 0 && MAX_FEC_BLOCK < 2)
+        {
+            throw new IllegalArgumentException("FEC needs a sequence space " +
+                    "of at least twice the window");
+        }
+        FEC_ADAPTIVE = block == ProtocolConfig.FEC_ADAPTIVE;
+        mParity = block != 0 ? new XorParity() : null;
+        mFecBlock = FEC_ADAPTIVE ? MAX_FEC_BLOCK : Math.min(block, MAX_FEC_BLOCK);
+
+        // An automatic rate is unknown until the first RTT, so the pacer
+        // starts out letting everything through
+        double rate = config.getPacingRate();
+        PACING_AUTO = rate == ProtocolConfig.PACING_AUTO;
+        mPacer = rate != 0.0 ? new Pacer(host, A, PACE, config.getPacingBurst()) : null;
+        if (mPacer != null && !PACING_AUTO)
+        {
+            mPacer.setRate(rate);
+        }
+    }
+
+    // This routine will be called once, before any of the other A-side
+    // routines are called.
+    public void init()
+    {
+        // Initialize state variables
+        mNextSequence = 0;
+        mBase = mSpace.previous(0);
+        mTimerAvailable = true;
+
+        mPacketBuffer = new SendWindow(BUFFER_SIZE);
+        mAdvertised = Integer.MAX_VALUE;
+        mProbing = false;
+        mTimedOut = false;
+        mSRTT = 0.0;
+        if (mParity != null)
+        {
+            mParity.start(0);
+        }
+
+        // Initialize statistics variables
+        mPacketsTransmitted = 0;
+        mRetransmissions = 0;
+        mCorruptPacketsReceived = 0;
+        mLostORCorrupt = 0;
+        mTotalRTT = 0;
+        mRTTCount = 0;
+        mProbes = 0;
+        mParityPackets = 0;
+    }
+
+    /**
+     * The engine only hands over another segment when it would not be
+     * dropped for lack of window or buffer space.
+     */
+    public boolean isReady()
+    {
+        return windowOpen() && !mPacketBuffer.isFull();
+    }
+
+    // Room for one more packet under both our window and the receiver's
+    private boolean windowOpen()
+    {
+        int distance = mSpace.distance(mBase, mNextSequence);
+        return distance < WINDOW_SIZE && distance - 1 < mAdvertised;
+    }
+
+    public int getOutstanding()
+    {
+        return mPacketBuffer.size();
+    }
+
+    public long getRetransmissions()
+    {
+        return mRetransmissions;
+    }
+
+    // This routine will be called whenever the upper layer at the sender [A]
+    // has a message to send.  It is the job of the protocol to insure that
+    // the data in such a message is delivered in-order, and correctly, to
+    // the receiving upper layer.
+    public void output(Message message)
+    {
+        if(windowOpen())
+        {
+            // Create packet and send it to side B
+            Packet packet = mCodec.create(mNextSequence, ACK, message.getData());
+            if(mScheduler != null)
+            {
+                Arrays.fill(mInFlight, 0);
+                for(int i = 0; i < mPacketBuffer.size(); i++)
+                {
+                    mInFlight[mPacketBuffer.packetAt(i).getPath()]++;
+                }
+                packet.setPath(mScheduler.choose(mInFlight));
+            }
+
+            if(mPacketBuffer.add(packet, departure()))
+            {
+                transmit(packet);
+
+                // Update state and statistics counter
+                mNextSequence = mSpace.next(mNextSequence);
+                mPacketsTransmitted++;
+
+                if(mParity != null)
+                {
+                    protect(packet);
+                }
+
+                if(mComments)
+                    System.out.println("aOutput sent packet: " + packet.toString());
+                if(mComments)
+                    System.out.println("Window size: " + mSpace.distance(mBase, mNextSequence) + "\n");
+
+                if(mTimerAvailable)
+                {
+                    mHost.startTimer(A, TIME_UNITS);
+                    mTimerAvailable = false;
+                }
+            }
+            else
+            {
+                FlightEvents.windowStall(mHost.getTime(), mBase, mNextSequence,
+                        mPacketBuffer.size(), WINDOW_SIZE, "buffer");
+                if(mComments)
+                    System.out.println("aOutput: Buffer is full, dropping message");
+            }
+        }
+        else
+        {
+            FlightEvents.windowStall(mHost.getTime(), mBase, mNextSequence,
+                    mPacketBuffer.size(), WINDOW_SIZE,
+                    mSpace.distance(mBase, mNextSequence) < WINDOW_SIZE ? "receiver" : "window");
+            if(mComments)
+                System.out.println("aOutput: Window is full, dropping message");
+        }
+    }
+
+    /* When a packet transmitted now will actually leave */
+    private double departure()
+    {
+        return mPacer != null ? mPacer.departure() : mHost.getTime();
+    }
+
+    /* Hand a packet to layer 3, through the pacer if there is one */
+    private void transmit(Packet packet)
+    {
+        if(mPacer != null)
+        {
+            mPacer.send(packet);
+        }
+        else
+        {
+            mHost.toLayer3(A, packet);
+        }
+    }
+
+    /* Fold a new data packet into the current block, closing the block
+       with its parity packet once it is full */
+    private void protect(Packet packet)
+    {
+        if(mParity.getCount() == 0)
+        {
+            mParity.start(packet.getSeqnum());
+        }
+        mParity.add(packet.getPayload());
+
+        if(mParity.getCount() >= mFecBlock)
+        {
+            Packet parity = mParity.create(mCodec);
+            parity.setPath(packet.getPath());
+            transmit(parity);
+            mParityPackets++;
+            mParity.start(0);
+
+            if(FEC_ADAPTIVE && !mTimedOut)
+            {
+                mFecBlock = Math.min(mFecBlock + 1, MAX_FEC_BLOCK);
+            }
+            mTimedOut = false;
+        }
+    }
+
+    // This routine will be called whenever a packet sent from the B-side
+    // arrives at the A-side.  "packet" is the (possibly corrupted) packet
+    // sent from the B-side.
+    public void input(Packet packet)
+    {
+        if(mComments)
+            System.out.println("aInput received packet: " + packet.toString() + " base: " + mBase);
+
+        double arrivalTime = mHost.getTime();
+        int sequenceNumber = packet.getSeqnum();
+
+        // Only numbers strictly between the last ACK and the next sequence
+        // acknowledge anything new
+        int acked = mSpace.distance(mBase, sequenceNumber);
+        boolean outOfOrder = acked == 0 || acked >= mSpace.distance(mBase, mNextSequence);
+
+        // Let timer expire for corrupt packets
+        if (mCodec.isCorrupt(packet))
+        {
+            mCorruptPacketsReceived++;
+
+            if(mComments)
+                System.out.println("aInput found corrupt packet, let timer expire.\n");
+            return;
+        }
+
+        // Any intact ACK, even a duplicate, carries the receiver's latest window
+        if (FLOW_CONTROL)
+        {
+            mAdvertised = Math.max(0, PacketCodec.advertised(packet.getPayload()));
+        }
+
+        if (outOfOrder)
+        {
+            if(mComments)
+                System.out.println("aInput found out of order or duplicate ACK, let timer expire.\n");
+        }
+        // Handle packets that are ACK
+        else
+        {
+            // Aggregate time round trips for each packet sent/received.  The
+            // ACKed packet sits "acked - 1" slots into the window.
+            double rtt = arrivalTime - mPacketBuffer.sendTimeAt(acked - 1);
+            mTotalRTT += rtt;
+            mRTTCount++;
+            mHost.recordRtt(rtt);
+
+            if(PACING_AUTO)
+            {
+                mSRTT = mSRTT == 0.0 ? rtt : mSRTT + (rtt - mSRTT) / 8.0;
+                mPacer.setRate(WINDOW_SIZE / Math.max(mSRTT, Double.MIN_NORMAL));
+            }
+
+            // Credit every packet acknowledged to its path.  Only the newest
+            // measures its path's RTT, and only if the ACK came back that way.
+            if(mScheduler != null)
+            {
+                for(int i = 0; i < acked; i++)
+                {
+                    int path = mPacketBuffer.packetAt(i).getPath();
+                    mScheduler.acked(path, i == acked - 1 && path == packet.getPath() ?
+                            rtt : Double.NaN);
+                }
+            }
+
+            if(!mTimerAvailable)
+            {
+                mHost.stopTimer(A);
+                mTimerAvailable = true;
+            }
+
+            // Need to pop off all sequence numbers that have been acknowledged
+            if (mComments)
+                System.out.println("aInput: Popped off " + acked + " packets");
+
+            mPacketBuffer.slide(acked);
+
+            mBase = packet.getSeqnum();
+
+            // Packets still in flight need a timer of their own, otherwise a
+            // loss at the tail of a transfer is never recovered
+            if(!mPacketBuffer.isEmpty())
+            {
+                mHost.startTimer(A, TIME_UNITS);
+                mTimerAvailable = false;
+            }
+
+            if(mComments)
+                System.out.println("aInput: cumulative ACK received, stopping timer. Next Sequence: "
+                        + mNextSequence + "\n");
+        }
+
+        // With nothing in flight no ACK will reopen a closed window by itself
+        if (mAdvertised == 0 && mPacketBuffer.isEmpty() && !mProbing)
+        {
+            mHost.startTimer(A, TIME_UNITS, PROBE);
+            mProbing = true;
+        }
+    }
+
+    // This routine will be called when A's timer expires (thus generating a
+    // timer interrupt). It re-transmits every unacknowledged packet.
+    public void timerInterrupt()
+    {
+        mTimerAvailable = true;
+        mLostORCorrupt++;
+
+        // Losses are getting past the parity: protect smaller blocks
+        if(FEC_ADAPTIVE)
+        {
+            mFecBlock = Math.max(1, mFecBlock / 2);
+            mTimedOut = true;
+        }
+        if(mComments)
+            System.out.println("Timer expired, re-transmitting window.");
+
+        FlightEvents.retransmissionBurst(mHost.getTime(), mBase, mNextSequence,
+                mPacketBuffer.size());
+
+        // Whatever the pacer still holds is about to be resent anyway
+        if(mPacer != null)
+        {
+            mPacer.clear();
+        }
+
+        // Re-transmit all unacknowledged packets and restart timer
+        Arrays.fill(mInFlight, 0);
+        for(int i = 0; i < mPacketBuffer.size(); i++)
+        {
+            Packet packet = mPacketBuffer.packetAt(i);
+            if(mScheduler != null)
+            {
+                packet.setPath(mScheduler.choose(mInFlight));
+                mInFlight[packet.getPath()]++;
+            }
+            mPacketBuffer.retransmitted(i, departure());
+            transmit(packet);
+            mRetransmissions++;
+
+            if(mComments)
+                System.out.println("Re-sending: " + packet.toString());
+
+            if(mTimerAvailable)
+            {
+                mHost.startTimer(A, TIME_UNITS);
+                mTimerAvailable = false;
+            }
+        }
+    }
+
+    // The pacer's timer, or the probe timer: ask a closed receiver for a
+    // fresh window update
+    public void timerExpired(int tag)
+    {
+        if (tag == PACE)
+        {
+            mPacer.timerExpired();
+            return;
+        }
+
+        mProbing = false;
+        if (mAdvertised == 0 && mPacketBuffer.isEmpty())
+        {
+            // The receiver has already seen mBase, so it answers with an ACK
+            // and throws the probe's single byte away
+            transmit(mCodec.create(mBase, ACK, "?"));
+            mProbes++;
+
+            mHost.startTimer(A, TIME_UNITS, PROBE);
+            mProbing = true;
+        }
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mBase);
+        out.writeInt(mNextSequence);
+        out.writeBoolean(mTimerAvailable);
+        mPacketBuffer.save(out);
+        out.writeInt(mAdvertised);
+        out.writeBoolean(mProbing);
+        if (mScheduler != null)
+        {
+            mScheduler.save(out);
+        }
+        if (mParity != null)
+        {
+            mParity.save(out);
+            out.writeInt(mFecBlock);
+            out.writeBoolean(mTimedOut);
+        }
+        if (mPacer != null)
+        {
+            mPacer.save(out);
+            out.writeDouble(mSRTT);
+        }
+
+        out.writeLong(mPacketsTransmitted);
+        out.writeLong(mRetransmissions);
+        out.writeLong(mCorruptPacketsReceived);
+        out.writeLong(mLostORCorrupt);
+        out.writeDouble(mTotalRTT);
+        out.writeLong(mRTTCount);
+        out.writeLong(mProbes);
+        out.writeLong(mParityPackets);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mBase = in.readInt();
+        mNextSequence = in.readInt();
+        mTimerAvailable = in.readBoolean();
+        mPacketBuffer.restore(in);
+        mAdvertised = in.readInt();
+        mProbing = in.readBoolean();
+        if (mScheduler != null)
+        {
+            mScheduler.restore(in);
+        }
+        if (mParity != null)
+        {
+            mParity.restore(in);
+            mFecBlock = in.readInt();
+            mTimedOut = in.readBoolean();
+        }
+        if (mPacer != null)
+        {
+            mPacer.restore(in);
+            mSRTT = in.readDouble();
+        }
+
+        mPacketsTransmitted = in.readLong();
+        mRetransmissions = in.readLong();
+        mCorruptPacketsReceived = in.readLong();
+        mLostORCorrupt = in.readLong();
+        mTotalRTT = in.readDouble();
+        mRTTCount = in.readLong();
+        mProbes = in.readLong();
+        mParityPackets = in.readLong();
+    }
+
+    public void report(Statistics statistics)
+    {
+        int headerBits = mCodec.getHeaderBits();
+
+        statistics.add("Number of packets transmitted", mPacketsTransmitted);
+        statistics.set("Number of re-transmissions", mRetransmissions);
+        statistics.add("Number of corrupt packets", mCorruptPacketsReceived);
+        statistics.set("Re-transmits due to corrupt or lost packets", mLostORCorrupt);
+        statistics.set("Header bits per packet", headerBits);
+        statistics.set("Header overhead of a full packet",
+                headerBits / (double) (headerBits + 8 * NetworkSimulator.MAXDATASIZE));
+        statistics.set("Average RTT", mRTTCount > 0 ? (mTotalRTT / (double) mRTTCount) : 0.0);
+        if (FLOW_CONTROL)
+        {
+            statistics.set("Zero-window probes", mProbes);
+        }
+        if (mParity != null)
+        {
+            statistics.set("FEC parity packets", mParityPackets);
+            statistics.set("FEC overhead", mPacketsTransmitted > 0 ?
+                    mParityPackets / (double) mPacketsTransmitted : 0.0);
+        }
+        if (mPacer != null)
+        {
+            statistics.set("Packets delayed by pacing", mPacer.getDelayed());
+            statistics.set("Average pacing delay", mPacer.getSent() > 0 ?
+                    mPacer.getTotalDelay() / mPacer.getSent() : 0.0);
+        }
+    }
+}
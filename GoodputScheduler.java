@@ -0,0 +1,105 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Spreads packets in proportion to the goodput each path has shown, using
+ * smooth weighted round robin so that the order is deterministic and no
+ * path waits long for its turn.  A path's weight is the fraction of its
+ * packets acknowledged divided by its smoothed RTT, an estimate of what
+ * one slot of window buys on it.  Every path starts with the same weight.
+ */
+public class GoodputScheduler implements PathScheduler
+{
+    private static final double GAIN = 0.125;
+    private static final double INITIAL_RTT = 1.0;
+
+    private final long[] mSent;
+    private final long[] mAcked;
+    private final double[] mSmoothedRtt;
+    private final double[] mCurrent;        // Smooth weighted round robin credit
+
+    public GoodputScheduler(int paths)
+    {
+        mSent = new long[paths];
+        mAcked = new long[paths];
+        mSmoothedRtt = new double[paths];
+        mCurrent = new double[paths];
+        for (int i = 0; i < paths; i++)
+        {
+            mSmoothedRtt[i] = Double.NaN;
+        }
+    }
+
+    public int choose(int[] inFlight)
+    {
+        double total = 0.0;
+        int best = 0;
+        for (int path = 0; path < mCurrent.length; path++)
+        {
+            double weight = weight(path);
+            mCurrent[path] += weight;
+            total += weight;
+            if (mCurrent[path] > mCurrent[best])
+            {
+                best = path;
+            }
+        }
+
+        mCurrent[best] -= total;
+        mSent[best]++;
+        return best;
+    }
+
+    public void acked(int path, double rtt)
+    {
+        mAcked[path]++;
+        if (Double.isNaN(rtt))
+        {
+            return;
+        }
+
+        if (Double.isNaN(mSmoothedRtt[path]))
+        {
+            mSmoothedRtt[path] = rtt;
+        }
+        else
+        {
+            mSmoothedRtt[path] += GAIN * (rtt - mSmoothedRtt[path]);
+        }
+    }
+
+    // Acknowledged fraction per time unit; the +1s keep new paths in play
+    private double weight(int path)
+    {
+        double rtt = Double.isNaN(mSmoothedRtt[path]) ? INITIAL_RTT : mSmoothedRtt[path];
+        return (mAcked[path] + 1.0) / (mSent[path] + 1.0) / rtt;
+    }
+
+    public String getName()
+    {
+        return "goodput";
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        for (int i = 0; i < mCurrent.length; i++)
+        {
+            out.writeLong(mSent[i]);
+            out.writeLong(mAcked[i]);
+            out.writeDouble(mSmoothedRtt[i]);
+            out.writeDouble(mCurrent[i]);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        for (int i = 0; i < mCurrent.length; i++)
+        {
+            mSent[i] = in.readLong();
+            mAcked[i] = in.readLong();
+            mSmoothedRtt[i] = in.readDouble();
+            mCurrent[i] = in.readDouble();
+        }
+    }
+}
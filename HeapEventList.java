@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * An event list kept as a binary heap, so that adding and removing an
+ * event cost O(log n) however many are pending, where EventListImpl scans
+ * them all.  Ties are broken by insertion order, like EventListImpl.
+ */
+public class HeapEventList implements EventList
+{
+    private static final int INITIAL_HEAP = 64;
+
+    // Ordered by (time, sequence)
+    private Event[] mHeap;
+    private long[] mSequence;
+    private int mSize;
+    private long mNextSequence;
+
+    public HeapEventList()
+    {
+        mHeap = new Event[INITIAL_HEAP];
+        mSequence = new long[INITIAL_HEAP];
+        mSize = 0;
+        mNextSequence = 0;
+    }
+
+    public int size()
+    {
+        return mSize;
+    }
+
+    public boolean add(Event e)
+    {
+        add(e, mNextSequence++);
+        return true;
+    }
+
+    /**
+     * Adds "e" as if it had been added when the counter stood at
+     * "sequence", for a list that hands events out and takes them back.
+     */
+    void add(Event e, long sequence)
+    {
+        if (mSize == mHeap.length)
+        {
+            mHeap = Arrays.copyOf(mHeap, mSize * 2);
+            mSequence = Arrays.copyOf(mSequence, mSize * 2);
+        }
+
+        int i = mSize++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (!before(e, sequence, mHeap[parent], mSequence[parent]))
+            {
+                break;
+            }
+            mHeap[i] = mHeap[parent];
+            mSequence[i] = mSequence[parent];
+            i = parent;
+        }
+        mHeap[i] = e;
+        mSequence[i] = sequence;
+    }
+
+    public Event removeNext()
+    {
+        if (mSize == 0)
+        {
+            return null;
+        }
+
+        return removeAt(0);
+    }
+
+    public double peekTime()
+    {
+        if (mSize == 0)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return mHeap[0].getTime();
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < mSize; i++)
+        {
+            if (i > 0)
+            {
+                s.append(", ");
+            }
+            s.append(mHeap[i]);
+        }
+        s.append("]");
+        return s.toString();
+    }
+
+    private Event removeAt(int index)
+    {
+        Event removed = mHeap[index];
+
+        mSize--;
+        Event last = mHeap[mSize];
+        long lastSequence = mSequence[mSize];
+        mHeap[mSize] = null;
+
+        if (index < mSize)
+        {
+            // Sift the last element down from the hole, then up in case it
+            // belongs above it
+            int i = index;
+            while (true)
+            {
+                int child = 2 * i + 1;
+                if (child >= mSize)
+                {
+                    break;
+                }
+                if (child + 1 < mSize &&
+                    before(mHeap[child + 1], mSequence[child + 1],
+                           mHeap[child], mSequence[child]))
+                {
+                    child++;
+                }
+                if (!before(mHeap[child], mSequence[child], last, lastSequence))
+                {
+                    break;
+                }
+                mHeap[i] = mHeap[child];
+                mSequence[i] = mSequence[child];
+                i = child;
+            }
+            while (i > 0)
+            {
+                int parent = (i - 1) >>> 1;
+                if (!before(last, lastSequence, mHeap[parent], mSequence[parent]))
+                {
+                    break;
+                }
+                mHeap[i] = mHeap[parent];
+                mSequence[i] = mSequence[parent];
+                i = parent;
+            }
+            mHeap[i] = last;
+            mSequence[i] = lastSequence;
+        }
+
+        return removed;
+    }
+
+    private static boolean before(Event a, long aSequence, Event b, long bSequence)
+    {
+        return a.getTime() < b.getTime() ||
+               (a.getTime() == b.getTime() && aSequence < bSequence);
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A log-linear histogram of non-negative values with about 1.6% relative
+ * precision.  Recording is a few bit operations on a primitive array, with
+ * no boxing or allocation, so it can sit on the simulator's hot path.
+ */
+public class Histogram implements Checkpointable
+{
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MIN_EXPONENT = -20;    // Values below ~1e-6 share bucket 0
+    private static final int MAX_EXPONENT = 62;
+
+    private final long[] mCounts;
+    private long mCount;
+    private double mSum;
+    private double mMax;
+
+    public Histogram()
+    {
+        mCounts = new long[(MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS];
+    }
+
+    public void record(double value)
+    {
+        mCounts[index(value)]++;
+        mCount++;
+        mSum += value;
+        if (value > mMax)
+        {
+            mMax = value;
+        }
+    }
+
+    public long getCount()
+    {
+        return mCount;
+    }
+
+    public double getMean()
+    {
+        return mCount > 0 ? mSum / mCount : 0.0;
+    }
+
+    public double getMax()
+    {
+        return mMax;
+    }
+
+    /**
+     * The value below which "percentile" percent of the samples fall, or 0
+     * if nothing was recorded.
+     */
+    public double getPercentile(double percentile)
+    {
+        if (mCount == 0)
+        {
+            return 0.0;
+        }
+
+        long rank = (long)Math.ceil(percentile / 100.0 * mCount);
+        rank = Math.max(1, Math.min(rank, mCount));
+
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++)
+        {
+            seen += mCounts[i];
+            if (seen >= rank)
+            {
+                return Math.min(value(i), mMax);
+            }
+        }
+
+        return mMax;
+    }
+
+    /**
+     * Adds every sample of "other" to this histogram.
+     */
+    public void add(Histogram other)
+    {
+        for (int i = 0; i < mCounts.length; i++)
+        {
+            mCounts[i] += other.mCounts[i];
+        }
+        mCount += other.mCount;
+        mSum += other.mSum;
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    public void reset()
+    {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0.0;
+        mMax = 0.0;
+    }
+
+    // Only the buckets in use are written
+    public void save(DataOutput out) throws IOException
+    {
+        int used = 0;
+        for (long count : mCounts)
+        {
+            if (count != 0)
+            {
+                used++;
+            }
+        }
+
+        out.writeInt(used);
+        for (int i = 0; i < mCounts.length; i++)
+        {
+            if (mCounts[i] != 0)
+            {
+                out.writeInt(i);
+                out.writeLong(mCounts[i]);
+            }
+        }
+        out.writeLong(mCount);
+        out.writeDouble(mSum);
+        out.writeDouble(mMax);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        reset();
+
+        int used = in.readInt();
+        for (int i = 0; i < used; i++)
+        {
+            int index = in.readInt();
+            mCounts[index] = in.readLong();
+        }
+        mCount = in.readLong();
+        mSum = in.readDouble();
+        mMax = in.readDouble();
+    }
+
+    private static int index(double value)
+    {
+        if (!(value > 0.0))
+        {
+            return 0;
+        }
+
+        int exponent = Math.getExponent(value);
+        if (exponent < MIN_EXPONENT)
+        {
+            return 0;
+        }
+        if (exponent > MAX_EXPONENT)
+        {
+            exponent = MAX_EXPONENT;
+        }
+
+        // The top mantissa bits pick the linear sub-bucket
+        int sub = (int)((Double.doubleToRawLongBits(value) >>> (52 - SUB_BITS)) &
+                        (SUB_BUCKETS - 1));
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    /* Midpoint of bucket "index" */
+    private static double value(int index)
+    {
+        int exponent = index / SUB_BUCKETS + MIN_EXPONENT;
+        int sub = index % SUB_BUCKETS;
+        return Math.scalb(1.0 + (sub + 0.5) / SUB_BUCKETS, exponent);
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Decides how likely a link is to lose or corrupt each packet, in place of
+ * the independent draws a plain Link makes with fixed probabilities.  The
+ * link calls next() once for every packet it carries, then still takes
+ * one draw each from its loss and corruption streams and compares them to
+ * getLoss() and getCorrupt(), so a model only has to say what the odds
+ * are for the packet at hand.  Models with state of their own save it in
+ * checkpoints.
+ */
+public interface Impairment extends Checkpointable
+{
+    /**
+     * Moves the model on to a packet sent at "time".  "rand" is a stream
+     * of the link's own, for models that change state at random.
+     */
+    public void next(double time, RandomGenerator rand);
+
+    /**
+     * Chance that the current packet is lost, given the link's own loss
+     * probability.
+     */
+    public double getLoss(double loss);
+
+    /**
+     * Chance that the current packet is corrupted, given the link's own
+     * corruption probability.
+     */
+    public double getCorrupt(double corrupt);
+
+    /**
+     * The same model in its initial state, for another link.
+     */
+    public Impairment copy();
+}
@@ -0,0 +1,58 @@
+/**
+ * Runs every protocol over channels that lose the same share of their
+ * packets in different patterns: independently, in Gilbert-Elliott bursts
+ * of growing mean length, and in periodic outages.  Both directions get
+ * the same model.  Go-Back-N resends its whole window after a timeout,
+ * whether one packet of it was lost or all of them, so the loss pattern
+ * and not just the loss rate sets how many timeouts it sits through.
+ *
+ * Usage: java ImpairmentBenchmark [messages] [loss] [corrupt] [delay] [seed]
+ */
+public class ImpairmentBenchmark
+{
+    private static final String[] MODELS = { Scenario.BERNOULLI, "gilbert:2",
+                                             "gilbert:4", "gilbert:8",
+                                             "gilbert:16", "outage:200",
+                                             "outage:1000" };
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 5000;
+        double loss = argv.length > 1 ? Double.parseDouble(argv[1]) : 0.1;
+        double corrupt = argv.length > 2 ? Double.parseDouble(argv[2]) : 0.0;
+        double delay = argv.length > 3 ? Double.parseDouble(argv[3]) : 5.0;
+        long seed = argv.length > 4 ? Long.parseLong(argv[4]) : 1L;
+
+        Scenario scenario = new Scenario(messages, loss, corrupt, delay);
+        System.out.println(scenario + " seed=" + seed);
+        System.out.println("protocol  model         loss-rate  burst  " +
+                           "msgs/time  retransmissions  latency(p99)");
+
+        for (String protocol : ProtocolRegistry.names())
+        {
+            for (String model : MODELS)
+            {
+                Scenario run = scenario.copy();
+                run.setProtocol(protocol);
+                run.setImpairment(NetworkSimulator.A, model);
+                run.setImpairment(NetworkSimulator.B, model);
+
+                NetworkSimulator simulator = run.create(seed);
+                simulator.runSimulator();
+
+                Statistics result = simulator.getStatistics();
+                System.out.println(String.format(
+                        "%-8s  %-12s  %9.4f  %5s  %9.4f  %15d  %12.2f",
+                        protocol, model,
+                        result.get("Packets lost") /
+                            result.get("Packets sent to layer 3"),
+                        result.has("Mean data loss burst length") ?
+                            String.format("%.2f", result.get(
+                                "Mean data loss burst length")) : "-",
+                        result.get("Throughput (messages per time unit)"),
+                        (long)result.get("Number of re-transmissions"),
+                        result.get("Message latency p99")));
+            }
+        }
+    }
+}
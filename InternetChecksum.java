@@ -0,0 +1,34 @@
+/**
+ * The 16-bit ones' complement Internet checksum (RFC 1071) computed over the
+ * binary image of the packet.
+ */
+public class InternetChecksum implements PacketChecksum
+{
+    private final byte[] mImage = new byte[IMAGE_SIZE];
+
+    public int compute(int seqnum, int acknum, String payload)
+    {
+        int length = PacketChecksum.writeImage(mImage, seqnum, acknum, payload);
+
+        // The image is always an even number of bytes long
+        int sum = 0;
+        for (int i = 0; i < length; i += 2)
+            sum += ((mImage[i] & 0xff) << 8) | (mImage[i + 1] & 0xff);
+
+        // Fold the carries back into the low 16 bits
+        while ((sum >>> 16) != 0)
+            sum = (sum & 0xffff) + (sum >>> 16);
+
+        return ~sum & 0xffff;
+    }
+
+    public int getBits()
+    {
+        return 16;
+    }
+
+    public String getName()
+    {
+        return "internet";
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The default delivery sink: one-way latency from generation at A to
+ * delivery at B, including time spent waiting for the window and for
+ * retransmissions, in a histogram so that the tail can be reported.
+ *
+ * Messages must arrive in the order they were created.  The creation time
+ * and first character of every message in transit are kept in a ring of
+ * primitives, and each delivery is matched with the oldest entry.  Since
+ * the simulator's payloads cycle through the alphabet, a delivery whose
+ * first character differs from that entry's is counted as misordered.
+ */
+public class LatencySink implements DeliverySink
+{
+    private final Histogram mLatencies = new Histogram();
+
+    // Messages in transit, [mHead, mTail).  Counters are absolute; slots
+    // wrap around the rings.
+    private double[] mTimes = new double[64];
+    private char[] mFirst = new char[64];
+    private long mHead;
+    private long mTail;
+
+    private long mMisordered;               // Deliveries that did not match the oldest message
+    private long mUnmatched;                // Deliveries with nothing in transit
+
+    public void created(double time, String data)
+    {
+        if (mTail - mHead == mTimes.length)
+        {
+            grow();
+        }
+
+        int slot = (int)(mTail++ & (mTimes.length - 1));
+        mTimes[slot] = time;
+        mFirst[slot] = data.isEmpty() ? 0 : data.charAt(0);
+    }
+
+    public void delivered(double time, String data, int offset, int length)
+    {
+        if (mHead == mTail)
+        {
+            mUnmatched++;
+            return;
+        }
+
+        int slot = (int)(mHead++ & (mTimes.length - 1));
+        mLatencies.record(time - mTimes[slot]);
+        if ((length > 0 ? data.charAt(offset) : 0) != mFirst[slot])
+        {
+            mMisordered++;
+        }
+    }
+
+    public Histogram getLatencies()
+    {
+        return mLatencies;
+    }
+
+    // Messages accepted but not yet delivered
+    public long getInTransit()
+    {
+        return mTail - mHead;
+    }
+
+    public void report(Statistics statistics)
+    {
+        statistics.set("Average message latency", mLatencies.getMean());
+        statistics.set("Message latency p50", mLatencies.getPercentile(50.0));
+        statistics.set("Message latency p99", mLatencies.getPercentile(99.0));
+        statistics.set("Message latency p99.9", mLatencies.getPercentile(99.9));
+        statistics.set("Maximum message latency", mLatencies.getMax());
+        statistics.set("Misordered deliveries", mMisordered);
+        if (mUnmatched > 0)
+        {
+            statistics.set("Unmatched deliveries", mUnmatched);
+        }
+    }
+
+    private void grow()
+    {
+        double[] times = new double[mTimes.length * 2];
+        char[] first = new char[mFirst.length * 2];
+        for (long i = mHead; i < mTail; i++)
+        {
+            times[(int)(i & (times.length - 1))] = mTimes[(int)(i & (mTimes.length - 1))];
+            first[(int)(i & (first.length - 1))] = mFirst[(int)(i & (mFirst.length - 1))];
+        }
+        mTimes = times;
+        mFirst = first;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        mLatencies.save(out);
+        out.writeLong(mMisordered);
+        out.writeLong(mUnmatched);
+
+        out.writeInt((int)(mTail - mHead));
+        for (long i = mHead; i < mTail; i++)
+        {
+            int slot = (int)(i & (mTimes.length - 1));
+            out.writeDouble(mTimes[slot]);
+            out.writeChar(mFirst[slot]);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mLatencies.restore(in);
+        mMisordered = in.readLong();
+        mUnmatched = in.readLong();
+
+        int count = in.readInt();
+        int slots = Math.max(64, Integer.highestOneBit(Math.max(1, count)) * 2);
+        mTimes = new double[slots];
+        mFirst = new char[slots];
+        for (int i = 0; i < count; i++)
+        {
+            mTimes[i] = in.readDouble();
+            mFirst[i] = in.readChar();
+        }
+        mHead = 0;
+        mTail = count;
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One direction of one path between A and B.  Each link loses, corrupts
+ * and delays packets with its own parameters and its own random streams,
+ * and cannot reorder: a packet arrives "delay" time units after the one
+ * sent before it on the same link, or after it was sent if the link is
+ * idle.  Packets on different links are independent of each other.
+ *
+ * The time a packet spends waiting for those ahead of it is its queueing
+ * delay.  A link may be given a queue limit, a bottleneck buffer: a packet
+ * that finds that many packets still in flight ahead of it is dropped.
+ *
+ * An Impairment may take over the loss and corruption probabilities,
+ * packet by packet, to give the link bursts of loss or outages.  Without
+ * one every packet is lost or corrupted independently.
+ *
+ * With traffic classes, a DeficitRoundRobin scheduler holds the packets
+ * waiting for the link in a queue per class and decides which goes next;
+ * its queue limits then take the place of the link's.
+ */
+public class Link implements Checkpointable
+{
+    // Stream numbers, offset by destination and path, so that path 0 draws
+    // exactly what the single channel always did
+    private static final int LOSS_STREAM = 1;
+    private static final int CORRUPT_STREAM = 3;
+    private static final int DAMAGE_STREAM = 5;
+    private static final int DELAY_STREAM = 7;
+    private static final int IMPAIRMENT_STREAM = 11;
+    private static final int PATH_STREAMS = 16;
+
+    private double mLoss;
+    private double mCorrupt;
+    private double mMinDelay;
+    private double mMaxDelay;
+    private final RandomStream mLossRand;
+    private final RandomStream mCorruptRand;
+    private final RandomStream mDamageRand;
+    private final RandomStream mDelayRand;
+    private final RandomStream mImpairmentRand;
+    private Impairment mImpairment;         // null for independent draws
+    private DeficitRoundRobin mScheduler;   // null for a single FIFO queue
+    private double mLastArrival;            // Latest arrival scheduled so far
+    private int mQueueLimit;                // 0 for an unlimited queue
+
+    // Arrival times of the packets in flight, [mHead, mTail), kept only
+    // with a queue limit.  Counters are absolute; slots wrap around.
+    private double[] mArrivals = new double[16];
+    private long mHead;
+    private long mTail;
+
+    private long mPackets;
+    private long mLost;
+    private long mCorrupted;
+    private long mQueueDrops;
+    private double mQueueingDelay;          // Sum over the packets that were queued
+    private long mQueued;                   // Packets that entered the link
+    private long mLossBursts;               // Runs of consecutive losses
+    private boolean mLastLost;
+
+    public Link(long seed, int destination, int path, double loss,
+                double corrupt, double minDelay, double maxDelay)
+    {
+        if (!(minDelay >= 0.0) || !(maxDelay >= minDelay))
+        {
+            throw new IllegalArgumentException("link delays must satisfy " +
+                                               "0 <= min <= max");
+        }
+
+        int offset = PATH_STREAMS * path + destination;
+        mLossRand = new RandomStream(seed, LOSS_STREAM + offset);
+        mCorruptRand = new RandomStream(seed, CORRUPT_STREAM + offset);
+        mDamageRand = new RandomStream(seed, DAMAGE_STREAM + offset);
+        mDelayRand = new RandomStream(seed, DELAY_STREAM + offset);
+        mImpairmentRand = new RandomStream(seed, IMPAIRMENT_STREAM + offset);
+
+        mLoss = loss;
+        mCorrupt = corrupt;
+        mMinDelay = minDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    public void setLossProbability(double loss)
+    {
+        mLoss = loss;
+    }
+
+    public void setCorruptProbability(double corrupt)
+    {
+        mCorrupt = corrupt;
+    }
+
+    public void setImpairment(Impairment impairment)
+    {
+        mImpairment = impairment;
+    }
+
+    public Impairment getImpairment()
+    {
+        return mImpairment;
+    }
+
+    public void setScheduler(DeficitRoundRobin scheduler)
+    {
+        mScheduler = scheduler;
+    }
+
+    public DeficitRoundRobin getScheduler()
+    {
+        return mScheduler;
+    }
+
+    // When the packet last put on the link arrives, and the link is free
+    public double getFreeTime()
+    {
+        return mLastArrival;
+    }
+
+    /**
+     * Drop packets that find "packets" others in flight ahead of them; 0
+     * turns the limit off.
+     */
+    public void setQueueLimit(int packets)
+    {
+        if (packets < 0)
+        {
+            throw new IllegalArgumentException("queue limit must be >= 0");
+        }
+
+        mQueueLimit = packets;
+    }
+
+    // Every packet takes exactly one draw from each of these, in this
+    // order, so the n-th packet on a link always meets the same fate.  An
+    // impairment draws from a stream of its own, so it changes the odds
+    // but not the draws.  Nothing is counted until admit().
+    public boolean nextLost(double time)
+    {
+        double loss = mLoss;
+        if (mImpairment != null)
+        {
+            mImpairment.next(time, mImpairmentRand);
+            loss = mImpairment.getLoss(mLoss);
+        }
+
+        return mLossRand.nextDouble() < loss;
+    }
+
+    public boolean nextCorrupted()
+    {
+        double corrupt = mImpairment == null ? mCorrupt :
+                         mImpairment.getCorrupt(mCorrupt);
+        return mCorruptRand.nextDouble() < corrupt;
+    }
+
+    /**
+     * Counts a packet that got past the queue, with the fates drawn for it.
+     * Packets dropped at a full queue never reach the link, so they count
+     * neither as sent nor as lost, and do not break a burst of losses.
+     */
+    public void admit(boolean lost, boolean corrupted)
+    {
+        mPackets++;
+        if (lost)
+        {
+            mLost++;
+            if (!mLastLost)
+            {
+                mLossBursts++;
+            }
+        }
+        else if (corrupted)
+        {
+            mCorrupted++;
+        }
+        mLastLost = lost;
+    }
+
+    public double nextDelay()
+    {
+        return mMinDelay + mDelayRand.nextDouble() * (mMaxDelay - mMinDelay);
+    }
+
+    // Draws for the damage done to a corrupted packet
+    public RandomStream getDamageStream()
+    {
+        return mDamageRand;
+    }
+
+    /**
+     * Whether a packet sent at "time" finds the queue full.  Call after the
+     * random draws, so that drops here do not shift them.
+     */
+    public boolean isFull(double time)
+    {
+        if (mQueueLimit == 0)
+        {
+            return false;
+        }
+
+        while (mHead < mTail &&
+               mArrivals[(int)(mHead & (mArrivals.length - 1))] <= time)
+        {
+            mHead++;
+        }
+        if (mTail - mHead >= mQueueLimit)
+        {
+            mQueueDrops++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Schedules a packet sent at "time" behind whatever is still in flight
+     * on this link and returns its arrival time.
+     */
+    public double arrival(double time, double delay)
+    {
+        double start = Math.max(mLastArrival, time);
+        mQueueingDelay += start - time;
+        mQueued++;
+        mLastArrival = start + delay;
+
+        if (mQueueLimit > 0)
+        {
+            if (mTail - mHead == mArrivals.length)
+            {
+                double[] arrivals = new double[mArrivals.length * 2];
+                for (long i = mHead; i < mTail; i++)
+                {
+                    arrivals[(int)(i & (arrivals.length - 1))] =
+                        mArrivals[(int)(i & (mArrivals.length - 1))];
+                }
+                mArrivals = arrivals;
+            }
+            mArrivals[(int)(mTail++ & (mArrivals.length - 1))] = mLastArrival;
+        }
+
+        return mLastArrival;
+    }
+
+    public double getMinDelay()
+    {
+        return mMinDelay;
+    }
+
+    public double getMeanDelay()
+    {
+        return (mMinDelay + mMaxDelay) / 2.0;
+    }
+
+    public long getPackets()
+    {
+        return mPackets;
+    }
+
+    public long getLost()
+    {
+        return mLost;
+    }
+
+    public long getCorrupted()
+    {
+        return mCorrupted;
+    }
+
+    public long getLossBursts()
+    {
+        return mLossBursts;
+    }
+
+    public long getQueueDrops()
+    {
+        return mQueueDrops;
+    }
+
+    public int getQueueLimit()
+    {
+        return mQueueLimit;
+    }
+
+    public double getQueueingDelay()
+    {
+        return mQueueingDelay;
+    }
+
+    public long getQueued()
+    {
+        return mQueued;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeDouble(mLoss);
+        out.writeDouble(mCorrupt);
+        out.writeDouble(mMinDelay);
+        out.writeDouble(mMaxDelay);
+        out.writeLong(mLossRand.getState());
+        out.writeLong(mCorruptRand.getState());
+        out.writeLong(mDamageRand.getState());
+        out.writeLong(mDelayRand.getState());
+        out.writeDouble(mLastArrival);
+        out.writeLong(mPackets);
+        out.writeLong(mLost);
+        out.writeLong(mCorrupted);
+        out.writeInt(mQueueLimit);
+        out.writeLong(mQueueDrops);
+        out.writeDouble(mQueueingDelay);
+        out.writeLong(mQueued);
+        out.writeInt((int)(mTail - mHead));
+        for (long i = mHead; i < mTail; i++)
+        {
+            out.writeDouble(mArrivals[(int)(i & (mArrivals.length - 1))]);
+        }
+        out.writeLong(mLossBursts);
+        out.writeBoolean(mLastLost);
+        out.writeBoolean(mImpairment != null);
+        if (mImpairment != null)
+        {
+            out.writeUTF(mImpairment.getClass().getName());
+            out.writeLong(mImpairmentRand.getState());
+            mImpairment.save(out);
+        }
+        out.writeBoolean(mScheduler != null);
+        if (mScheduler != null)
+        {
+            mScheduler.save(out);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mLoss = in.readDouble();
+        mCorrupt = in.readDouble();
+        mMinDelay = in.readDouble();
+        mMaxDelay = in.readDouble();
+        mLossRand.setState(in.readLong());
+        mCorruptRand.setState(in.readLong());
+        mDamageRand.setState(in.readLong());
+        mDelayRand.setState(in.readLong());
+        mLastArrival = in.readDouble();
+        mPackets = in.readLong();
+        mLost = in.readLong();
+        mCorrupted = in.readLong();
+        mQueueLimit = in.readInt();
+        mQueueDrops = in.readLong();
+        mQueueingDelay = in.readDouble();
+        mQueued = in.readLong();
+        int queued = in.readInt();
+        mArrivals = new double[Math.max(16, Integer.highestOneBit(queued) << 1)];
+        for (int i = 0; i < queued; i++)
+        {
+            mArrivals[i] = in.readDouble();
+        }
+        mHead = 0;
+        mTail = queued;
+        mLossBursts = in.readLong();
+        mLastLost = in.readBoolean();
+        if (in.readBoolean())
+        {
+            // As with traffic, the model itself must be set beforehand
+            String impairmentClass = in.readUTF();
+            if (mImpairment == null ||
+                !impairmentClass.equals(mImpairment.getClass().getName()))
+            {
+                throw new IOException("checkpoint was taken with a " +
+                                      impairmentClass + " link");
+            }
+            mImpairmentRand.setState(in.readLong());
+            mImpairment.restore(in);
+        }
+        else if (mImpairment != null)
+        {
+            throw new IOException("checkpoint was taken without impairments");
+        }
+        if (in.readBoolean() != (mScheduler != null))
+        {
+            throw new IOException("checkpoint traffic classes do not match");
+        }
+        if (mScheduler != null)
+        {
+            mScheduler.restore(in);
+        }
+    }
+}
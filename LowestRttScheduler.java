@@ -0,0 +1,83 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Sends on the path with the lowest smoothed RTT that still has room, in
+ * the manner of MPTCP's default scheduler.  Each path may carry an equal
+ * share of the window, so the fastest path fills first and slower ones
+ * only take the overflow.  Paths not yet measured are tried first.
+ */
+public class LowestRttScheduler implements PathScheduler
+{
+    private static final double GAIN = 0.125;   // Weight of a new sample, as in TCP
+
+    private final int mShare;               // Packets one path may have in flight
+    private final double[] mSmoothedRtt;    // NaN until the first sample
+
+    public LowestRttScheduler(int paths, int window)
+    {
+        mShare = (window + paths - 1) / paths;
+        mSmoothedRtt = new double[paths];
+        for (int i = 0; i < paths; i++)
+        {
+            mSmoothedRtt[i] = Double.NaN;
+        }
+    }
+
+    public int choose(int[] inFlight)
+    {
+        int best = -1;
+        double bestRtt = Double.POSITIVE_INFINITY;
+        for (int path = 0; path < mSmoothedRtt.length; path++)
+        {
+            double rtt = Double.isNaN(mSmoothedRtt[path]) ? 0.0 : mSmoothedRtt[path];
+            if (inFlight[path] < mShare && rtt < bestRtt)
+            {
+                best = path;
+                bestRtt = rtt;
+            }
+        }
+
+        // Every path at its share: the sender's window is larger than usual
+        return best >= 0 ? best : 0;
+    }
+
+    public void acked(int path, double rtt)
+    {
+        if (Double.isNaN(rtt))
+        {
+            return;
+        }
+
+        if (Double.isNaN(mSmoothedRtt[path]))
+        {
+            mSmoothedRtt[path] = rtt;
+        }
+        else
+        {
+            mSmoothedRtt[path] += GAIN * (rtt - mSmoothedRtt[path]);
+        }
+    }
+
+    public String getName()
+    {
+        return "rtt";
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        for (double rtt : mSmoothedRtt)
+        {
+            out.writeDouble(rtt);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        for (int i = 0; i < mSmoothedRtt.length; i++)
+        {
+            mSmoothedRtt[i] = in.readDouble();
+        }
+    }
+}
@@ -14,7 +14,7 @@ public class Message
         }
         else
         {
-            data = new String(inputData);
+            data = inputData;
         }
     }
            
@@ -32,7 +32,7 @@ public class Message
         }
         else
         {
-            data = new String(inputData);
+            data = inputData;
             return true;
         }
     }
@@ -0,0 +1,76 @@
+/**
+ * Stripes one Go-Back-N transfer over one to MAX_PATHS parallel paths with
+ * each scheduler, and reports how aggregate throughput scales with the
+ * number of paths.  Path 0 is the usual channel; path k is "spread" times
+ * k slower on average, so the schedulers have something to tell apart.
+ * The load and window are sized so that the links, not the traffic, are
+ * the bottleneck.
+ *
+ * Usage: java MultipathBenchmark [messages] [delay] [window] [spread]
+ *                                [loss] [corrupt] [seed]
+ */
+public class MultipathBenchmark
+{
+    private static final int MAX_PATHS = 4;
+    private static final String[] SCHEDULERS = { "roundrobin", "rtt", "goodput" };
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 5000;
+        double delay = argv.length > 1 ? Double.parseDouble(argv[1]) : 0.5;
+        int window = argv.length > 2 ? Integer.parseInt(argv[2]) : 16;
+        double spread = argv.length > 3 ? Double.parseDouble(argv[3]) : 0.5;
+        double loss = argv.length > 4 ? Double.parseDouble(argv[4]) : 0.05;
+        double corrupt = argv.length > 5 ? Double.parseDouble(argv[5]) : 0.05;
+        long seed = argv.length > 6 ? Long.parseLong(argv[6]) : 1L;
+
+        Scenario scenario = new Scenario(messages, loss, corrupt, delay);
+        scenario.getConfig().setWindowSize(window);
+        // Room for a full window queued on the slowest link before a timeout
+        scenario.getConfig().setTimeout(Math.max(50.0, 10.0 * window));
+        scenario.getConfig().setBufferSize(Math.max(window,
+                scenario.getConfig().getBufferSize()));
+
+        System.out.println(scenario + " spread=" + spread + " seed=" + seed);
+        System.out.println("paths   scheduler  delivered  msgs/time  speedup" +
+                           "  retransmissions  held-for-reorder");
+
+        double single = 0.0;
+        for (int paths = 1; paths <= MAX_PATHS; paths++)
+        {
+            for (String scheduler : SCHEDULERS)
+            {
+                Scenario run = scenario.copy();
+                run.getConfig().setScheduler(scheduler);
+
+                NetworkSimulator simulator = run.create(seed);
+                for (int path = 1; path < paths; path++)
+                {
+                    double slower = 1.0 + spread * path;
+                    simulator.addPath(loss, corrupt, 1.0 * slower, 10.0 * slower);
+                }
+                simulator.runSimulator();
+
+                Statistics result = simulator.getStatistics();
+                double throughput = result.get("Throughput (messages per time unit)");
+                if (paths == 1)
+                {
+                    single = throughput;
+                }
+                System.out.println(String.format("%5d  %10s  %9d  %9.4f  %7.2f  %15d  %16s",
+                        paths, scheduler,
+                        (long)result.get("Messages delivered"), throughput,
+                        throughput / single,
+                        (long)result.get("Number of re-transmissions"),
+                        paths > 1 ? String.valueOf((long)result.get("Packets held for reordering"))
+                                  : "-"));
+
+                // The scheduler plays no part with a single path
+                if (paths == 1)
+                {
+                    break;
+                }
+            }
+        }
+    }
+}
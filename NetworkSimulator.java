@@ -1,6 +1,16 @@
-import java.util.Random;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
 
-public abstract class NetworkSimulator
+public class NetworkSimulator implements ProtocolHost
 {
     // This constant controls the maximum size of the buffer in a Message
     // and in a Packet
@@ -10,34 +20,101 @@ public abstract class NetworkSimulator
     public static final int TIMERINTERRUPT = 0;
     public static final int FROMLAYER5 = 1;
     public static final int FROMLAYER3 = 2;
+    public static final int FORWARD = 3;
+    public static final int LINKFREE = 4;
+    public static final int CROSSTRAFFIC = 5;
     
     // These constants represent our sender and receiver 
     public static final int A = 0;
     public static final int B = 1;
+    
+    // Stream numbers used to derive independent random streams from the
+    // seed.  Each Link numbers its own channel streams.
+    private static final int ARRIVAL_STREAM = 0;
+    private static final int SIZE_STREAM = 9;
+    private static final int CROSS_STREAM = 1 << 30;    // Plus the flow
+    
+    // The delay range of the original single channel, used by path 0
+    private static final double MIN_DELAY = 1.0;
+    private static final double MAX_DELAY = 10.0;
+    
+    // Identifies checkpoint files written by saveCheckpoint()
+    private static final int CHECKPOINT_MAGIC = 0x52545043;
+    private static final int CHECKPOINT_VERSION = 11;
+    
+    // Resolution and size of the timing wheel, and the tag of the timers
+    // started through the one-per-entity startTimer(entity, increment)
+    private static final double TIMER_TICK = 1.0;
+    private static final int TIMER_SLOTS = 256;
+    private static final int ENTITY_TIMER = -1;
+    private static final int FLUSH_TIMER = -2;
 
-    private int maxMessages;
-    private double lossProb;
-    private double corruptProb;
+    private long seed;
+    private long maxMessages;
     private double avgMessageDelay;
+    private int messageSize;
     private int traceLevel;
     private EventList eventList;
+    private TimingWheel timers;
+    private TimerHandle[] entityTimers;
+    private TrafficSource traffic;
+    private PayloadPool payloads;
+    private Segmenter segmenter;
+    private Reassembler reassembler;
+    private Coalescer coalescer;
+    private double flushDelay;
+    private TimerHandle flushTimer;
+    private DeliverySink sink;
+    private long nMalformedFrames;
+    private TimeSeriesRecorder series;
+    
+    // The transport protocol under test.  Each run uses exactly one sender
+    // and one receiver class, so the calls below stay monomorphic.
+    private ProtocolFactory protocol;
+    private ProtocolConfig config;
+    private Sender sender;
+    private Receiver receiver;
 
-    private Random rand;
-
-    private int nSim;
-    private int nToLayer3;
-    private int nLost;
-    private int nCorrupt;
-    private double time;
+    // One stream per source of randomness, and per link for the channel,
+    // so that a protocol change which alters how many packets are sent
+    // cannot shift the arrival process (common random numbers)
+    private RandomStream arrivalRand;
+    private RandomStream sizeRand;
+    
+    // The paths between A and B, indexed [destination][path]
+    private Link[][] links;
+    private Impairment[] impairments = new Impairment[2];  // Per destination, or null
     
+    // Traffic classes sharing every path, if any, how the protocol's
+    // packets are sorted into them, and the cross traffic competing with
+    // the protocol for the paths
+    private List<String> classNames = new ArrayList<String>();
+    private double[] classWeights = new double[0];
+    private int[] classLimits = new int[0];
+    private PacketClassifier classifier;
+    private List<CrossFlow> crossFlows = new ArrayList<CrossFlow>();
+    private static final Packet CROSS_PACKET =
+        new Packet(-1, -1, 0, "x".repeat(MAXDATASIZE));
     
-    protected abstract void aOutput(Message message);
-    protected abstract void aInput(Packet packet);
-    protected abstract void aTimerInterrupt();
-    protected abstract void aInit();
+    // Routers between A and B instead of the paths; null if there are none
+    private Topology topology;
+    
+    // The one endpoint hosted here when a run is split across processes,
+    // or -1 for both, and the arrivals waiting to go to the other one
+    private int partition = -1;
+    private List<Event> outgoing = new ArrayList<Event>();
 
-    protected abstract void bInput(Packet packet);
-    protected abstract void bInit();
+    private long nSim;
+    private long nToLayer3;
+    private long nLost;
+    private long nCorrupt;
+    private long nUndetectedCorrupt;
+    private long nUnroutable;
+    private boolean deliveringCorrupt;
+    private long nDelivered;
+    private long nDeliveredBytes;
+    private double time;
+    
     
     public NetworkSimulator(int numMessages,
                             double loss,
@@ -46,37 +123,531 @@ public abstract class NetworkSimulator
                             int trace,
                             long seed)
     {
+        this((long)numMessages, loss, corrupt, avgDelay, trace, seed);
+    }
+    
+    public NetworkSimulator(long numMessages,
+                            double loss,
+                            double corrupt,
+                            double avgDelay,
+                            int trace,
+                            long seed)
+    {
+        this.seed = seed;
         maxMessages = numMessages;
-        lossProb = loss;
-        corruptProb = corrupt;
         avgMessageDelay = avgDelay;
+        messageSize = MAXDATASIZE;
         traceLevel = trace;
         eventList = new EventListImpl();
+        timers = new TimingWheel(eventList, TIMER_TICK, TIMER_SLOTS);
+        entityTimers = new TimerHandle[2];
         
-        rand = new Random(seed);
+        arrivalRand = new RandomStream(seed, ARRIVAL_STREAM);
+        sizeRand = new RandomStream(seed, SIZE_STREAM);
+        links = new Link[2][1];
+        for (int entity = A; entity <= B; entity++)
+        {
+            links[entity][0] = new Link(seed, entity, 0, loss, corrupt,
+                                        MIN_DELAY, MAX_DELAY);
+        }
         
         nSim = 0;
         nToLayer3 = 0;
         nLost = 0;
         nCorrupt = 0;
+        nUndetectedCorrupt = 0;
+        nUnroutable = 0;
+        deliveringCorrupt = false;
+        nDelivered = 0;
+        nDeliveredBytes = 0;
+        nMalformedFrames = 0;
+        flushDelay = -1.0;
+        sink = new LatencySink();
         time = 0.0;
+        
+        protocol = ProtocolRegistry.get(ProtocolRegistry.DEFAULT);
+        config = new ProtocolConfig();
     }
     
-    public void runSimulator()
+    // Selects the transport protocol by its registered name
+    public void setProtocol(String name)
     {
-        Event next;
+        ProtocolFactory factory = ProtocolRegistry.get(name);
+        if (factory == null)
+        {
+            throw new IllegalArgumentException("unknown protocol " + name);
+        }
+        
+        protocol = factory;
+    }
+    
+    public void setProtocol(ProtocolFactory factory)
+    {
+        protocol = factory;
+    }
+    
+    public String getProtocolName()
+    {
+        return protocol.getName();
+    }
+    
+    // The parameters handed to the protocol; change them before running
+    public ProtocolConfig getConfig()
+    {
+        return config;
+    }
+    
+    public void setConfig(ProtocolConfig c)
+    {
+        config = c;
+    }
+    
+    // Sets the size of the messages generated by layer 5 when the default
+    // traffic source is used.  Messages larger than MAXDATASIZE are
+    // segmented above aOutput and reassembled before they are delivered at B.
+    public void setMessageSize(int size)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("message size must be > 0");
+        }
+        if (traffic == null)
+        {
+            checkCoalescing(flushDelay, size);
+        }
+        
+        messageSize = size;
+    }
+    
+    // Replaces the in-memory event list, e.g. with a SpillingEventList for
+    // very large runs.  Must be called before start() or restoreCheckpoint().
+    public void setEventList(EventList list)
+    {
+        eventList = list;
+        timers = new TimingWheel(eventList, TIMER_TICK, TIMER_SLOTS);
+    }
+    
+    // Packs small messages into shared packets instead of sending one
+    // packet each.  A partly filled packet waits while A has packets in
+    // flight, but never longer than "delay" time units.  Every message must
+    // fit in one frame, at most Coalescer.MAX_FRAME bytes, so the default
+    // MAXDATASIZE messages need a smaller setMessageSize() or a traffic
+    // source of small ones first.
+    public void setCoalescing(double delay)
+    {
+        if (delay < 0.0)
+        {
+            throw new IllegalArgumentException("flush delay must be >= 0");
+        }
+        checkCoalescing(delay, traffic != null ? traffic.getMaxSize()
+                                               : messageSize);
+        
+        flushDelay = delay;
+    }
+    
+    /* Refuse coalescing, on when "delay" >= 0, of messages up to "maxSize"
+       bytes if one of them would not fit in a frame */
+    private static void checkCoalescing(double delay, int maxSize)
+    {
+        if (delay >= 0.0 && maxSize > Coalescer.MAX_FRAME)
+        {
+            throw new IllegalArgumentException("coalescing needs messages " +
+                    "of at most " + Coalescer.MAX_FRAME + " bytes");
+        }
+    }
+    
+    // Replaces the default LatencySink, which measures how long each
+    // message takes from layer 5 to layer 5.  Must be called before start()
+    // or restoreCheckpoint().
+    public void setDeliverySink(DeliverySink s)
+    {
+        sink = s;
+    }
+    
+    public DeliverySink getDeliverySink()
+    {
+        return sink;
+    }
+    
+    // Replaces the default uniform arrival process
+    public void setTrafficSource(TrafficSource source)
+    {
+        checkCoalescing(flushDelay, source.getMaxSize());
+        traffic = source;
+    }
+    
+    // Changes the channel of path 0, e.g. after restoring a checkpoint to
+    // fork an experiment with different conditions
+    public void setLossProbability(double loss)
+    {
+        links[A][0].setLossProbability(loss);
+        links[B][0].setLossProbability(loss);
+    }
+    
+    public void setCorruptProbability(double corrupt)
+    {
+        links[A][0].setCorruptProbability(corrupt);
+        links[B][0].setCorruptProbability(corrupt);
+    }
+    
+    // Adds a path between A and B alongside the original channel, with a
+    // link in each direction, and returns its number.  Packets are sent on
+    // the path named by Packet.getPath().  Must be called before start().
+    public int addPath(double loss, double corrupt, double minDelay,
+                       double maxDelay)
+    {
+        int path = links[A].length;
+        for (int entity = A; entity <= B; entity++)
+        {
+            links[entity] = Arrays.copyOf(links[entity], path + 1);
+            links[entity][path] = new Link(seed, entity, path, loss, corrupt,
+                                           minDelay, maxDelay);
+            links[entity][path].setQueueLimit(links[entity][0].getQueueLimit());
+            if (impairments[entity] != null)
+            {
+                links[entity][path].setImpairment(impairments[entity].copy());
+            }
+            links[entity][path].setScheduler(newScheduler(links[entity][path]));
+        }
+        
+        return path;
+    }
+    
+    // Gives every link toward "destination", on every path, its own copy
+    // of "impairment"; null goes back to independent losses.  Packets to
+    // B carry data and packets to A carry ACKs, so the two directions can
+    // be impaired apart.  Topology links are not affected.
+    public void setImpairment(int destination, Impairment impairment)
+    {
+        if (destination != A && destination != B)
+        {
+            throw new IllegalArgumentException("no entity " + destination);
+        }
+
+        impairments[destination] = impairment;
+        for (Link link : links[destination])
+        {
+            link.setImpairment(impairment == null ? null : impairment.copy());
+        }
+    }
+    
+    public Impairment getImpairment(int destination)
+    {
+        return impairments[destination];
+    }
+    
+    // Adds a traffic class to every path, in both directions.  While
+    // several classes have packets waiting for a link, each gets a share
+    // of its time in proportion to "weight"; a class queues at most
+    // "queueLimit" packets, or any number if 0, and these limits replace
+    // setQueueLimit()'s.  Classes are numbered from 0 in the order added,
+    // and the protocol's packets all go to class 0 unless a classifier
+    // sorts them.  Classes schedule the direct paths only, so they cannot
+    // be combined with a topology.  Must be called before start().
+    public int addTrafficClass(String name, double weight, int queueLimit)
+    {
+        if (!(weight > 0.0) || queueLimit < 0)
+        {
+            throw new IllegalArgumentException("class weights must be > 0 " +
+                                               "and queue limits >= 0");
+        }
+        if (topology != null)
+        {
+            throw new IllegalStateException("traffic classes cannot be " +
+                                            "used with a topology");
+        }
+        
+        int trafficClass = classNames.size();
+        classNames.add(name);
+        classWeights = Arrays.copyOf(classWeights, trafficClass + 1);
+        classWeights[trafficClass] = weight;
+        classLimits = Arrays.copyOf(classLimits, trafficClass + 1);
+        classLimits[trafficClass] = queueLimit;
+        for (int entity = A; entity <= B; entity++)
+        {
+            for (Link link : links[entity])
+            {
+                link.setScheduler(newScheduler(link));
+            }
+        }
+        
+        return trafficClass;
+    }
+    
+    public int getTrafficClassCount()
+    {
+        return classNames.size();
+    }
+    
+    public void setClassifier(PacketClassifier c)
+    {
+        classifier = c;
+    }
+    
+    // Adds a flow of full packets toward "destination" on path 0, in class
+    // "trafficClass", sent at random at a mean of "rate" per time unit.
+    // They compete with the protocol's packets for the link and are
+    // discarded where they arrive.  Must be called before start().
+    public int addCrossTraffic(int destination, int trafficClass, double rate)
+    {
+        if (trafficClass < 0 || trafficClass >= classNames.size() ||
+            !(rate > 0.0))
+        {
+            throw new IllegalArgumentException("cross traffic needs a " +
+                                               "traffic class and a rate > 0");
+        }
+        
+        int flow = crossFlows.size();
+        crossFlows.add(new CrossFlow(destination, trafficClass, rate,
+                                     new RandomStream(seed, CROSS_STREAM + flow)));
+        return flow;
+    }
+    
+    private DeficitRoundRobin newScheduler(Link link)
+    {
+        if (classNames.isEmpty())
+        {
+            return null;
+        }
+        
+        return new DeficitRoundRobin(classWeights, classLimits,
+                                     link.getMeanDelay());
+    }
+    
+    public int getPathCount()
+    {
+        return links[A].length;
+    }
+    
+    // Sends every packet across "topology", hop by hop, instead of over
+    // the direct paths, which then play no part.  Must be called before
+    // start(), and not with traffic classes.
+    public void setTopology(Topology topology)
+    {
+        if (!classNames.isEmpty())
+        {
+            throw new IllegalStateException("traffic classes cannot be " +
+                                            "used with a topology");
+        }
+        
+        topology.build(seed);
+        this.topology = topology;
+    }
+    
+    public Topology getTopology()
+    {
+        return topology;
+    }
+    
+    // Hosts only endpoint "entity"; packets for the other one are queued
+    // for takeOutgoing() instead of scheduled, and a driver hands in the
+    // other side's with deliver().  Must be called before start().
+    public void setPartition(int entity)
+    {
+        if (entity != A && entity != B)
+        {
+            throw new IllegalArgumentException("no entity " + entity);
+        }
+        if (topology != null)
+        {
+            throw new IllegalStateException("a topology cannot be partitioned");
+        }
+        
+        partition = entity;
+    }
+    
+    public int getPartition()
+    {
+        return partition;
+    }
+    
+    // No packet arrives sooner than this after it was sent
+    public double getLookahead()
+    {
+        double lookahead = Double.POSITIVE_INFINITY;
+        for (int entity = A; entity <= B; entity++)
+        {
+            for (Link link : links[entity])
+            {
+                lookahead = Math.min(lookahead, link.getMinDelay());
+            }
+        }
+        return lookahead;
+    }
+    
+    // The arrivals scheduled for the other partition since the last call
+    public List<Event> takeOutgoing()
+    {
+        List<Event> events = outgoing;
+        outgoing = new ArrayList<Event>();
+        return events;
+    }
+    
+    // Schedules an arrival sent by the other partition
+    public void deliver(Event event)
+    {
+        eventList.add(event);
+    }
+    
+    // The time of the next event or timer here, or infinity
+    public double getNextEventTime()
+    {
+        return Math.min(eventList.peekTime(), timers.earliestDeadline());
+    }
+    
+    // This partition's share of isFinished(): all of A's work is done, or
+    // B has consumed everything it was given
+    public boolean isPartitionFinished()
+    {
+        if (partition == B)
+        {
+            return receiver != null && receiver.getBuffered() == 0;
+        }
         
-        // Perform any student-required initialization
-        aInit();
-        bInit();
+        return nSim >= maxMessages && sender != null &&
+               sender.getOutstanding() == 0 &&
+               (segmenter == null || !segmenter.hasNext()) &&
+               (coalescer == null || !coalescer.hasNext());
+    }
+    
+    private boolean hosts(int entity)
+    {
+        return partition < 0 || partition == entity;
+    }
+    
+    // Gives every link, including paths added later, a bottleneck queue of
+    // "packets": a packet that finds that many ahead of it in flight is
+    // dropped.  0, the default, queues without limit.
+    public void setQueueLimit(int packets)
+    {
+        for (int entity = A; entity <= B; entity++)
+        {
+            for (Link link : links[entity])
+            {
+                link.setQueueLimit(packets);
+            }
+        }
+    }
+    
+    // Streams a snapshot of the run every "interval" time units to "path",
+    // as CSV, or as JSON lines if the name ends in .json or .jsonl
+    public void setTimeSeries(String path, double interval) throws IOException
+    {
+        series = new TimeSeriesRecorder(this, path, interval);
+    }
+    
+    public void runSimulator()
+    {
+        start();
+        runUntil(Double.POSITIVE_INFINITY);
+    }
+    
+    // Creates the protocol and schedules the first arrival.  Call either
+    // this or restoreCheckpoint() once, then runUntil() as often as needed.
+    public void start()
+    {
+        setUp();
         
         // Start the whole thing off by scheduling some data arrival
         // from layer 5
-        generateNextArrival();
+        if (hosts(A))
+        {
+            generateNextArrival();
+        }
+        
+        // Cross traffic starts on the side that sends it
+        for (int flow = 0; flow < crossFlows.size(); flow++)
+        {
+            if (hosts(1 - crossFlows.get(flow).destination))
+            {
+                generateCrossTraffic(flow);
+            }
+        }
+        
+        if (series != null)
+        {
+            series.begin(time);
+        }
+    }
+    
+    // Continues a run that was started or restored until it ends
+    public void resume()
+    {
+        runUntil(Double.POSITIVE_INFINITY);
+    }
+    
+    public boolean hasPendingEvents()
+    {
+        if (isFinished())
+        {
+            return false;
+        }
+        
+        return eventList.peekTime() != Double.POSITIVE_INFINITY ||
+               timers.size() > 0;
+    }
+    
+    // Every message has been generated, acknowledged and consumed.  A
+    // partition cannot tell on its own; its driver decides.
+    private boolean isFinished()
+    {
+        return partition < 0 && nSim >= maxMessages && sender != null &&
+               sender.getOutstanding() == 0 && receiver.getBuffered() == 0 &&
+               (segmenter == null || !segmenter.hasNext()) &&
+               (coalescer == null || !coalescer.hasNext());
+    }
+    
+    private void setUp()
+    {
+        // Create and initialize both halves of the protocol
+        sender = protocol.createSender(this, config);
+        receiver = protocol.createReceiver(this, config);
+        sender.init();
+        receiver.init();
+        
+        if (traffic == null)
+        {
+            traffic = new UniformTraffic(avgMessageDelay, messageSize);
+        }
+        payloads = new PayloadPool();
+        
+        if (flushDelay >= 0.0)
+        {
+            coalescer = new Coalescer();
+        }
+        else if (traffic.getMaxSize() > MAXDATASIZE)
+        {
+            segmenter = new Segmenter();
+            reassembler = new Reassembler();
+        }
+    }
+    
+    // Processes every event up to and including time "until"
+    public void runUntil(double until)
+    {
+        Event next;
         
         // Begin the main loop
         while (true)
         {
+            // If we've reached the maximum message count and A has nothing
+            // left to send, exit the main loop; what remains is duplicate
+            // ACKs and arrivals that would be discarded
+            if (isFinished())
+            {
+                break;
+            }
+            
+            // Timers due before the next event, or the horizon, join the
+            // event list now; the rest stay on the wheel
+            timers.advance(Math.min(eventList.peekTime(), until));
+            
+            // Leave events past the horizon queued for the next call
+            if (eventList.peekTime() > until)
+            {
+                break;
+            }
+            
             // Get our next event
             next = eventList.removeNext();
             if (next == null)
@@ -84,6 +655,16 @@ public abstract class NetworkSimulator
                 break;
             }
             
+            // A timer cancelled after it was queued never fires
+            if (next.getTimer() != null)
+            {
+                if (!timers.fire(next.getTimer()))
+                {
+                    continue;
+                }
+                FlightEvents.timerExpired(next.getTime(), next.getTimer());
+            }
+            
             if (traceLevel >= 2)
             {
                 System.out.println();
@@ -92,45 +673,84 @@ public abstract class NetworkSimulator
                 System.out.println("  entity: " + next.getEntity());
             }
             
-            // Advance the simulator's time
+            // Advance the simulator's time, closing any time-series
+            // windows that end before this event
             time = next.getTime();
-            
-            // If we've reached the maximum message count, exit the main loop
-            if (nSim >= maxMessages)
+            if (series != null)
             {
-                //break;
+                series.advance(time);
             }
             
             // Perform the appropriate action based on the event 
             switch (next.getType())
             {
                 case TIMERINTERRUPT:
-                    if (next.getEntity() == A)
+                    int tag = next.getTimer().getTag();
+                    if (tag == FLUSH_TIMER)
+                    {
+                        flushTimer = null;
+                    }
+                    else if (tag != ENTITY_TIMER)
+                    {
+                        if (next.getEntity() == A)
+                        {
+                            sender.timerExpired(tag);
+                        }
+                        else
+                        {
+                            receiver.timerExpired(tag);
+                        }
+                    }
+                    else if (next.getEntity() == A)
                     {
-                        aTimerInterrupt();
+                        entityTimers[A] = null;
+                        sender.timerInterrupt();
                     }
                     else
                     {
                         System.out.println("INTERNAL PANIC: Timeout for " +
                                            "invalid entity");
                     }
+                    
+                    pumpSegments();
                     break;
                     
                 case FROMLAYER3:
+                    // Remember whether this packet was damaged in transit so
+                    // that a delivery to layer 5 can be flagged as undetected
+                    deliveringCorrupt = next.isCorrupted();
+
                     if (next.getEntity() == A)
                     {
-                        aInput(next.getPacket());
+                        sender.input(next.getPacket());
                     }
                     else if (next.getEntity() == B)
                     {
-                        bInput(next.getPacket());
+                        receiver.input(next.getPacket());
                     }
                     else
                     {
                         System.out.println("INTERNAL PANIC: Packet has " +
                                            "arrived for unknown entity");
                     }
+
+                    deliveringCorrupt = false;
+                    pumpSegments();
+                    break;
+                    
+                case FORWARD:
+                    topology.forwarded(next.getNode());
+                    forward(next.getNode(), next.getEntity(),
+                            next.getPacket(), next.isCorrupted());
+                    break;
+                    
+                case LINKFREE:
+                    linkFree(next.getEntity(), next.getNode());
+                    break;
                     
+                case CROSSTRAFFIC:
+                    generateCrossTraffic(next.getNode());
+                    sendCrossTraffic(next.getNode());
                     break;
                     
                 case FROMLAYER5:
@@ -138,24 +758,48 @@ public abstract class NetworkSimulator
                     if (nSim >= maxMessages)
                         continue;
 
+                    // The size belongs to this arrival, so draw it before
+                    // the next one is scheduled
+                    int size = traffic.nextSize(sizeRand);
+                    
                     // If a message has arrived from layer 5, we need to
                     // schedule the arrival of the next message
                     generateNextArrival();
                     
-                    char[] nextMessage = new char[MAXDATASIZE];
-                    
-                    // Now, let's generate the contents of this message
-                    char j = (char)((nSim % 26) + 97);
-                    for (int i = 0; i < MAXDATASIZE; i++)
-                    {
-                        nextMessage[i] = j;
-                    }
+                    // Now, let's pick the contents of this message from the
+                    // pool of preallocated payloads
+                    int letter = (int)(nSim % 26);
                     
                     // Increment the message counter
                     nSim++;
                     
-                    // Let the student handle the new message
-                    aOutput(new Message(new String(nextMessage)));
+                    // Let the protocol handle the new message, a segment at
+                    // a time if it does not fit in one packet.  Queued
+                    // messages are always sent in the end; a message handed
+                    // straight to A is dropped if A has no room for it.
+                    if (segmenter != null)
+                    {
+                        String data = payloads.getData(letter, size);
+                        sink.created(time, data);
+                        segmenter.add(data);
+                        pumpSegments();
+                    }
+                    else if (coalescer != null)
+                    {
+                        String data = payloads.getData(letter, size);
+                        sink.created(time, data);
+                        coalescer.add(data, time);
+                        pumpSegments();
+                    }
+                    else
+                    {
+                        Message message = payloads.getMessage(letter, size);
+                        if (sender.isReady())
+                        {
+                            sink.created(time, message.getData());
+                        }
+                        sender.output(message);
+                    }
                     break;
                     
                 default:
@@ -163,6 +807,64 @@ public abstract class NetworkSimulator
             }    
         }
         
+        // The run is over once nothing is left to happen
+        if (series != null && !hasPendingEvents())
+        {
+            try
+            {
+                series.close(time);
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("runUntil: Warning: time series " +
+                                   "incomplete: " + ioe.getMessage());
+            }
+        }
+    }
+    
+    /* Hand queued segments or packed messages to A for as long as it will
+       take them */
+    private void pumpSegments()
+    {
+        if (coalescer != null)
+        {
+            pumpCoalesced();
+            return;
+        }
+        
+        if (segmenter == null)
+        {
+            return;
+        }
+        
+        while (segmenter.hasNext() && sender.isReady())
+        {
+            sender.output(segmenter.next());
+        }
+    }
+    
+    /* Send a packet when it is full, when A is idle (nothing in flight to
+       wait for), or when its oldest message has waited flushDelay */
+    private void pumpCoalesced()
+    {
+        while (coalescer.hasNext() && sender.isReady())
+        {
+            if (!coalescer.isFull() && sender.getOutstanding() > 0 &&
+                time < coalescer.getOldestTime() + flushDelay)
+            {
+                break;
+            }
+            
+            sender.output(coalescer.next());
+        }
+        
+        // Make sure a partial packet held back while A could take it is
+        // flushed in time; otherwise the next ACK pumps again
+        if (coalescer.hasNext() && sender.isReady() && flushTimer == null)
+        {
+            double due = Math.max(coalescer.getOldestTime() + flushDelay, time);
+            flushTimer = timers.schedule(A, FLUSH_TIMER, due);
+        }
     }
     
     /* Generate the next arrival and add it to the event list */
@@ -173,10 +875,15 @@ public abstract class NetworkSimulator
             System.out.println("generateNextArrival(): called");
         }
         
-        // arrival time 'x' is uniform on [0, 2*avgMessageDelay]
-        // having mean of avgMessageDelay.  Should this be made
-        // into a Gaussian distribution? 
-        double x = 2 * avgMessageDelay * rand.nextDouble();
+        // The gap comes from the traffic source; the default is uniform
+        // on [0, 2*avgMessageDelay] having mean of avgMessageDelay
+        double x = traffic.nextGap(arrivalRand);
+        
+        // A trace that has run out schedules nothing more
+        if (x < 0.0)
+        {
+            return;
+        }
                 
         Event next = new Event(time + x, FROMLAYER5, A);
                 
@@ -192,14 +899,14 @@ public abstract class NetworkSimulator
         
     }
     
-    protected void stopTimer(int entity)
+    public void stopTimer(int entity)
     {
         if (traceLevel > 2)
         {
             System.out.println("stopTimer: stopping timer at " + time);
         }
 
-        Event timer = eventList.removeTimer(entity);
+        TimerHandle timer = entityTimers[entity];
 
         // Let the student know they are attempting to cancel a non-existant 
         // timer
@@ -207,38 +914,63 @@ public abstract class NetworkSimulator
         {
             System.out.println("stopTimer: Warning: Unable to cancel your " +
                                "timer");
-        }        
+            return;
+        }
+        
+        timers.cancel(timer);
+        entityTimers[entity] = null;
+        FlightEvents.timerStopped(time, timer);
     }
     
-    protected void startTimer(int entity, double increment)
+    public void startTimer(int entity, double increment)
     {
         if (traceLevel > 2)
         {
             System.out.println("startTimer: starting timer at " + time);
         }
 
-        Event t = eventList.removeTimer(entity);        
-
-        if (t != null)
+        if (entityTimers[entity] != null)
         {
             System.out.println("startTimer: Warning: Attempting to start a " +
                                "timer that is already running");
-            eventList.add(t);
             return;
         }
-        else
+        
+        entityTimers[entity] = timers.schedule(entity, ENTITY_TIMER,
+                                               time + increment);
+        FlightEvents.timerStarted(time, entityTimers[entity]);
+    }
+    
+    public TimerHandle startTimer(int entity, double increment, int tag)
+    {
+        if (tag < 0)
         {
-            Event timer = new Event(time + increment, TIMERINTERRUPT, entity);
-            eventList.add(timer);
+            throw new IllegalArgumentException("timer tags must be >= 0");
         }
-    }    
+        
+        TimerHandle timer = timers.schedule(entity, tag, time + increment);
+        FlightEvents.timerStarted(time, timer);
+        return timer;
+    }
     
-    protected void toLayer3(int callingEntity, Packet p)
+    public void stopTimer(TimerHandle timer)
+    {
+        if (!timers.cancel(timer))
+        {
+            System.out.println("stopTimer: Warning: Unable to cancel your " +
+                               "timer");
+            return;
+        }
+        
+        FlightEvents.timerStopped(time, timer);
+    }
+    
+    
+    public void toLayer3(int callingEntity, Packet p)
     {
         nToLayer3++;
         
         int destination;
-        double arrivalTime;
         Packet packet = new Packet(p);
     
         if (traceLevel > 2)
@@ -261,10 +993,94 @@ public abstract class NetworkSimulator
             return;
         }
 
+        FlightEvents.packetSent(time, callingEntity, packet);
+        
+        if (topology != null)
+        {
+            forward(topology.getNode(callingEntity), destination, packet, false);
+            return;
+        }
+
+        if (packet.getPath() < 0 || packet.getPath() >= links[destination].length)
+        {
+            System.out.println("toLayer3: Warning: no path " + packet.getPath());
+            return;
+        }
+        
+        cross(links[destination][packet.getPath()], destination, packet,
+              false, -1);
+    }
+    
+    /* Send a packet at router "node" on toward endpoint "destination" */
+    private void forward(int node, int destination, Packet packet,
+                         boolean corrupted)
+    {
+        int hop = topology.nextHop(node, destination);
+        if (hop < 0)
+        {
+            nUnroutable++;
+            
+            if (traceLevel > 0)
+            {
+                System.out.println("forward: no route from node " + node);
+            }
+            
+            return;
+        }
+        
+        int next = topology.getTo(hop);
+        cross(topology.getChannel(hop), destination, packet, corrupted,
+              next == topology.getNode(destination) ? -1 : next);
+    }
+    
+    /* Put a packet on one link.  It arrives at router "node", or at the
+       destination itself if "node" is -1.  "corrupted" says whether an
+       earlier hop already damaged it. */
+    private void cross(Link link, int destination, Packet packet,
+                       boolean corrupted, int node)
+    {
+        double arrivalTime;
+        int callingEntity = 1 - destination;    // Whoever sent it originally
+        
+        // Every packet takes exactly one draw from each of the link's
+        // streams, so the n-th packet on a link always meets the same fate
+        boolean lost = link.nextLost(time);
+        boolean damaged = link.nextCorrupted();
+        double delay = link.nextDelay();
+        
+        DeficitRoundRobin scheduler = link.getScheduler();
+        int trafficClass = 0;
+        if (scheduler != null && classifier != null)
+        {
+            trafficClass = classifier.classify(destination, packet);
+            if (trafficClass < 0 || trafficClass >= classNames.size())
+            {
+                throw new IllegalStateException("classifier returned no " +
+                                                "class " + trafficClass);
+            }
+        }
+
+        // A packet that finds the bottleneck queue full never gets on the
+        // link; its draws are spent all the same
+        if (scheduler != null ? scheduler.isFull(trafficClass) :
+                                link.isFull(time))
+        {
+            FlightEvents.packetLost(time, callingEntity, packet);
+            
+            if (traceLevel > 0)
+            {
+                System.out.println("toLayer3: packet dropped at a full queue");
+            }
+            
+            return;
+        }
+        link.admit(lost, damaged);
+
         // Simulate losses
-        if (rand.nextDouble() < lossProb)
+        if (lost)
         {
             nLost++;
+            FlightEvents.packetLost(time, callingEntity, packet);
             
             if (traceLevel > 0)
             {
@@ -275,57 +1091,207 @@ public abstract class NetworkSimulator
         }
         
         // Simulate corruption
-        if (rand.nextDouble() < corruptProb)
+        if (damaged)
         {
             nCorrupt++;
+            FlightEvents.packetCorrupted(time, callingEntity, packet);
             
             if (traceLevel > 0)
             {
                 System.out.println("toLayer3: packet being corrupted");
             }
             
-            double x = rand.nextDouble();
-            if (x < 0.75)
-            {
-                String payload = packet.getPayload();
-                
-                payload = "?" + payload.substring(payload.length() - 1);
-                
-                packet.setPayload(payload);
-            }
-            else if (x < 0.875)
-            {
-                packet.setSeqnum(Math.abs(rand.nextInt()));
-            }
-            else
-            {
-                packet.setAcknum(Math.abs(rand.nextInt()));
-            }
+            corrupt(packet, link.getDamageStream());
         }
         
-        // Decide when the packet will arrive.  Since the medium cannot
-        // reorder, the packet will arrive 1 to 10 time units after the
-        // last packet sent by this sender
-        arrivalTime = eventList.getLastPacketTime(destination);
-        
-        if (arrivalTime <= 0.0)
+        // With traffic classes the packet waits its turn in its class
+        if (scheduler != null)
         {
-            arrivalTime = time;
+            enqueue(link, destination, packet.getPath(),
+                    new DeficitRoundRobin.Entry(packet, corrupted || damaged,
+                                                delay, time, trafficClass,
+                                                false));
+            return;
         }
         
-        arrivalTime = arrivalTime + 1.0 + (rand.nextDouble() * 9.0);
+        // Decide when the packet will arrive.  Since a link cannot reorder,
+        // the packet will arrive "delay" after the last packet sent on it,
+        // or after now if nothing is still in flight there
+        arrivalTime = link.arrival(time, delay);
 
         // Finally, create and schedule this event
         if (traceLevel > 2)
         {
             System.out.println("toLayer3: scheduling arrival on other side");
         }
-        Event arrival = new Event(arrivalTime, FROMLAYER3, destination, packet);
-        eventList.add(arrival);
+        Event arrival = new Event(arrivalTime, node < 0 ? FROMLAYER3 : FORWARD,
+                                  destination, packet);
+        arrival.setCorrupted(corrupted || damaged);
+        arrival.setNode(node);
+        schedule(arrival, destination);
+    }
+    
+    /* Schedule an arrival here, or hand it to the other partition */
+    private void schedule(Event arrival, int destination)
+    {
+        if (hosts(destination))
+        {
+            eventList.add(arrival);
+        }
+        else
+        {
+            outgoing.add(arrival);
+        }
     }
     
-    protected void toLayer5(int entity, String dataSent)
+    /* Queue a packet for a link with traffic classes.  An idle link takes
+       it at once; otherwise the link asks for its next packet when it
+       frees up. */
+    private void enqueue(Link link, int destination, int path,
+                         DeficitRoundRobin.Entry entry)
     {
+        DeficitRoundRobin scheduler = link.getScheduler();
+        scheduler.add(entry);
+        if (scheduler.isPending())
+        {
+            return;
+        }
+        
+        if (link.getFreeTime() > time)
+        {
+            scheduleLinkFree(link, destination, path);
+        }
+        else
+        {
+            linkFree(destination, path);
+        }
+    }
+    
+    /* The link toward "destination" on "path" is free: put the packet its
+       scheduler picks on it */
+    private void linkFree(int destination, int path)
+    {
+        Link link = links[destination][path];
+        DeficitRoundRobin scheduler = link.getScheduler();
+        DeficitRoundRobin.Entry entry = scheduler.next();
+        
+        // Sent when it joined the queue, so the wait counts as queueing
+        double arrivalTime = link.arrival(entry.getSent(), entry.getDelay());
+        scheduler.sent(entry, arrivalTime);
+        if (!entry.isBackground())
+        {
+            Event arrival = new Event(arrivalTime, FROMLAYER3, destination,
+                                      entry.getPacket());
+            arrival.setCorrupted(entry.isCorrupted());
+            schedule(arrival, destination);
+        }
+        
+        scheduler.setPending(false);
+        if (scheduler.hasNext())
+        {
+            scheduleLinkFree(link, destination, path);
+        }
+    }
+    
+    private void scheduleLinkFree(Link link, int destination, int path)
+    {
+        Event free = new Event(link.getFreeTime(), LINKFREE, destination);
+        free.setNode(path);
+        eventList.add(free);
+        link.getScheduler().setPending(true);
+    }
+    
+    /* Schedule the next packet of cross traffic "flow", Poisson arrivals */
+    private void generateCrossTraffic(int flow)
+    {
+        CrossFlow cross = crossFlows.get(flow);
+        double gap = -Math.log(1.0 - cross.rand.nextDouble()) / cross.rate;
+        Event next = new Event(time + gap, CROSSTRAFFIC, cross.destination);
+        next.setNode(flow);
+        eventList.add(next);
+    }
+    
+    /* A packet of cross traffic draws its fate from path 0 like any other
+       and, unless dropped or lost, waits in its class */
+    private void sendCrossTraffic(int flow)
+    {
+        CrossFlow cross = crossFlows.get(flow);
+        Link link = links[cross.destination][0];
+        boolean lost = link.nextLost(time);
+        boolean damaged = link.nextCorrupted();
+        double delay = link.nextDelay();
+        
+        if (link.getScheduler().isFull(cross.trafficClass))
+        {
+            return;
+        }
+        link.admit(lost, damaged);
+        if (lost)
+        {
+            return;
+        }
+        
+        enqueue(link, cross.destination, 0,
+                new DeficitRoundRobin.Entry(CROSS_PACKET, false, delay, time,
+                                            cross.trafficClass, true));
+    }
+
+    /* Damage a packet the same way the channel does */
+    static void corrupt(Packet packet, RandomGenerator rand)
+    {
+        double x = rand.nextDouble();
+        if (x < 0.75)
+        {
+            String payload = packet.getPayload();
+
+            payload = "?" + payload.substring(payload.length() - 1);
+
+            packet.setPayload(payload);
+        }
+        else if (x < 0.875)
+        {
+            packet.setSeqnum(Math.abs(rand.nextInt()));
+        }
+        else
+        {
+            packet.setAcknum(Math.abs(rand.nextInt()));
+        }
+    }
+    
+    public void toLayer5(int entity, String dataSent)
+    {
+        // A corrupted packet made it past the protocol's checksum
+        if (deliveringCorrupt)
+        {
+            nUndetectedCorrupt++;
+        }
+        
+        // Split packed messages before the application sees them
+        if (coalescer != null && entity == B)
+        {
+            deliverFrames(dataSent);
+            return;
+        }
+        
+        // Rebuild segmented messages before the application sees them
+        if (reassembler != null && entity == B)
+        {
+            dataSent = reassembler.accept(dataSent);
+            if (dataSent == null)
+            {
+                return;
+            }
+        }
+        
+        if (entity == B)
+        {
+            nDelivered++;
+            nDeliveredBytes += dataSent.length();
+            sink.delivered(time, dataSent, 0, dataSent.length());
+        }
+        FlightEvents.messageDelivered(time, entity, dataSent.length(),
+                                      deliveringCorrupt);
+        
         if (traceLevel > 2)
         {
             System.out.print("toLayer5: data received:");
@@ -333,14 +1299,510 @@ public abstract class NetworkSimulator
         }
     }
     
-    protected double getTime()
+    /* Deliver each frame of a packed payload as its own message */
+    private void deliverFrames(String payload)
+    {
+        int offset = 0;
+        while (offset < payload.length())
+        {
+            int length = Coalescer.frameLength(payload, offset);
+            if (length < 0)
+            {
+                nMalformedFrames++;
+                return;
+            }
+            
+            nDelivered++;
+            nDeliveredBytes += length;
+            sink.delivered(time, payload, offset + 1, length);
+            FlightEvents.messageDelivered(time, B, length, deliveringCorrupt);
+            
+            if (traceLevel > 2)
+            {
+                System.out.print("toLayer5: data received:");
+                System.out.println(payload.substring(offset + 1,
+                                                     offset + 1 + length));
+            }
+            offset += 1 + length;
+        }
+    }
+    
+    public double getTime()
+    {
+        return time;
+    }
+    
+    public void recordRtt(double rtt)
+    {
+        if (series != null)
+        {
+            series.recordRtt(rtt);
+        }
+    }
+
+    public long getDeliveredMessages()
+    {
+        return nDelivered;
+    }
+    
+    public long getDeliveredBytes()
+    {
+        return nDeliveredBytes;
+    }
+    
+    public double getSimulatedTime()
     {
         return time;
     }
     
+    public long getPacketsSent()
+    {
+        return nToLayer3;
+    }
+    
+    public long getPacketsLost()
+    {
+        return nLost;
+    }
+    
+    public long getRetransmissions()
+    {
+        return sender != null ? sender.getRetransmissions() : 0;
+    }
+    
+    // Packets A has in flight right now
+    public int getWindowOccupancy()
+    {
+        return sender != null ? sender.getOutstanding() : 0;
+    }
+    
+    // Collects the engine's counters and both halves of the protocol's
+    public Statistics getStatistics()
+    {
+        Statistics statistics = new Statistics();
+        
+        // A partition reports only what happened on its side: counters
+        // both sides keep, like packets sent, add up when they are merged
+        if (sender != null)
+        {
+            if (hosts(A))
+            {
+                sender.report(statistics);
+            }
+            if (hosts(B))
+            {
+                receiver.report(statistics);
+            }
+        }
+        
+        if (hosts(A))
+        {
+            statistics.set("Messages generated", nSim);
+        }
+        if (hosts(B))
+        {
+            statistics.set("Messages delivered", nDelivered);
+            statistics.set("Bytes delivered", nDeliveredBytes);
+        }
+        statistics.set("Packets sent to layer 3", nToLayer3);
+        statistics.set("Packets lost", nLost);
+        statistics.set("Packets corrupted", nCorrupt);
+        if (hosts(B))
+        {
+            statistics.set("Undetected corrupt deliveries", nUndetectedCorrupt);
+        }
+        statistics.set("Simulated time", time);
+        if (hosts(B))
+        {
+            statistics.set("Throughput (messages per time unit)",
+                           time > 0.0 ? nDelivered / time : 0.0);
+            statistics.set("Goodput (bytes per time unit)",
+                           time > 0.0 ? nDeliveredBytes / time : 0.0);
+        }
+        
+        if (topology != null)
+        {
+            topology.report(statistics);
+            if (nUnroutable > 0)
+            {
+                statistics.set("Unroutable packets", nUnroutable);
+            }
+        }
+        else if (hosts(A))
+        {
+            reportLinks(statistics);
+        }
+        
+        if (coalescer != null)
+        {
+            if (hosts(A))
+            {
+                statistics.set("Messages per packet",
+                               coalescer.getPackets() > 0 ?
+                               coalescer.getFrames() / (double)coalescer.getPackets() :
+                               0.0);
+            }
+            if (hosts(B))
+            {
+                statistics.set("Malformed frames", nMalformedFrames);
+            }
+        }
+        
+        sink.report(statistics);
+        
+        return statistics;
+    }
+    
+    // Queueing is reported for the data direction, where the window sends
+    // its bursts
+    private void reportLinks(Statistics statistics)
+    {
+        double queueing = 0.0;
+        long queued = 0;
+        long queueDrops = 0;
+        for (Link link : links[B])
+        {
+            queueing += link.getQueueingDelay();
+            queued += link.getQueued();
+            queueDrops += link.getQueueDrops();
+        }
+        statistics.set("Average queueing delay",
+                       queued > 0 ? queueing / queued : 0.0);
+        if (links[B][0].getQueueLimit() > 0)
+        {
+            statistics.set("Packets dropped at a full link queue", queueDrops);
+        }
+        if (impairments[A] != null || impairments[B] != null)
+        {
+            long lost = 0;
+            long bursts = 0;
+            for (Link link : links[B])
+            {
+                lost += link.getLost();
+                bursts += link.getLossBursts();
+            }
+            statistics.set("Mean data loss burst length",
+                           bursts > 0 ? (double)lost / bursts : 0.0);
+        }
+        
+        // Classes are reported over both directions: ACKs may have their own
+        for (int c = 0; c < classNames.size(); c++)
+        {
+            long packets = 0;
+            long drops = 0;
+            long bytes = 0;
+            Histogram latency = new Histogram();
+            for (int entity = A; entity <= B; entity++)
+            {
+                for (Link link : links[entity])
+                {
+                    DeficitRoundRobin scheduler = link.getScheduler();
+                    packets += scheduler.getPackets(c);
+                    drops += scheduler.getDrops(c);
+                    bytes += scheduler.getBytes(c);
+                    latency.add(scheduler.getLatency(c));
+                }
+            }
+            
+            String name = "Class " + classNames.get(c);
+            statistics.set(name + " packets", packets);
+            statistics.set(name + " packets dropped at a full queue", drops);
+            statistics.set(name + " throughput (bytes per time unit)",
+                           time > 0.0 ? bytes / time : 0.0);
+            statistics.set(name + " average latency", latency.getMean());
+            statistics.set(name + " latency p99", latency.getPercentile(99.0));
+        }
+        
+        // Data packets go to B, ACKs to A
+        if (links[A].length > 1)
+        {
+            for (int path = 0; path < links[A].length; path++)
+            {
+                statistics.set("Path " + path + " data packets",
+                               links[B][path].getPackets());
+                statistics.set("Path " + path + " data packets lost",
+                               links[B][path].getLost());
+                statistics.set("Path " + path + " ACK packets",
+                               links[A][path].getPackets());
+            }
+        }
+    }
+    
+    public void printStatistics()
+    {
+        System.out.println(getStatistics());
+    }
+    
+    // Writes the complete state of a started run to "path" so that it can
+    // be continued, bit for bit, by restoreCheckpoint()
+    public void saveCheckpoint(String path) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                   new FileOutputStream(path)));
+        try
+        {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            
+            out.writeLong(seed);
+            out.writeLong(maxMessages);
+            out.writeDouble(avgMessageDelay);
+            out.writeInt(messageSize);
+            out.writeDouble(flushDelay);
+            out.writeDouble(time);
+            out.writeLong(nSim);
+            out.writeLong(nToLayer3);
+            out.writeLong(nLost);
+            out.writeLong(nCorrupt);
+            out.writeLong(nUndetectedCorrupt);
+            out.writeLong(nUnroutable);
+            out.writeLong(nDelivered);
+            out.writeLong(nDeliveredBytes);
+            out.writeLong(nMalformedFrames);
+            
+            out.writeLong(arrivalRand.getState());
+            out.writeLong(sizeRand.getState());
+            for (int entity = A; entity <= B; entity++)
+            {
+                out.writeInt(links[entity].length);
+                for (Link link : links[entity])
+                {
+                    link.save(out);
+                }
+            }
+            out.writeBoolean(topology != null);
+            if (topology != null)
+            {
+                topology.save(out);
+            }
+            out.writeInt(crossFlows.size());
+            for (CrossFlow cross : crossFlows)
+            {
+                out.writeLong(cross.rand.getState());
+            }
+            
+            out.writeUTF(protocol.getName());
+            config.save(out);
+            out.writeUTF(traffic.getClass().getName());
+            traffic.save(out);
+            out.writeBoolean(segmenter != null);
+            if (segmenter != null)
+            {
+                segmenter.save(out);
+                reassembler.save(out);
+            }
+            if (coalescer != null)
+            {
+                coalescer.save(out);
+            }
+            sink.save(out);
+            sender.save(out);
+            receiver.save(out);
+            
+            // Drain the event list in firing order and put it back the same
+            // way, which also preserves the order of simultaneous events.
+            // Timers already queued are saved with those on the wheel.
+            ArrayList<Event> drained = new ArrayList<Event>();
+            ArrayList<Event> events = new ArrayList<Event>();
+            ArrayList<TimerHandle> pending = new ArrayList<TimerHandle>();
+            Event e;
+            while ((e = eventList.removeNext()) != null)
+            {
+                drained.add(e);
+                if (e.getTimer() == null)
+                {
+                    events.add(e);
+                }
+                else if (!e.getTimer().isCancelled())
+                {
+                    pending.add(e.getTimer());
+                }
+            }
+            for (Event event : drained)
+            {
+                eventList.add(event);
+            }
+            timers.collect(pending);
+            
+            out.writeInt(events.size());
+            for (Event event : events)
+            {
+                event.write(out);
+            }
+            out.writeInt(pending.size());
+            for (TimerHandle timer : pending)
+            {
+                out.writeDouble(timer.getDeadline());
+                out.writeInt(timer.getEntity());
+                out.writeInt(timer.getTag());
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+    
+    // Replaces start(): rebuilds the run saved in "path".  A non-default
+    // traffic source must be set beforehand, of the same class as the
+    // saved one, and so must any impairments, traffic classes, classifier
+    // and cross traffic.  The channel may be changed afterwards to fork a
+    // new experiment from the same point.
+    public void restoreCheckpoint(String path) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                                 new FileInputStream(path)));
+        try
+        {
+            if (in.readInt() != CHECKPOINT_MAGIC ||
+                in.readInt() != CHECKPOINT_VERSION)
+            {
+                throw new IOException(path + " is not a simulator checkpoint");
+            }
+            
+            seed = in.readLong();
+            maxMessages = in.readLong();
+            avgMessageDelay = in.readDouble();
+            messageSize = in.readInt();
+            flushDelay = in.readDouble();
+            time = in.readDouble();
+            nSim = in.readLong();
+            nToLayer3 = in.readLong();
+            nLost = in.readLong();
+            nCorrupt = in.readLong();
+            nUndetectedCorrupt = in.readLong();
+            nUnroutable = in.readLong();
+            nDelivered = in.readLong();
+            nDeliveredBytes = in.readLong();
+            nMalformedFrames = in.readLong();
+            
+            arrivalRand.setState(in.readLong());
+            sizeRand.setState(in.readLong());
+            for (int entity = A; entity <= B; entity++)
+            {
+                links[entity] = new Link[in.readInt()];
+                for (int i = 0; i < links[entity].length; i++)
+                {
+                    links[entity][i] = new Link(seed, entity, i, 0.0, 0.0,
+                                                MIN_DELAY, MAX_DELAY);
+                    if (impairments[entity] != null)
+                    {
+                        links[entity][i].setImpairment(impairments[entity].copy());
+                    }
+                    links[entity][i].setScheduler(newScheduler(links[entity][i]));
+                    links[entity][i].restore(in);
+                }
+            }
+            topology = null;
+            if (in.readBoolean())
+            {
+                topology = new Topology(1);
+                topology.restore(in);
+            }
+            if (in.readInt() != crossFlows.size())
+            {
+                throw new IOException("checkpoint cross traffic does not match");
+            }
+            for (CrossFlow cross : crossFlows)
+            {
+                cross.rand.setState(in.readLong());
+            }
+            
+            setProtocol(in.readUTF());
+            config = new ProtocolConfig();
+            config.restore(in);
+            setUp();
+            
+            String trafficClass = in.readUTF();
+            if (!trafficClass.equals(traffic.getClass().getName()))
+            {
+                throw new IOException("checkpoint was taken with " +
+                                      trafficClass + " traffic");
+            }
+            traffic.restore(in);
+            if (in.readBoolean() != (segmenter != null))
+            {
+                throw new IOException("checkpoint segmentation does not match");
+            }
+            if (segmenter != null)
+            {
+                segmenter.restore(in);
+                reassembler.restore(in);
+            }
+            if (coalescer != null)
+            {
+                coalescer.restore(in);
+            }
+            sink.restore(in);
+            sender.restore(in);
+            receiver.restore(in);
+            
+            while (eventList.removeNext() != null)
+            {
+                // Discard whatever the list held before
+            }
+            int events = in.readInt();
+            for (int i = 0; i < events; i++)
+            {
+                eventList.add(Event.read(in));
+            }
+            
+            // Timers get new handles; a protocol holding a tagged handle
+            // from before the checkpoint cannot cancel that timer
+            timers = new TimingWheel(eventList, TIMER_TICK, TIMER_SLOTS);
+            timers.setTime(time);
+            entityTimers = new TimerHandle[2];
+            int pending = in.readInt();
+            for (int i = 0; i < pending; i++)
+            {
+                double deadline = in.readDouble();
+                int entity = in.readInt();
+                int tag = in.readInt();
+                TimerHandle timer = timers.schedule(entity, tag, deadline);
+                if (tag == ENTITY_TIMER)
+                {
+                    entityTimers[entity] = timer;
+                }
+                else if (tag == FLUSH_TIMER)
+                {
+                    flushTimer = timer;
+                }
+            }
+            
+            // A time series restarts at the checkpoint; its file is not
+            // part of the saved state
+            if (series != null)
+            {
+                series.begin(time);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+    
     protected void printEventList()
     {
         System.out.println(eventList.toString());
     }
     
+    
+    /* A flow of cross traffic toward "destination" */
+    private static class CrossFlow
+    {
+        final int destination;
+        final int trafficClass;
+        final double rate;
+        final RandomStream rand;
+        
+        CrossFlow(int destination, int trafficClass, double rate,
+                  RandomStream rand)
+        {
+            this.destination = destination;
+            this.trafficClass = trafficClass;
+            this.rate = rate;
+            this.rand = rand;
+        }
+    }
 }
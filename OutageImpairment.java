@@ -0,0 +1,80 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * A link that goes down on a schedule: for the last mDuration time units
+ * of every mPeriod it loses every packet sent.  The rest of the time it
+ * loses packets with probability mLoss if one was given, and otherwise as
+ * the link itself would.  It corrupts them as the link does.
+ */
+public class OutageImpairment implements Impairment
+{
+    private final double mPeriod;
+    private final double mDuration;
+    private final double mLoss;             // Between outages; NaN for the link's own
+    private boolean mDown;
+
+    public OutageImpairment(double period, double duration)
+    {
+        this(period, duration, Double.NaN);
+    }
+
+    public OutageImpairment(double period, double duration, double loss)
+    {
+        if (!(period > 0.0) || !(duration >= 0.0 && duration <= period))
+        {
+            throw new IllegalArgumentException("outages need 0 <= duration " +
+                                               "<= period and period > 0");
+        }
+
+        mPeriod = period;
+        mDuration = duration;
+        mLoss = loss;
+    }
+
+    public void next(double time, RandomGenerator rand)
+    {
+        mDown = time % mPeriod >= mPeriod - mDuration;
+    }
+
+    public double getLoss(double loss)
+    {
+        if (mDown)
+        {
+            return 1.0;
+        }
+
+        return Double.isNaN(mLoss) ? loss : mLoss;
+    }
+
+    public double getCorrupt(double corrupt)
+    {
+        return corrupt;
+    }
+
+    public boolean isDown()
+    {
+        return mDown;
+    }
+
+    public Impairment copy()
+    {
+        return new OutageImpairment(mPeriod, mDuration, mLoss);
+    }
+
+    public String toString()
+    {
+        return "outage(period=" + mPeriod + " duration=" + mDuration + ")";
+    }
+
+    // The schedule depends on nothing but the time
+    public void save(DataOutput out) throws IOException
+    {
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * A token bucket between a sender and layer 3.  Tokens accumulate at
+ * "rate" per time unit up to the burst size, and every packet sent spends
+ * one; a packet that finds the bucket empty waits in a queue until a
+ * tagged timer says the next token is in.  A rate of 0 passes packets
+ * straight through.
+ *
+ * The timer is tracked with a flag rather than its handle, so that it
+ * survives a checkpoint.
+ */
+public class Pacer implements Checkpointable
+{
+    // Slack for the rounding in the refill at the moment a token is due
+    private static final double EPSILON = 1e-9;
+
+    private final ProtocolHost mHost;
+    private final int mEntity;
+    private final int mTag;
+    private final double mBurst;
+
+    private double mRate;                   // Tokens per time unit; 0 is unpaced
+    private double mTokens;
+    private double mRefilled;               // When mTokens was last brought up to date
+    private boolean mTimerRunning;
+    private ArrayDeque<Packet> mQueue = new ArrayDeque<Packet>();
+
+    // When each queued packet arrived, [mHead, mTail), a ring of primitives
+    // so that queueing allocates nothing
+    private double[] mQueuedAt = new double[16];
+    private long mHead;
+    private long mTail;
+
+    private long mSent;                     // Packets passed on to layer 3
+    private long mDelayed;                  // Packets that had to wait for a token
+    private double mTotalDelay;             // Sum of their waits
+
+    public Pacer(ProtocolHost host, int entity, int tag, int burst)
+    {
+        mHost = host;
+        mEntity = entity;
+        mTag = tag;
+        mBurst = burst;
+        mTokens = burst;
+    }
+
+    public double getRate()
+    {
+        return mRate;
+    }
+
+    public void setRate(double rate)
+    {
+        refill();
+        mRate = rate;
+    }
+
+    /**
+     * When a packet handed to send() now would leave, at the current rate.
+     * Senders stamp packets with this, so that their RTTs leave out the
+     * time spent waiting here.
+     */
+    public double departure()
+    {
+        refill();
+        double now = mHost.getTime();
+        if (mRate <= 0.0)
+        {
+            return now;
+        }
+
+        return now + Math.max(0.0, (mQueue.size() + 1.0 - mTokens) / mRate);
+    }
+
+    /**
+     * Sends "packet" now if a token is in, otherwise queues it behind any
+     * that are already waiting.
+     */
+    public void send(Packet packet)
+    {
+        refill();
+        if (mQueue.isEmpty() && (mRate <= 0.0 || mTokens >= 1.0 - EPSILON))
+        {
+            if (mRate > 0.0)
+            {
+                mTokens -= 1.0;
+            }
+            mSent++;
+            mHost.toLayer3(mEntity, packet);
+            return;
+        }
+
+        if (mTail - mHead == mQueuedAt.length)
+        {
+            double[] queuedAt = new double[mQueuedAt.length * 2];
+            for (long i = mHead; i < mTail; i++)
+            {
+                queuedAt[(int)(i & (queuedAt.length - 1))] =
+                    mQueuedAt[(int)(i & (mQueuedAt.length - 1))];
+            }
+            mQueuedAt = queuedAt;
+        }
+        mQueue.add(packet);
+        mQueuedAt[(int)(mTail++ & (mQueuedAt.length - 1))] = mHost.getTime();
+        schedule();
+    }
+
+    /**
+     * The pacing timer went off: send what the bucket now allows.
+     */
+    public void timerExpired()
+    {
+        mTimerRunning = false;
+        refill();
+        while (!mQueue.isEmpty() && (mRate <= 0.0 || mTokens >= 1.0 - EPSILON))
+        {
+            if (mRate > 0.0)
+            {
+                mTokens -= 1.0;
+            }
+            mSent++;
+            mDelayed++;
+            mTotalDelay += mHost.getTime() -
+                           mQueuedAt[(int)(mHead++ & (mQueuedAt.length - 1))];
+            mHost.toLayer3(mEntity, mQueue.poll());
+        }
+        schedule();
+    }
+
+    /**
+     * Throws away the packets still waiting, e.g. when the whole window is
+     * about to be resent anyway.
+     */
+    public void clear()
+    {
+        mQueue.clear();
+        mHead = mTail;
+    }
+
+    // Packets waiting for a token
+    public int getQueued()
+    {
+        return mQueue.size();
+    }
+
+    public long getSent()
+    {
+        return mSent;
+    }
+
+    public long getDelayed()
+    {
+        return mDelayed;
+    }
+
+    public double getTotalDelay()
+    {
+        return mTotalDelay;
+    }
+
+    private void refill()
+    {
+        double now = mHost.getTime();
+        mTokens = Math.min(mBurst, mTokens + (now - mRefilled) * mRate);
+        mRefilled = now;
+    }
+
+    // Wakes up when the next token is due, if anything is waiting for it
+    private void schedule()
+    {
+        if (!mQueue.isEmpty() && !mTimerRunning)
+        {
+            double wait = mRate > 0.0 ? Math.max(0.0, (1.0 - mTokens) / mRate) : 0.0;
+            mHost.startTimer(mEntity, wait, mTag);
+            mTimerRunning = true;
+        }
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeDouble(mRate);
+        out.writeDouble(mTokens);
+        out.writeDouble(mRefilled);
+        out.writeBoolean(mTimerRunning);
+        out.writeInt(mQueue.size());
+        long i = mHead;
+        for (Packet packet : mQueue)
+        {
+            packet.write(out);
+            out.writeDouble(mQueuedAt[(int)(i++ & (mQueuedAt.length - 1))]);
+        }
+        out.writeLong(mSent);
+        out.writeLong(mDelayed);
+        out.writeDouble(mTotalDelay);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mRate = in.readDouble();
+        mTokens = in.readDouble();
+        mRefilled = in.readDouble();
+        mTimerRunning = in.readBoolean();
+        mQueue.clear();
+        int queued = in.readInt();
+        mQueuedAt = new double[Math.max(16, Integer.highestOneBit(queued) << 1)];
+        for (int i = 0; i < queued; i++)
+        {
+            mQueue.add(Packet.read(in));
+            mQueuedAt[i] = in.readDouble();
+        }
+        mHead = 0;
+        mTail = queued;
+        mSent = in.readLong();
+        mDelayed = in.readLong();
+        mTotalDelay = in.readDouble();
+    }
+}
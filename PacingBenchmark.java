@@ -0,0 +1,58 @@
+/**
+ * Runs Go-Back-N over a link with a small bottleneck queue, unpaced, at a
+ * few fixed pacing rates and with the automatic rate, and shows how
+ * spacing out the window's bursts trades a little pacing delay for less
+ * queueing delay and fewer packets dropped at the queue.
+ *
+ * Usage: java PacingBenchmark [messages] [delay] [window] [queue limit]
+ *                             [loss] [corrupt] [seed]
+ */
+public class PacingBenchmark
+{
+    private static final double[] RATES = { 0.0, 0.05, 0.1, 0.2, 0.5,
+                                            ProtocolConfig.PACING_AUTO };
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 5000;
+        double delay = argv.length > 1 ? Double.parseDouble(argv[1]) : 2.0;
+        int window = argv.length > 2 ? Integer.parseInt(argv[2]) : 16;
+        int limit = argv.length > 3 ? Integer.parseInt(argv[3]) : 4;
+        double loss = argv.length > 4 ? Double.parseDouble(argv[4]) : 0.01;
+        double corrupt = argv.length > 5 ? Double.parseDouble(argv[5]) : 0.01;
+        long seed = argv.length > 6 ? Long.parseLong(argv[6]) : 1L;
+
+        Scenario scenario = new Scenario(messages, loss, corrupt, delay);
+        scenario.getConfig().setWindowSize(window);
+        scenario.getConfig().setBufferSize(Math.max(window,
+                scenario.getConfig().getBufferSize()));
+
+        System.out.println(scenario + " queue=" + limit + " seed=" + seed);
+        System.out.println("  pacing  msgs/time  retransmissions  queue-drops" +
+                           "  queueing  pacing-delay  latency(p99)");
+
+        for (double rate : RATES)
+        {
+            Scenario run = scenario.copy();
+            run.getConfig().setPacingRate(rate);
+
+            NetworkSimulator simulator = run.create(seed);
+            simulator.setQueueLimit(limit);
+            simulator.runSimulator();
+
+            Statistics result = simulator.getStatistics();
+            String label = rate == 0.0 ? "off" :
+                           rate == ProtocolConfig.PACING_AUTO ? "auto" :
+                           String.valueOf(rate);
+            System.out.println(String.format(
+                    "%8s  %9.4f  %15d  %11d  %8.2f  %12.2f  %12.2f",
+                    label,
+                    result.get("Throughput (messages per time unit)"),
+                    (long)result.get("Number of re-transmissions"),
+                    (long)result.get("Packets dropped at a full link queue"),
+                    result.get("Average queueing delay"),
+                    rate == 0.0 ? 0.0 : result.get("Average pacing delay"),
+                    result.get("Message latency p99")));
+        }
+    }
+}
@@ -1,16 +1,22 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Packet
 {
     private int seqnum;
     private int acknum;
     private int checksum;
     private String payload;
+    private int path;           // Which path carries it; not covered by the checksum
     
     public Packet(Packet p)
     {
         seqnum = p.getSeqnum();
         acknum = p.getAcknum();
         checksum = p.getChecksum();
-        payload = new String(p.getPayload());
+        payload = p.getPayload();
+        path = p.getPath();
     }
     
     public Packet(int seq, int ack, int check, String newPayload)
@@ -24,11 +30,11 @@ public class Packet
         }        
         else if (newPayload.length() > NetworkSimulator.MAXDATASIZE)
         {
-            payload = null;
+            payload = "";
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
         }
     }
     
@@ -73,11 +79,16 @@ public class Packet
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
             return true;
         }
     }
     
+    public void setPath(int p)
+    {
+        path = p;
+    }
+    
     public int getSeqnum()
     {
         return seqnum;
@@ -98,6 +109,30 @@ public class Packet
         return payload;
     }
     
+    public int getPath()
+    {
+        return path;
+    }
+    
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeInt(seqnum);
+        out.writeInt(acknum);
+        out.writeInt(checksum);
+        out.writeUTF(payload);
+        out.writeInt(path);
+    }
+    
+    public static Packet read(DataInput in) throws IOException
+    {
+        int seq = in.readInt();
+        int ack = in.readInt();
+        int check = in.readInt();
+        Packet p = new Packet(seq, ack, check, in.readUTF());
+        p.setPath(in.readInt());
+        return p;
+    }
+    
     public String toString()
     {
         return("seqnum: " + seqnum + "  acknum: " + acknum + "  checksum: " +
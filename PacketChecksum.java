@@ -0,0 +1,42 @@
+/**
+ * Strategy used by the protocol to protect a packet's header and payload.
+ * Implementations are not thread safe; each simulator owns its own instance.
+ */
+public interface PacketChecksum
+{
+    // Bytes needed for the binary image of the largest possible packet:
+    // seqnum and acknum (4 bytes each) followed by 2 bytes per payload char
+    public static final int IMAGE_SIZE = 8 + 2 * NetworkSimulator.MAXDATASIZE;
+
+    public int compute(int seqnum, int acknum, String payload);
+    public int getBits();
+    public String getName();
+
+    /**
+     * Writes the big-endian binary image of a packet into "buffer" and
+     * returns the number of bytes used.
+     */
+    public static int writeImage(byte[] buffer, int seqnum, int acknum,
+                                 String payload)
+    {
+        buffer[0] = (byte)(seqnum >>> 24);
+        buffer[1] = (byte)(seqnum >>> 16);
+        buffer[2] = (byte)(seqnum >>> 8);
+        buffer[3] = (byte)seqnum;
+        buffer[4] = (byte)(acknum >>> 24);
+        buffer[5] = (byte)(acknum >>> 16);
+        buffer[6] = (byte)(acknum >>> 8);
+        buffer[7] = (byte)acknum;
+
+        int length = 8;
+        int chars = Math.min(payload.length(), NetworkSimulator.MAXDATASIZE);
+        for (int i = 0; i < chars; i++)
+        {
+            char c = payload.charAt(i);
+            buffer[length++] = (byte)(c >>> 8);
+            buffer[length++] = (byte)c;
+        }
+
+        return length;
+    }
+}
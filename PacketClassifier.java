@@ -0,0 +1,12 @@
+/**
+ * Sorts the protocol's packets into the traffic classes of the channel,
+ * numbered in the order NetworkSimulator.addTrafficClass() added them.
+ * Packets of cross traffic are not classified; each flow names its class.
+ */
+public interface PacketClassifier
+{
+    /**
+     * The class of "packet", on its way to "destination".
+     */
+    public int classify(int destination, Packet packet);
+}
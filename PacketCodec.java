@@ -0,0 +1,75 @@
+/**
+ * Builds packets with a valid checksum and checks arriving packets for
+ * damage.  Each side of a protocol owns one.
+ */
+public class PacketCodec
+{
+    private final SequenceSpace mSpace;
+    private final PacketChecksum mChecksum;
+
+    public PacketCodec(SequenceSpace space, PacketChecksum checksum)
+    {
+        mSpace = space;
+        mChecksum = checksum;
+    }
+
+    public SequenceSpace getSpace()
+    {
+        return mSpace;
+    }
+
+    public PacketChecksum getChecksum()
+    {
+        return mChecksum;
+    }
+
+    /**
+     * Helper method to create packets so code re-use can be cut down.
+     */
+    public Packet create(int sequence, int ack, String payload)
+    {
+        int checksum = mChecksum.compute(sequence, ack, payload);
+        return new Packet(sequence, ack, checksum, payload);
+    }
+
+    /**
+     * Determines whether the packet's checksum is the same as the expected
+     * checksum.
+     */
+    public boolean isCorrupt(Packet packet)
+    {
+        // Numbers outside the space can only come from a damaged header
+        if (!mSpace.contains(packet.getSeqnum()))
+            return true;
+
+        int checksum = mChecksum.compute(packet.getSeqnum(),
+                packet.getAcknum(),
+                packet.getPayload());
+
+        return checksum != packet.getChecksum();
+    }
+
+    /**
+     * The payload of an ACK advertising "free" slots in the receive buffer.
+     */
+    public static String advertise(int free)
+    {
+        return String.valueOf((char)('0' + free));
+    }
+
+    /**
+     * The window advertised by an ACK, or -1 if it carries none.
+     */
+    public static int advertised(String payload)
+    {
+        return payload.length() == 1 ? payload.charAt(0) - '0' : -1;
+    }
+
+    /**
+     * Header size: sequence and ack fields plus the checksum.
+     */
+    public int getHeaderBits()
+    {
+        return 2 * mSpace.getBits() + mChecksum.getBits();
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches window and timeout for the configuration with the
+ * highest throughput on one channel, optionally subject to a bound on the
+ * p99 message latency, by successive halving: every candidate gets a few
+ * replicas, the best third get three times as many, and so on until one
+ * is left or the replica limit is reached.  The buffer only has to hold
+ * the window, since Go-Back-N turns away messages the window has no room
+ * for, so it is raised to the window where needed and otherwise left alone.
+ *
+ * Replica i of every candidate runs with the same seed, the seed
+ * ReplicationRunner would give it, so candidates are compared on common
+ * random numbers: the same arrivals and the same channel draws.  Each
+ * rung runs as one parallel batch, and its results are folded in a fixed
+ * order, so a given seed always picks the same winner.
+ *
+ * A short timeout with a wide window can resend faster than the links
+ * drain, and such a run would take very long to finish.  Runs are cut off
+ * at HORIZON times the time the offered load takes to arrive, and judged
+ * on what they delivered by then.  They also keep their events on a
+ * HeapEventList, since the thousands of events a collapsed run has
+ * pending make the default list's scan quadratic.
+ *
+ * With a ResultCache, candidates and replicas tried before, at the same
+ * horizon, come from the cache, so a search repeated or widened only
+ * simulates what it has not seen.
+ *
+ * Usage: java ParameterTuner <messages> <loss> <corrupt> <delay>
+ *                            [max p99 latency] [max replicas] [seed] [threads]
+ *                            [cache directory]
+ */
+public class ParameterTuner
+{
+    public static final String THROUGHPUT = "Throughput (messages per time unit)";
+    public static final String LATENCY = "Message latency p99";
+
+    // Go-Back-N keeps at most window - 1 packets in flight, so 2 is the least
+    private static final int[] WINDOWS = { 2, 3, 4, 6, 8, 12, 16, 24, 32 };
+    private static final double[] TIMEOUTS = { 10, 20, 30, 50, 80, 120, 200 };
+    private static final int ETA = 3;               // Candidates kept per rung: one in ETA
+    private static final double HORIZON = 2.0;
+
+    private double mMaxLatency = Double.POSITIVE_INFINITY;
+    private double mConfidence = 0.95;
+    private int mMinReplicas = 2;
+    private int mMaxReplicas = 54;
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+    private final ReplicationRunner mSeeds = new ReplicationRunner();
+    private ResultCache mCache;
+
+    /**
+     * One configuration under test and its results so far, one Statistics
+     * per replica, in replica order.
+     */
+    public static class Candidate
+    {
+        private final ProtocolConfig mConfig;
+        private final List<Statistics> mRuns = new ArrayList<Statistics>();
+        private final Replications mReplications = new Replications();
+
+        Candidate(ProtocolConfig config)
+        {
+            mConfig = config;
+        }
+
+        public ProtocolConfig getConfig()
+        {
+            return mConfig;
+        }
+
+        public Replications getReplications()
+        {
+            return mReplications;
+        }
+
+        public double get(String name)
+        {
+            return mReplications.getMean(name);
+        }
+
+        void add(Statistics statistics)
+        {
+            mRuns.add(statistics);
+            mReplications.add(statistics);
+        }
+    }
+
+    // Candidates whose mean p99 latency is above this lose to any that are not
+    public void setMaxLatency(double latency)
+    {
+        if (!(latency > 0.0))
+        {
+            throw new IllegalArgumentException("latency bound must be > 0");
+        }
+
+        mMaxLatency = latency;
+    }
+
+    public void setConfidence(double confidence)
+    {
+        mSeeds.setConfidence(confidence);
+        mConfidence = confidence;
+    }
+
+    public double getConfidence()
+    {
+        return mConfidence;
+    }
+
+    public void setReplicas(int min, int max)
+    {
+        if (min < 2 || max < min)
+        {
+            throw new IllegalArgumentException("need 2 <= min <= max replicas");
+        }
+
+        mMinReplicas = min;
+        mMaxReplicas = max;
+    }
+
+    public void setThreads(int threads)
+    {
+        mThreads = Math.max(1, threads);
+    }
+
+    public void setSeed(long seed)
+    {
+        mSeeds.setSeed(seed);
+    }
+
+    public void setCache(ResultCache cache)
+    {
+        mCache = cache;
+    }
+
+    /**
+     * Every combination of the grid, on top of the scenario's own
+     * configuration.
+     */
+    public List<Candidate> candidates(Scenario scenario)
+    {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (int window : WINDOWS)
+        {
+            for (double timeout : TIMEOUTS)
+            {
+                ProtocolConfig config = scenario.getConfig().copy();
+                config.setWindowSize(window);
+                config.setBufferSize(Math.max(window, config.getBufferSize()));
+                config.setTimeout(timeout);
+                candidates.add(new Candidate(config));
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Runs the search and returns the candidates of the last rung, best
+     * first.
+     */
+    public List<Candidate> tune(Scenario scenario)
+        throws InterruptedException, ExecutionException
+    {
+        List<Candidate> survivors = candidates(scenario);
+
+        // Daemon threads, as in ReplicationRunner
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads, r ->
+        {
+            Thread thread = new Thread(r, "tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try
+        {
+            int replicas = mMinReplicas;
+            while (true)
+            {
+                run(pool, scenario, survivors, replicas);
+                Collections.sort(survivors, ranking());
+
+                if (survivors.size() == 1 || replicas == mMaxReplicas)
+                {
+                    break;
+                }
+
+                int keep = Math.max(1, survivors.size() / ETA);
+                survivors = new ArrayList<Candidate>(survivors.subList(0, keep));
+                replicas = Math.min(mMaxReplicas, replicas * ETA);
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        return survivors;
+    }
+
+    // Brings every candidate up to "replicas" runs as a single batch
+    private void run(ExecutorService pool, Scenario scenario,
+                     List<Candidate> candidates, int replicas)
+        throws InterruptedException, ExecutionException
+    {
+        final double until = HORIZON * scenario.getMessages() * scenario.getDelay();
+        List<List<Future<Statistics>>> batch = new ArrayList<List<Future<Statistics>>>();
+        for (Candidate candidate : candidates)
+        {
+            final Scenario run = scenario.copy();
+            run.getConfig().setBufferSize(candidate.mConfig.getBufferSize());
+            run.getConfig().setWindowSize(candidate.mConfig.getWindowSize());
+            run.getConfig().setTimeout(candidate.mConfig.getTimeout());
+
+            List<Future<Statistics>> results = new ArrayList<Future<Statistics>>();
+            for (int i = candidate.mRuns.size(); i < replicas; i++)
+            {
+                final long seed = mSeeds.seedOf(i);
+                if (mCache != null)
+                {
+                    results.add(pool.submit(() -> mCache.run(run, seed,
+                            "horizon=" + until, () -> run(run, seed, until))));
+                }
+                else
+                {
+                    results.add(pool.submit(() -> run(run, seed, until)));
+                }
+            }
+            batch.add(results);
+        }
+
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            for (Future<Statistics> result : batch.get(i))
+            {
+                candidates.get(i).add(result.get());
+            }
+        }
+    }
+
+    private static Statistics run(Scenario scenario, long seed, double until)
+    {
+        NetworkSimulator simulator = scenario.create(seed);
+        simulator.setEventList(new HeapEventList());
+        simulator.start();
+        simulator.runUntil(until);
+        return simulator.getStatistics();
+    }
+
+    // Within the latency bound first, then by throughput; out of bound by latency
+    private Comparator<Candidate> ranking()
+    {
+        return (a, b) ->
+        {
+            boolean aFits = a.get(LATENCY) <= mMaxLatency;
+            boolean bFits = b.get(LATENCY) <= mMaxLatency;
+            if (aFits != bFits)
+            {
+                return aFits ? -1 : 1;
+            }
+            if (!aFits)
+            {
+                return Double.compare(a.get(LATENCY), b.get(LATENCY));
+            }
+            return Double.compare(b.get(THROUGHPUT), a.get(THROUGHPUT));
+        };
+    }
+
+    public boolean fits(Candidate candidate)
+    {
+        return candidate.get(LATENCY) <= mMaxLatency;
+    }
+
+    /**
+     * How much more throughput "best" has than "other", replica by
+     * replica.  Common random numbers make these paired differences far
+     * less noisy than the two means on their own.
+     */
+    public static Replications difference(Candidate best, Candidate other)
+    {
+        Replications difference = new Replications();
+        int replicas = Math.min(best.mRuns.size(), other.mRuns.size());
+        for (int i = 0; i < replicas; i++)
+        {
+            Statistics statistics = new Statistics();
+            statistics.set(THROUGHPUT, best.mRuns.get(i).get(THROUGHPUT) -
+                                       other.mRuns.get(i).get(THROUGHPUT));
+            difference.add(statistics);
+        }
+
+        return difference;
+    }
+
+    public final static void main(String[] argv)
+        throws InterruptedException, ExecutionException, IOException
+    {
+        if (argv.length < 4)
+        {
+            System.out.println("Usage: java ParameterTuner <messages> <loss> " +
+                               "<corrupt> <delay> [max p99 latency] " +
+                               "[max replicas] [seed] [threads] " +
+                               "[cache directory]");
+            System.exit(1);
+        }
+
+        Scenario scenario = new Scenario(Long.parseLong(argv[0]),
+                                         Double.parseDouble(argv[1]),
+                                         Double.parseDouble(argv[2]),
+                                         Double.parseDouble(argv[3]));
+        ParameterTuner tuner = new ParameterTuner();
+        if (argv.length > 4 && !argv[4].equals("-"))
+        {
+            tuner.setMaxLatency(Double.parseDouble(argv[4]));
+        }
+        if (argv.length > 5)
+        {
+            tuner.setReplicas(2, Integer.parseInt(argv[5]));
+        }
+        if (argv.length > 6)
+        {
+            tuner.setSeed(Long.parseLong(argv[6]));
+        }
+        if (argv.length > 7)
+        {
+            tuner.setThreads(Integer.parseInt(argv[7]));
+        }
+        ResultCache cache = null;
+        if (argv.length > 8)
+        {
+            cache = new ResultCache(new File(argv[8]));
+            tuner.setCache(cache);
+        }
+
+        long start = System.nanoTime();
+        List<Candidate> ranked = tuner.tune(scenario);
+        long wall = System.nanoTime() - start;
+
+        double confidence = tuner.getConfidence();
+        String interval = "+/- " + Math.round(100 * confidence) + "%";
+        System.out.println(scenario);
+        System.out.println(tuner.candidates(scenario).size() + " candidates, " +
+                           ranked.size() + " in the last rung, in " +
+                           String.format("%.1f", wall / 1e6) + " ms");
+        if (cache != null)
+        {
+            System.out.println("cache: " + cache);
+        }
+        System.out.println(String.format("%6s  %7s  %8s  %10s  %10s  %8s  %s",
+                           "window", "timeout", "replicas",
+                           "msgs/time", interval, "p99", "fits"));
+        for (Candidate candidate : ranked)
+        {
+            ProtocolConfig config = candidate.getConfig();
+            System.out.println(String.format("%6d  %7.0f  %8d  %10.4f  %10.4f  %8.1f  %s",
+                    config.getWindowSize(), config.getTimeout(),
+                    candidate.getReplications().getCount(),
+                    candidate.get(THROUGHPUT),
+                    candidate.getReplications().getHalfWidth(THROUGHPUT, confidence),
+                    candidate.get(LATENCY), tuner.fits(candidate) ? "yes" : "no"));
+        }
+
+        Candidate best = ranked.get(0);
+        System.out.println("best: " + best.getConfig());
+        if (!tuner.fits(best))
+        {
+            System.out.println("no candidate meets the latency bound");
+        }
+        if (ranked.size() > 1)
+        {
+            Replications difference = difference(best, ranked.get(1));
+            double mean = difference.getMean(THROUGHPUT);
+            double halfWidth = difference.getHalfWidth(THROUGHPUT, confidence);
+            System.out.println(String.format("ahead of the runner-up by %.4f %s %.4f " +
+                               "msgs/time (paired)%s", mean, interval, halfWidth,
+                               mean - halfWidth > 0.0 ? "" : "; not significant"));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * Bursty traffic.  During an "on" period messages arrive every "interval"
+ * time units; "on" and "off" period lengths are Pareto distributed, which
+ * gives the heavy-tailed burst lengths seen on real links.
+ */
+public class ParetoOnOffTraffic implements TrafficSource
+{
+    private final double mInterval;
+    private final double mMeanOn;
+    private final double mMeanOff;
+    private final double mShape;
+    private final int mSize;
+    private double mBurstLeft;              // Time left in the current "on" period
+
+    /**
+     * "shape" must be greater than 1 for the means to exist.
+     */
+    public ParetoOnOffTraffic(double interval, double meanOn, double meanOff,
+                              double shape, int size)
+    {
+        if (shape <= 1.0)
+        {
+            throw new IllegalArgumentException("Pareto shape must be > 1");
+        }
+
+        mInterval = interval;
+        mMeanOn = meanOn;
+        mMeanOff = meanOff;
+        mShape = shape;
+        mSize = size;
+        mBurstLeft = 0.0;
+    }
+
+    /**
+     * On/off parameters whose long run mean gap is "mean": bursts at five
+     * times the average rate, "on" one fifth of the time.
+     */
+    public static ParetoOnOffTraffic withMeanGap(double mean, int size)
+    {
+        return new ParetoOnOffTraffic(mean / 5, 5 * mean, 20 * mean, 1.5, size);
+    }
+
+    public double nextGap(RandomGenerator rand)
+    {
+        double gap = mInterval;
+        mBurstLeft -= mInterval;
+
+        if (mBurstLeft < 0.0)
+        {
+            gap += pareto(mMeanOff, rand);
+            mBurstLeft = pareto(mMeanOn, rand);
+        }
+
+        return gap;
+    }
+
+    public int nextSize(RandomGenerator rand)
+    {
+        return mSize;
+    }
+
+    public int getMaxSize()
+    {
+        return mSize;
+    }
+
+    public double getBurstLeft()
+    {
+        return mBurstLeft;
+    }
+
+    public void setBurstLeft(double burstLeft)
+    {
+        mBurstLeft = burstLeft;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeDouble(mBurstLeft);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mBurstLeft = in.readDouble();
+    }
+
+    private double pareto(double mean, RandomGenerator rand)
+    {
+        double scale = mean * (mShape - 1) / mShape;
+        return scale / Math.pow(1.0 - rand.nextDouble(), 1.0 / mShape);
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Strategy used by a sender to stripe its packets across the parallel
+ * paths to the receiver.  The sender tells it how many packets each path
+ * has in flight when it picks one, and reports every packet acknowledged.
+ * Implementations are not thread safe; each sender owns its own instance.
+ */
+public interface PathScheduler extends Checkpointable
+{
+    /**
+     * The path for the next packet, new or resent.
+     */
+    public int choose(int[] inFlight);
+
+    /**
+     * A packet sent on "path" has been acknowledged.  "rtt" is the round
+     * trip it measured, or NaN if the ACK gave no clean sample.
+     */
+    public void acked(int path, double rtt);
+
+    public String getName();
+}
@@ -0,0 +1,78 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Preallocated message contents.  Layer 5 fills every message with a single
+ * letter, so there are only 26 distinct payloads of each size and they can
+ * be built once and handed out again and again.  Pooled Messages are
+ * shared: protocols may read them but must not call setData on them.
+ */
+public class PayloadPool
+{
+    private final Message[][] mMessages;
+    private final HashMap<Integer, String[]> mLarge;
+    private int mLastLargeSize;
+    private String[] mLastLarge;
+
+    public PayloadPool()
+    {
+        mMessages = new Message[26][NetworkSimulator.MAXDATASIZE + 1];
+        for (int letter = 0; letter < 26; letter++)
+        {
+            for (int size = 0; size <= NetworkSimulator.MAXDATASIZE; size++)
+            {
+                mMessages[letter][size] = new Message(fill(letter, size));
+            }
+        }
+
+        mLarge = new HashMap<Integer, String[]>();
+        mLastLargeSize = -1;
+    }
+
+    /**
+     * A message of "size" characters, all equal to letter "letter" (0 = a).
+     * Only valid for sizes up to MAXDATASIZE.
+     */
+    public Message getMessage(int letter, int size)
+    {
+        return mMessages[letter][size];
+    }
+
+    /**
+     * The data of a message of any size.  Sizes above MAXDATASIZE are built
+     * the first time they are asked for.
+     */
+    public String getData(int letter, int size)
+    {
+        if (size <= NetworkSimulator.MAXDATASIZE)
+        {
+            return mMessages[letter][size].getData();
+        }
+
+        if (size != mLastLargeSize)
+        {
+            String[] strings = mLarge.get(size);
+            if (strings == null)
+            {
+                strings = new String[26];
+                for (int i = 0; i < 26; i++)
+                {
+                    strings[i] = fill(i, size);
+                }
+                mLarge.put(size, strings);
+            }
+
+            mLastLargeSize = size;
+            mLastLarge = strings;
+        }
+
+        return mLastLarge[letter];
+    }
+
+    private static String fill(int letter, int size)
+    {
+        char[] data = new char[size];
+        Arrays.fill(data, (char)('a' + letter));
+        return new String(data);
+    }
+}
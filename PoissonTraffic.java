@@ -0,0 +1,42 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * Poisson arrivals: exponentially distributed gaps with the given mean.
+ */
+public class PoissonTraffic implements TrafficSource
+{
+    private final double mMean;
+    private final int mSize;
+
+    public PoissonTraffic(double mean, int size)
+    {
+        mMean = mean;
+        mSize = size;
+    }
+
+    public double nextGap(RandomGenerator rand)
+    {
+        return -mMean * Math.log(1.0 - rand.nextDouble());
+    }
+
+    public int nextSize(RandomGenerator rand)
+    {
+        return mSize;
+    }
+
+    public int getMaxSize()
+    {
+        return mSize;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+    }
+}
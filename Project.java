@@ -13,6 +13,13 @@ public class Project
         int trace = -1;
         long seed = -1;
         String buffer = "";
+        String checksum = null;
+        String protocol = null;
+        TrafficSource traffic = null;
+        Impairment[] impairments = new Impairment[2];
+        String series = null;
+        String spill = null;
+        double interval = -1.0;
     
         BufferedReader stdIn = new BufferedReader(
                                    new InputStreamReader(System.in));
@@ -202,10 +209,234 @@ public class Project
                 }
             }
         }
+
+        while (checksum == null)
+        {
+            System.out.print("Enter checksum (additive, internet, crc32c): " +
+                             "[additive] ");
+            try
+            {
+                buffer = stdIn.readLine();
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("IOError reading your input!");
+                System.exit(1);
+            }
+            
+            if (buffer.equals(""))
+            {
+                checksum = "additive";
+            }
+            else if (buffer.equals("additive") || buffer.equals("internet") ||
+                     buffer.equals("crc32c"))
+            {
+                checksum = buffer;
+            }
+        }
+
+        while (traffic == null)
+        {
+            System.out.print("Enter traffic model (uniform, poisson, pareto, " +
+                             "cbr, or a trace file): [uniform] ");
+            try
+            {
+                buffer = stdIn.readLine();
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("IOError reading your input!");
+                System.exit(1);
+            }
+            
+            if (buffer.equals("") || buffer.equals("uniform"))
+            {
+                traffic = new UniformTraffic(delay,
+                                             NetworkSimulator.MAXDATASIZE);
+            }
+            else if (buffer.equals("poisson"))
+            {
+                traffic = new PoissonTraffic(delay,
+                                             NetworkSimulator.MAXDATASIZE);
+            }
+            else if (buffer.equals("pareto"))
+            {
+                traffic = ParetoOnOffTraffic.withMeanGap(delay,
+                                             NetworkSimulator.MAXDATASIZE);
+            }
+            else if (buffer.equals("cbr"))
+            {
+                traffic = new ConstantBitrateTraffic(delay,
+                                             NetworkSimulator.MAXDATASIZE);
+            }
+            else
+            {
+                try
+                {
+                    traffic = new TraceTraffic(buffer);
+                }
+                catch (IOException ioe)
+                {
+                    System.out.println("Unable to open trace " + buffer +
+                                       ": " + ioe.getMessage());
+                }
+            }
+        }
+
+        while (protocol == null)
+        {
+            System.out.print("Enter protocol " + ProtocolRegistry.names() +
+                             ": [" + ProtocolRegistry.DEFAULT + "] ");
+            try
+            {
+                buffer = stdIn.readLine();
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("IOError reading your input!");
+                System.exit(1);
+            }
+            
+            if (buffer.equals(""))
+            {
+                protocol = ProtocolRegistry.DEFAULT;
+            }
+            else if (ProtocolRegistry.get(buffer) != null)
+            {
+                protocol = buffer;
+            }
+        }
+
+        // Data goes to B and ACKs to A, so each direction gets its own model
+        String[] directions = { "A (ACKs)", "B (data)" };
+        for (int entity = NetworkSimulator.B; entity >= NetworkSimulator.A; entity--)
+        {
+            boolean chosen = false;
+            while (!chosen)
+            {
+                System.out.print("Enter loss model toward " + directions[entity] +
+                                 " (bernoulli, gilbert[:burst], " +
+                                 "outage[:period[:duration]], or a loss " +
+                                 "trace file): [bernoulli] ");
+                try
+                {
+                    buffer = stdIn.readLine();
+                }
+                catch (IOException ioe)
+                {
+                    System.out.println("IOError reading your input!");
+                    System.exit(1);
+                }
+                
+                try
+                {
+                    impairments[entity] = Scenario.createImpairment(
+                        buffer.equals("") ? Scenario.BERNOULLI : buffer,
+                        loss, corrupt);
+                    chosen = true;
+                }
+                catch (IllegalArgumentException iae)
+                {
+                    System.out.println(iae.getMessage());
+                }
+            }
+        }
+
+        System.out.print("Enter time series file (.csv or .jsonl): [none] ");
+        try
+        {
+            series = stdIn.readLine();
+        }
+        catch (IOException ioe)
+        {
+            System.out.println("IOError reading your input!");
+            System.exit(1);
+        }
+
+        while (!series.equals("") && interval <= 0.0)
+        {
+            System.out.print("Enter time series interval (> 0): [1000] ");
+            try
+            {
+                buffer = stdIn.readLine();
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("IOError reading your input!");
+                System.exit(1);
+            }
+            
+            if (buffer.equals(""))
+            {
+                interval = 1000.0;
+            }
+            else
+            {            
+                try
+                {
+                    interval = (Double.valueOf(buffer)).doubleValue();
+                }
+                catch (NumberFormatException nfe)
+                {
+                    interval = -1.0;
+                }
+            }
+        }
+         
+        System.out.print("Enter directory to spill far-future events to: " +
+                         "[none] ");
+        try
+        {
+            spill = stdIn.readLine();
+        }
+        catch (IOException ioe)
+        {
+            System.out.println("IOError reading your input!");
+            System.exit(1);
+        }
          
         simulator = new StudentNetworkSimulator(nsim, loss, corrupt, delay,
                                                 trace, seed);
+        simulator.setProtocol(protocol);
+        simulator.setChecksum(checksum);
+        simulator.setTrafficSource(traffic);
+        simulator.setImpairment(NetworkSimulator.A, impairments[NetworkSimulator.A]);
+        simulator.setImpairment(NetworkSimulator.B, impairments[NetworkSimulator.B]);
+
+        // Events more than a few buckets of ten mean arrival gaps ahead are
+        // kept on disk
+        SpillingEventList spilling = null;
+        if (!spill.equals(""))
+        {
+            spilling = new SpillingEventList(new File(spill), 10 * delay);
+            simulator.setEventList(spilling);
+        }
+
+        if (!series.equals(""))
+        {
+            try
+            {
+                simulator.setTimeSeries(series, interval);
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("Unable to write time series " + series);
+                System.exit(1);
+            }
+        }
                                                 
         simulator.runSimulator();
+
+        if (spilling != null)
+        {
+            try
+            {
+                spilling.close();
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("Unable to delete spill files in " + spill);
+            }
+        }
     }
 }
@@ -0,0 +1,71 @@
+/**
+ * Runs every registered protocol against the same seed and channel and
+ * prints their results side by side.
+ *
+ * Usage: java ProtocolComparison [messages] [loss] [corrupt] [delay] [seed]
+ */
+public class ProtocolComparison
+{
+    private static final String[] COLUMNS = {
+        "Messages delivered",
+        "Throughput (messages per time unit)",
+        "Goodput (bytes per time unit)",
+        "Packets sent to layer 3",
+        "Number of re-transmissions",
+        "Average RTT",
+        "Simulated time"
+    };
+
+    public final static void main(String[] argv)
+    {
+        int messages = argv.length > 0 ? Integer.parseInt(argv[0]) : 10000;
+        double loss = argv.length > 1 ? Double.parseDouble(argv[1]) : 0.1;
+        double corrupt = argv.length > 2 ? Double.parseDouble(argv[2]) : 0.1;
+        double delay = argv.length > 3 ? Double.parseDouble(argv[3]) : 20.0;
+        long seed = argv.length > 4 ? Long.parseLong(argv[4]) : 1L;
+
+        System.out.println("messages=" + messages + " loss=" + loss +
+                           " corrupt=" + corrupt + " delay=" + delay +
+                           " seed=" + seed);
+        System.out.print(String.format("%-40s", "protocol"));
+        for (String name : ProtocolRegistry.names())
+        {
+            System.out.print(String.format("%16s", name));
+        }
+        System.out.println();
+
+        // Every protocol sees the same arrivals and channel draws because
+        // the random streams only depend on the seed
+        Statistics[] results = new Statistics[ProtocolRegistry.names().size()];
+        long[] wall = new long[results.length];
+        int i = 0;
+        for (String name : ProtocolRegistry.names())
+        {
+            NetworkSimulator simulator =
+                new NetworkSimulator(messages, loss, corrupt, delay, 0, seed);
+            simulator.setProtocol(name);
+
+            long start = System.nanoTime();
+            simulator.runSimulator();
+            wall[i] = System.nanoTime() - start;
+            results[i++] = simulator.getStatistics();
+        }
+
+        for (String column : COLUMNS)
+        {
+            System.out.print(String.format("%-40s", column));
+            for (Statistics result : results)
+            {
+                System.out.print(String.format("%16.4f", result.get(column)));
+            }
+            System.out.println();
+        }
+
+        System.out.print(String.format("%-40s", "Wall time (ms)"));
+        for (long nanos : wall)
+        {
+            System.out.print(String.format("%16.1f", nanos / 1e6));
+        }
+        System.out.println();
+    }
+}
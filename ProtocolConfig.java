@@ -0,0 +1,357 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Tunable protocol parameters shared by the sender and the receiver.  Each
+ * side reads the values once, in its constructor.
+ */
+public class ProtocolConfig implements Checkpointable
+{
+    // The advertised window travels as one payload character
+    public static final int MAX_RECEIVE_BUFFER = 0xffff - '0';
+
+    // Block size that lets the sender pick its own code rate
+    public static final int FEC_ADAPTIVE = -1;
+
+    // Pacing rate that spreads a window over the shortest RTT seen
+    public static final double PACING_AUTO = -1.0;
+
+    private int mWindowSize = 8;
+    private int mBufferSize = 50;
+    private double mTimeout = 50.0;
+    private int mSequenceBits = 0;          // 0 picks the smallest space for the window
+    private String mChecksum = "additive";
+    private int mReceiveBuffer = 0;         // 0 hands data straight to layer 5
+    private double mDrainRate = 1.0;        // Messages layer 5 consumes per time unit
+    private String mScheduler = "roundrobin";
+    private int mFecBlock = 0;              // Data packets per parity packet; 0 is off
+    private double mPacingRate = 0.0;       // Packets the sender sends per time unit; 0 is off
+    private int mPacingBurst = 1;           // Packets the sender may send back to back
+
+    public int getWindowSize()
+    {
+        return mWindowSize;
+    }
+
+    public void setWindowSize(int windowSize)
+    {
+        if (windowSize < 1)
+        {
+            throw new IllegalArgumentException("window size must be > 0");
+        }
+
+        mWindowSize = windowSize;
+    }
+
+    public int getBufferSize()
+    {
+        return mBufferSize;
+    }
+
+    public void setBufferSize(int bufferSize)
+    {
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException("buffer size must be > 0");
+        }
+
+        mBufferSize = bufferSize;
+    }
+
+    public double getTimeout()
+    {
+        return mTimeout;
+    }
+
+    public void setTimeout(double timeout)
+    {
+        if (timeout <= 0.0)
+        {
+            throw new IllegalArgumentException("timeout must be > 0");
+        }
+
+        mTimeout = timeout;
+    }
+
+    public int getSequenceBits()
+    {
+        return mSequenceBits;
+    }
+
+    /**
+     * Sets k, the number of bits in the sequence and ack fields, or 0 for
+     * the smallest space that can number the window.
+     */
+    public void setSequenceBits(int bits)
+    {
+        if (bits != 0)
+        {
+            new SequenceSpace(bits);
+        }
+
+        mSequenceBits = bits;
+    }
+
+    /**
+     * The sequence space for a sender allowed "window" packets in flight.
+     * The space must be larger than the window for the receiver to tell old
+     * packets from new ones.
+     */
+    public SequenceSpace createSequenceSpace(int window)
+    {
+        if (mSequenceBits == 0)
+        {
+            return SequenceSpace.forWindow(window);
+        }
+
+        SequenceSpace space = new SequenceSpace(mSequenceBits);
+        if (space.size() <= window)
+        {
+            throw new IllegalArgumentException("a " + mSequenceBits + "-bit " +
+                    "sequence space cannot number a window of " + window);
+        }
+
+        return space;
+    }
+
+    public int getReceiveBuffer()
+    {
+        return mReceiveBuffer;
+    }
+
+    /**
+     * Sets how many messages the receiver can hold for a slow layer 5.  A
+     * non-zero size turns on flow control: the receiver advertises its free
+     * space in every ACK and the sender keeps within it.
+     */
+    public void setReceiveBuffer(int messages)
+    {
+        if (messages < 0 || messages > MAX_RECEIVE_BUFFER)
+        {
+            throw new IllegalArgumentException("receive buffer must be in 0.." +
+                    MAX_RECEIVE_BUFFER);
+        }
+
+        mReceiveBuffer = messages;
+    }
+
+    public double getDrainRate()
+    {
+        return mDrainRate;
+    }
+
+    public void setDrainRate(double messagesPerTimeUnit)
+    {
+        if (!(messagesPerTimeUnit > 0.0))
+        {
+            throw new IllegalArgumentException("drain rate must be > 0");
+        }
+
+        mDrainRate = messagesPerTimeUnit;
+    }
+
+    public String getChecksum()
+    {
+        return mChecksum;
+    }
+
+    /**
+     * Selects the checksum by name: additive, internet or crc32c.
+     */
+    public void setChecksum(String checksum)
+    {
+        createChecksum(checksum);
+        mChecksum = checksum;
+    }
+
+    /**
+     * A new instance of the configured checksum.  Checksums keep scratch
+     * buffers, so every side gets its own.
+     */
+    public PacketChecksum createChecksum()
+    {
+        return createChecksum(mChecksum);
+    }
+
+    private static PacketChecksum createChecksum(String name)
+    {
+        if (name.equals("additive"))
+        {
+            return new AdditiveChecksum();
+        }
+        else if (name.equals("internet"))
+        {
+            return new InternetChecksum();
+        }
+        else if (name.equals("crc32c"))
+        {
+            return new Crc32cChecksum();
+        }
+
+        throw new IllegalArgumentException("unknown checksum " + name);
+    }
+
+    public String getScheduler()
+    {
+        return mScheduler;
+    }
+
+    /**
+     * Selects how the sender spreads packets over several paths by name:
+     * roundrobin, rtt or goodput.
+     */
+    public void setScheduler(String scheduler)
+    {
+        createScheduler(scheduler, 2);
+        mScheduler = scheduler;
+    }
+
+    /**
+     * A new instance of the configured path scheduler.
+     */
+    public PathScheduler createScheduler(int paths)
+    {
+        return createScheduler(mScheduler, paths);
+    }
+
+    private PathScheduler createScheduler(String name, int paths)
+    {
+        if (name.equals("roundrobin"))
+        {
+            return new RoundRobinScheduler(paths);
+        }
+        else if (name.equals("rtt"))
+        {
+            return new LowestRttScheduler(paths, mWindowSize);
+        }
+        else if (name.equals("goodput"))
+        {
+            return new GoodputScheduler(paths);
+        }
+
+        throw new IllegalArgumentException("unknown path scheduler " + name);
+    }
+
+    public int getFecBlock()
+    {
+        return mFecBlock;
+    }
+
+    /**
+     * Sends one XOR parity packet after every "block" data packets, so that
+     * one loss per block is repaired without a timeout.  0 turns forward
+     * error correction off; FEC_ADAPTIVE lets the sender shrink the block
+     * when timeouts show that losses get past it and grow it when they
+     * do not.
+     */
+    public void setFecBlock(int block)
+    {
+        if (block < FEC_ADAPTIVE || block > XorParity.MAX_BLOCK)
+        {
+            throw new IllegalArgumentException("FEC block must be in 1.." +
+                    XorParity.MAX_BLOCK + ", 0 or FEC_ADAPTIVE");
+        }
+
+        mFecBlock = block;
+    }
+
+    public double getPacingRate()
+    {
+        return mPacingRate;
+    }
+
+    /**
+     * Spaces the sender's packets, new and resent alike, at most "rate" per
+     * time unit instead of sending them as fast as they come.  0 turns
+     * pacing off; PACING_AUTO paces a window per shortest RTT measured.
+     */
+    public void setPacingRate(double rate)
+    {
+        if (!(rate >= 0.0) && rate != PACING_AUTO)
+        {
+            throw new IllegalArgumentException("pacing rate must be >= 0 " +
+                    "or PACING_AUTO");
+        }
+
+        mPacingRate = rate;
+    }
+
+    public int getPacingBurst()
+    {
+        return mPacingBurst;
+    }
+
+    // The depth of the token bucket: packets sent back to back after a pause
+    public void setPacingBurst(int packets)
+    {
+        if (packets < 1)
+        {
+            throw new IllegalArgumentException("pacing burst must be >= 1");
+        }
+
+        mPacingBurst = packets;
+    }
+
+    public ProtocolConfig copy()
+    {
+        ProtocolConfig copy = new ProtocolConfig();
+        copy.mWindowSize = mWindowSize;
+        copy.mBufferSize = mBufferSize;
+        copy.mTimeout = mTimeout;
+        copy.mSequenceBits = mSequenceBits;
+        copy.mChecksum = mChecksum;
+        copy.mReceiveBuffer = mReceiveBuffer;
+        copy.mDrainRate = mDrainRate;
+        copy.mScheduler = mScheduler;
+        copy.mFecBlock = mFecBlock;
+        copy.mPacingRate = mPacingRate;
+        copy.mPacingBurst = mPacingBurst;
+        return copy;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mWindowSize);
+        out.writeInt(mBufferSize);
+        out.writeDouble(mTimeout);
+        out.writeInt(mSequenceBits);
+        out.writeUTF(mChecksum);
+        out.writeInt(mReceiveBuffer);
+        out.writeDouble(mDrainRate);
+        out.writeUTF(mScheduler);
+        out.writeInt(mFecBlock);
+        out.writeDouble(mPacingRate);
+        out.writeInt(mPacingBurst);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mWindowSize = in.readInt();
+        mBufferSize = in.readInt();
+        mTimeout = in.readDouble();
+        mSequenceBits = in.readInt();
+        mChecksum = in.readUTF();
+        mReceiveBuffer = in.readInt();
+        mDrainRate = in.readDouble();
+        mScheduler = in.readUTF();
+        mFecBlock = in.readInt();
+        mPacingRate = in.readDouble();
+        mPacingBurst = in.readInt();
+    }
+
+    public String toString()
+    {
+        return "window=" + mWindowSize + " buffer=" + mBufferSize +
+               " timeout=" + mTimeout + " seqbits=" + mSequenceBits +
+               " checksum=" + mChecksum +
+               (mReceiveBuffer > 0 ? " rbuf=" + mReceiveBuffer +
+                                     " drain=" + mDrainRate : "") +
+               (mScheduler.equals("roundrobin") ? "" : " scheduler=" + mScheduler) +
+               (mFecBlock == 0 ? "" : " fec=" +
+                (mFecBlock == FEC_ADAPTIVE ? "adaptive" : String.valueOf(mFecBlock))) +
+               (mPacingRate == 0.0 ? "" : " pacing=" +
+                (mPacingRate == PACING_AUTO ? "auto" : String.valueOf(mPacingRate)) +
+                " burst=" + mPacingBurst);
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Creates the two halves of one transport protocol.
+ */
+public interface ProtocolFactory
+{
+    public String getName();
+
+    /**
+     * Identifies this build of the protocol.  Change it with any change
+     * that alters the protocol's results, so that ResultCache does not
+     * hand back results of the old build.
+     */
+    public String getVersion();
+    public Sender createSender(ProtocolHost host, ProtocolConfig config);
+    public Receiver createReceiver(ProtocolHost host, ProtocolConfig config);
+}
@@ -0,0 +1,38 @@
+/**
+ * The services the simulator offers to a transport protocol.
+ *
+ *  void startTimer(int entity, double increment):
+ *       Starts a timer running at "entity" [A or B], which will expire in
+ *       "increment" time units, causing the interrupt handler to be
+ *       called.
+ *  void stopTimer(int entity):
+ *       Stops the timer running at "entity" [A or B]
+ *  TimerHandle startTimer(int entity, double increment, int tag)
+ *       Starts one of any number of timers at "entity"; when it expires
+ *       timerExpired(tag) is called on that side.  "tag" must be >= 0.
+ *  void stopTimer(TimerHandle timer)
+ *       Cancels a timer started with a tag
+ *  void toLayer3(int callingEntity, Packet p)
+ *       Puts the packet "p" into the network from "callingEntity" [A or B],
+ *       on the path given by p.getPath()
+ *  int getPathCount()
+ *       Returns the number of parallel paths between A and B, at least 1
+ *  void toLayer5(int entity, String dataSent)
+ *       Passes "dataSent" up to layer 5 from "entity" [A or B]
+ *  double getTime()
+ *       Returns the current time in the simulator.
+ *  void recordRtt(double rtt)
+ *       Reports the round trip time measured for one ACK
+ */
+public interface ProtocolHost
+{
+    public void startTimer(int entity, double increment);
+    public void stopTimer(int entity);
+    public TimerHandle startTimer(int entity, double increment, int tag);
+    public void stopTimer(TimerHandle timer);
+    public void toLayer3(int callingEntity, Packet p);
+    public int getPathCount();
+    public void toLayer5(int entity, String dataSent);
+    public double getTime();
+    public void recordRtt(double rtt);
+}
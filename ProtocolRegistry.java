@@ -0,0 +1,38 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The transport protocols that can be selected by name at runtime.
+ */
+public class ProtocolRegistry
+{
+    public static final String DEFAULT = "gbn";
+
+    private static final LinkedHashMap<String, ProtocolFactory> sFactories =
+            new LinkedHashMap<String, ProtocolFactory>();
+
+    static
+    {
+        register(new GoBackNProtocol());
+        register(new AlternatingBitProtocol());
+    }
+
+    public static synchronized void register(ProtocolFactory factory)
+    {
+        sFactories.put(factory.getName(), factory);
+    }
+
+    /**
+     * Returns the protocol called "name", or null if there is none.
+     */
+    public static synchronized ProtocolFactory get(String name)
+    {
+        return sFactories.get(name);
+    }
+
+    public static synchronized List<String> names()
+    {
+        return new ArrayList<String>(sFactories.keySet());
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * A SplitMix64 generator whose whole state is a single long.  Streams are
+ * derived from a run seed and a stream number, so every source of
+ * randomness in the simulator draws from its own sequence and is not
+ * shifted by draws made elsewhere.  Unlike java.util.Random there is no
+ * atomic update per draw, and the state can be saved and restored exactly.
+ */
+public final class RandomStream implements RandomGenerator
+{
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long mState;
+
+    public RandomStream(long seed)
+    {
+        mState = seed;
+    }
+
+    /**
+     * The stream numbered "stream" of the run seeded with "seed".
+     */
+    public RandomStream(long seed, long stream)
+    {
+        mState = mix64(mix64(seed) + GOLDEN_GAMMA * (stream + 1));
+    }
+
+    public long nextLong()
+    {
+        return mix64(mState += GOLDEN_GAMMA);
+    }
+
+    public int nextInt()
+    {
+        return (int)(nextLong() >>> 32);
+    }
+
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    public long getState()
+    {
+        return mState;
+    }
+
+    public void setState(long state)
+    {
+        mState = state;
+    }
+
+    private static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
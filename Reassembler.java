@@ -0,0 +1,63 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Rebuilds application messages from the segments produced by a Segmenter.
+ * Segments are appended as they arrive, so only the message currently being
+ * rebuilt is held in memory.
+ */
+public class Reassembler implements Checkpointable
+{
+    private final StringBuilder mMessage = new StringBuilder();
+    private int mMalformed;                 // Segments without a valid header
+
+    /**
+     * Appends one in-order segment.  Returns the complete message when the
+     * last segment arrives, null otherwise.
+     */
+    public String accept(String segment)
+    {
+        if (segment.isEmpty())
+        {
+            mMalformed++;
+            return null;
+        }
+
+        char header = segment.charAt(0);
+        if (header != Segmenter.MORE && header != Segmenter.LAST)
+        {
+            mMalformed++;
+            return null;
+        }
+
+        mMessage.append(segment, 1, segment.length());
+
+        if (header == Segmenter.MORE)
+        {
+            return null;
+        }
+
+        String message = mMessage.toString();
+        mMessage.setLength(0);
+        return message;
+    }
+
+    public int getMalformed()
+    {
+        return mMalformed;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        Segmenter.writeLong(out, mMessage.toString());
+        out.writeInt(mMalformed);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mMessage.setLength(0);
+        mMessage.append(Segmenter.readLong(in));
+        mMalformed = in.readInt();
+    }
+}
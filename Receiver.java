@@ -0,0 +1,21 @@
+/**
+ * The B side of a transport protocol.  The engine calls these methods in
+ * place of the old bInit/bInput.
+ */
+public interface Receiver extends Checkpointable
+{
+    // Called once before any other method
+    public void init();
+
+    // A (possibly corrupted) packet from A has arrived
+    public void input(Packet packet);
+
+    // A timer started with a tag has expired
+    public void timerExpired(int tag);
+
+    // Messages received but not yet passed up to layer 5
+    public int getBuffered();
+
+    // Adds this side's counters to the run statistics
+    public void report(Statistics statistics);
+}
@@ -0,0 +1,242 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent replicas of a scenario in parallel until every tracked
+ * metric is known to the requested relative precision, or a replica limit
+ * is reached.
+ *
+ * Replica i is seeded from stream i of the base seed, and results are
+ * folded in replica order whatever order the threads finish in, so a
+ * given base seed always stops after the same replicas with the same
+ * answer.  With a ResultCache, replicas run before come from the cache.
+ *
+ * Usage: java ReplicationRunner <messages> <loss> <corrupt> <delay>
+ *                               [protocol] [precision] [confidence]
+ *                               [max replicas] [seed] [threads]
+ *                               [cache directory]
+ */
+public class ReplicationRunner
+{
+    public static final List<String> DEFAULT_METRICS = Arrays.asList(
+        "Throughput (messages per time unit)",
+        "Goodput (bytes per time unit)",
+        "Number of re-transmissions",
+        "Average RTT");
+
+    private double mPrecision = 0.05;
+    private double mConfidence = 0.95;
+    private int mMinReplicas = 5;
+    private int mMaxReplicas = 100;
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+    private long mSeed = 1;
+    private List<String> mMetrics = DEFAULT_METRICS;
+    private ResultCache mCache;
+
+    // Relative half-width at which a metric counts as known
+    public void setPrecision(double precision)
+    {
+        if (!(precision > 0.0))
+        {
+            throw new IllegalArgumentException("precision must be > 0");
+        }
+
+        mPrecision = precision;
+    }
+
+    public void setConfidence(double confidence)
+    {
+        if (!(confidence > 0.0 && confidence < 1.0))
+        {
+            throw new IllegalArgumentException("confidence must be in (0, 1)");
+        }
+
+        mConfidence = confidence;
+    }
+
+    public double getConfidence()
+    {
+        return mConfidence;
+    }
+
+    public void setReplicas(int min, int max)
+    {
+        if (min < 2 || max < min)
+        {
+            throw new IllegalArgumentException("need 2 <= min <= max replicas");
+        }
+
+        mMinReplicas = min;
+        mMaxReplicas = max;
+    }
+
+    public void setThreads(int threads)
+    {
+        mThreads = Math.max(1, threads);
+    }
+
+    public void setSeed(long seed)
+    {
+        mSeed = seed;
+    }
+
+    public void setMetrics(List<String> metrics)
+    {
+        mMetrics = metrics;
+    }
+
+    public void setCache(ResultCache cache)
+    {
+        mCache = cache;
+    }
+
+    public List<String> getMetrics()
+    {
+        return mMetrics;
+    }
+
+    // The seed of replica "index"
+    public long seedOf(int index)
+    {
+        return new RandomStream(mSeed, index).nextLong();
+    }
+
+    public Replications run(final Scenario scenario)
+        throws InterruptedException, ExecutionException
+    {
+        Replications replications = new Replications();
+
+        // Daemon threads, so replicas still running when the answer is
+        // known do not hold the JVM open
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads, r ->
+        {
+            Thread thread = new Thread(r, "replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try
+        {
+            List<Future<Statistics>> results = new ArrayList<Future<Statistics>>();
+            while (results.size() < Math.min(mThreads, mMaxReplicas))
+            {
+                results.add(submit(pool, scenario, results.size()));
+            }
+
+            for (int next = 0; next < results.size(); next++)
+            {
+                replications.add(results.get(next).get());
+
+                if (replications.getCount() >= mMinReplicas &&
+                    replications.isPrecise(mMetrics, mPrecision, mConfidence))
+                {
+                    break;
+                }
+
+                if (results.size() < mMaxReplicas)
+                {
+                    results.add(submit(pool, scenario, results.size()));
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        return replications;
+    }
+
+    private Future<Statistics> submit(ExecutorService pool,
+                                      final Scenario scenario, int index)
+    {
+        final long seed = seedOf(index);
+        if (mCache != null)
+        {
+            return pool.submit(() -> mCache.run(scenario, seed, "",
+                                                () -> scenario.run(seed)));
+        }
+        return pool.submit(() -> scenario.run(seed));
+    }
+
+    public final static void main(String[] argv)
+        throws InterruptedException, ExecutionException, IOException
+    {
+        if (argv.length < 4)
+        {
+            System.out.println("Usage: java ReplicationRunner <messages> <loss> " +
+                               "<corrupt> <delay> [protocol] [precision] " +
+                               "[confidence] [max replicas] [seed] [threads] " +
+                               "[cache directory]");
+            System.exit(1);
+        }
+
+        Scenario scenario = new Scenario(Long.parseLong(argv[0]),
+                                         Double.parseDouble(argv[1]),
+                                         Double.parseDouble(argv[2]),
+                                         Double.parseDouble(argv[3]));
+        ReplicationRunner runner = new ReplicationRunner();
+        if (argv.length > 4)
+        {
+            scenario.setProtocol(argv[4]);
+        }
+        if (argv.length > 5)
+        {
+            runner.setPrecision(Double.parseDouble(argv[5]));
+        }
+        if (argv.length > 6)
+        {
+            runner.setConfidence(Double.parseDouble(argv[6]));
+        }
+        if (argv.length > 7)
+        {
+            runner.setReplicas(5, Integer.parseInt(argv[7]));
+        }
+        if (argv.length > 8)
+        {
+            runner.setSeed(Long.parseLong(argv[8]));
+        }
+        if (argv.length > 9)
+        {
+            runner.setThreads(Integer.parseInt(argv[9]));
+        }
+        ResultCache cache = null;
+        if (argv.length > 10)
+        {
+            cache = new ResultCache(new File(argv[10]));
+            runner.setCache(cache);
+        }
+
+        long start = System.nanoTime();
+        Replications result = runner.run(scenario);
+        long wall = System.nanoTime() - start;
+
+        System.out.println(scenario);
+        System.out.println(result.getCount() + " replicas in " +
+                           String.format("%.1f", wall / 1e6) + " ms; " +
+                           "tracked metrics are marked *");
+        if (cache != null)
+        {
+            System.out.println("cache: " + cache);
+        }
+        System.out.println(String.format("%-48s%16s%16s%10s", "metric", "mean",
+                           "+/- " + Math.round(100 * runner.getConfidence()) + "%",
+                           "rel"));
+        for (String name : result.names())
+        {
+            double mean = result.getMean(name);
+            double halfWidth = result.getHalfWidth(name, runner.getConfidence());
+            String marker = runner.getMetrics().contains(name) ? "* " : "  ";
+            System.out.println(String.format("%-48s%16.4f%16.4f%9.2f%%",
+                               marker + name, mean, halfWidth,
+                               mean != 0.0 ? 100 * halfWidth / Math.abs(mean) : 0.0));
+        }
+    }
+}
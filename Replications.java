@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Running mean and variance of every metric over independent replicas of
+ * a scenario, with Student-t confidence intervals.
+ */
+public class Replications
+{
+    private final LinkedHashMap<String, Summary> mSummaries =
+            new LinkedHashMap<String, Summary>();
+    private int mCount;
+
+    public void add(Statistics statistics)
+    {
+        for (String name : statistics.names())
+        {
+            Summary summary = mSummaries.get(name);
+            if (summary == null)
+            {
+                summary = new Summary();
+                mSummaries.put(name, summary);
+            }
+            summary.add(statistics.get(name));
+        }
+        mCount++;
+    }
+
+    public int getCount()
+    {
+        return mCount;
+    }
+
+    public List<String> names()
+    {
+        return new ArrayList<String>(mSummaries.keySet());
+    }
+
+    public boolean has(String name)
+    {
+        return mSummaries.containsKey(name);
+    }
+
+    public double getMean(String name)
+    {
+        Summary summary = mSummaries.get(name);
+        return summary == null ? Double.NaN : summary.mMean;
+    }
+
+    public double getStandardDeviation(String name)
+    {
+        Summary summary = mSummaries.get(name);
+        return summary == null || summary.mCount < 2 ? Double.NaN :
+               Math.sqrt(summary.mM2 / (summary.mCount - 1));
+    }
+
+    /**
+     * Half the width of the "confidence" (e.g. 0.95) interval around the
+     * mean of "name", or infinity with fewer than two replicas.
+     */
+    public double getHalfWidth(String name, double confidence)
+    {
+        Summary summary = mSummaries.get(name);
+        if (summary == null || summary.mCount < 2)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double t = studentQuantile(0.5 + confidence / 2, summary.mCount - 1);
+        return t * getStandardDeviation(name) / Math.sqrt(summary.mCount);
+    }
+
+    /**
+     * Whether the interval of every named metric is within "precision"
+     * times its mean.  A metric that is always zero counts as converged.
+     */
+    public boolean isPrecise(List<String> names, double precision,
+                             double confidence)
+    {
+        for (String name : names)
+        {
+            double mean = Math.abs(getMean(name));
+            double halfWidth = getHalfWidth(name, confidence);
+            if (!(halfWidth <= precision * mean) &&
+                !(halfWidth == 0.0 && mean == 0.0))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The "p" quantile of Student's t distribution with "df" degrees of
+     * freedom, by the Cornish-Fisher expansion around the normal quantile.
+     * Within 1% of the exact value from three degrees of freedom up.
+     */
+    static double studentQuantile(double p, long df)
+    {
+        double z = normalQuantile(p);
+        double z2 = z * z;
+        double v = df;
+
+        double g1 = (z2 + 1) * z / 4;
+        double g2 = ((5 * z2 + 16) * z2 + 3) * z / 96;
+        double g3 = (((3 * z2 + 19) * z2 + 17) * z2 - 15) * z / 384;
+        double g4 = ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) *
+                    z / 92160;
+
+        return z + g1 / v + g2 / (v * v) + g3 / (v * v * v) +
+               g4 / (v * v * v * v);
+    }
+
+    /* Acklam's rational approximation, relative error below 1.2e-9 */
+    static double normalQuantile(double p)
+    {
+        final double[] a = { -3.969683028665376e+01, 2.209460984245205e+02,
+                             -2.759285104469687e+02, 1.383577518672690e+02,
+                             -3.066479806614716e+01, 2.506628277459239e+00 };
+        final double[] b = { -5.447609879822406e+01, 1.615858368580409e+02,
+                             -1.556989798598866e+02, 6.680131188771972e+01,
+                             -1.328068155288572e+01 };
+        final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01,
+                             -2.400758277161838e+00, -2.549732539343734e+00,
+                             4.374664141464968e+00, 2.938163982698783e+00 };
+        final double[] d = { 7.784695709041462e-03, 3.224671290700398e-01,
+                             2.445134137142996e+00, 3.754408661907416e+00 };
+
+        if (p <= 0.0 || p >= 1.0)
+        {
+            throw new IllegalArgumentException("p must be in (0, 1)");
+        }
+
+        if (p < 0.02425)
+        {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                   ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - 0.02425)
+        {
+            return -normalQuantile(1 - p);
+        }
+
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q /
+               (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    /* Welford's running mean and sum of squared deviations */
+    private static class Summary
+    {
+        private long mCount;
+        private double mMean;
+        private double mM2;
+
+        void add(double value)
+        {
+            mCount++;
+            double delta = value - mMean;
+            mMean += delta / mCount;
+            mM2 += delta * (value - mMean);
+        }
+    }
+}
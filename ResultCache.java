@@ -0,0 +1,420 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the results of finished runs in a directory so that drivers which
+ * run the same configuration again get them back without simulating.
+ *
+ * A result is found by key(): the SHA-256 of everything that decides a
+ * run, that is the scenario, the protocol's build, the seed and anything
+ * particular to the driver.  The whole-engine VERSION goes into the key as
+ * well, and must be raised whenever a change to the engine alters results.
+ * Each result is one gzipped file of its statistics and, optionally, the
+ * run's time series.  Once the files take up more than the size limit,
+ * the least recently used ones are deleted.  Use across processes is safe
+ * but the limit is then only enforced per process.
+ *
+ * Usage: java ResultCache <directory>
+ *        (lists the entries, least recently used first)
+ */
+public class ResultCache
+{
+    public static final int VERSION = 2;
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    private static final int MAGIC = 0x52545243;
+    private static final String SUFFIX = ".result";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // File sizes by key, least recently used first
+    private final LinkedHashMap<String, Long> mEntries =
+            new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+
+    public ResultCache(File directory) throws IOException
+    {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    public ResultCache(File directory, long maxBytes) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("cannot create " + directory);
+        }
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("cache size must be > 0");
+        }
+
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+
+        // Files last used longest ago go first
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        List<File> sorted = new ArrayList<File>(files == null ? List.of() : List.of(files));
+        sorted.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : sorted)
+        {
+            String name = file.getName();
+            mEntries.put(name.substring(0, name.length() - SUFFIX.length()),
+                         file.length());
+            mBytes += file.length();
+        }
+    }
+
+    /**
+     * The key of "scenario" run with "seed".  "variant" tells apart runs a
+     * driver makes differently from Scenario.run(), e.g. cut off at a
+     * horizon; "" for none.
+     */
+    public static String key(Scenario scenario, long seed, String variant)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(VERSION);
+            out.writeLong(scenario.getMessages());
+            out.writeDouble(scenario.getLoss());
+            out.writeDouble(scenario.getCorrupt());
+            out.writeDouble(scenario.getDelay());
+            out.writeUTF(scenario.getProtocol());
+            out.writeUTF(ProtocolRegistry.get(scenario.getProtocol()).getVersion());
+            out.writeUTF(scenario.getTraffic());
+            out.writeInt(scenario.getMessageSize());
+            for (int entity = NetworkSimulator.A; entity <= NetworkSimulator.B; entity++)
+            {
+                // A replayed loss trace counts by its contents, not its name
+                String impairment = scenario.getImpairment(entity);
+                out.writeUTF(impairment);
+                File trace = new File(impairment);
+                out.writeBoolean(trace.isFile());
+                if (trace.isFile())
+                {
+                    out.write(Files.readAllBytes(trace.toPath()));
+                }
+            }
+            scenario.getConfig().save(out);
+            out.writeLong(seed);
+            out.writeUTF(variant);
+            out.flush();
+
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()));
+        }
+        catch (IOException ioe)
+        {
+            throw new IllegalArgumentException("cannot read loss trace: " +
+                                               ioe.getMessage());
+        }
+        catch (NoSuchAlgorithmException nsae)
+        {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * The result of "scenario" run with "seed", from the cache if it is
+     * there and otherwise from "run", which is then stored.  A cache that
+     * cannot be written to only makes the drivers slower.
+     */
+    public Statistics run(Scenario scenario, long seed, String variant,
+                          Supplier<Statistics> run)
+    {
+        String key = key(scenario, seed, variant);
+        Statistics statistics = get(key);
+        if (statistics == null)
+        {
+            statistics = run.get();
+            try
+            {
+                put(key, statistics);
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("ResultCache: Warning: cannot store " +
+                                   key + ": " + ioe.getMessage());
+            }
+        }
+
+        return statistics;
+    }
+
+    /**
+     * The statistics stored under "key", or null if there are none.
+     */
+    public synchronized Statistics get(String key)
+    {
+        DataInputStream in = open(key);
+        if (in == null)
+        {
+            mMisses++;
+            return null;
+        }
+
+        try
+        {
+            Statistics statistics = new Statistics();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                statistics.set(in.readUTF(), in.readDouble());
+            }
+            mHits++;
+            return statistics;
+        }
+        catch (IOException ioe)
+        {
+            remove(key);
+            mMisses++;
+            return null;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Copies the time series stored under "key" to "destination" and
+     * returns true, or returns false if there is none.
+     */
+    public synchronized boolean getSeries(String key, File destination)
+        throws IOException
+    {
+        DataInputStream in = open(key);
+        if (in == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                in.readUTF();
+                in.readDouble();
+            }
+            if (!in.readBoolean())
+            {
+                return false;
+            }
+
+            byte[] series = new byte[in.readInt()];
+            in.readFully(series);
+            Files.write(destination.toPath(), series);
+            return true;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    public synchronized void put(String key, Statistics statistics)
+        throws IOException
+    {
+        put(key, statistics, null);
+    }
+
+    /**
+     * Stores "statistics", and the time series written to "series" unless
+     * it is null, under "key", and evicts what no longer fits.
+     */
+    public synchronized void put(String key, Statistics statistics, File series)
+        throws IOException
+    {
+        // Written aside and renamed, so readers never see half an entry
+        File temporary = File.createTempFile("entry", ".tmp", mDirectory);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(temporary))));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                List<String> names = statistics.names();
+                out.writeInt(names.size());
+                for (String name : names)
+                {
+                    out.writeUTF(name);
+                    out.writeDouble(statistics.get(name));
+                }
+                out.writeBoolean(series != null);
+                if (series != null)
+                {
+                    byte[] bytes = Files.readAllBytes(series.toPath());
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+
+            Files.move(temporary.toPath(), file(key).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            temporary.delete();
+        }
+
+        Long old = mEntries.put(key, file(key).length());
+        mBytes += file(key).length() - (old == null ? 0 : old);
+        evict();
+    }
+
+    /* Drop the least recently used entries until the rest fit, keeping
+       at least the newest */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Long>> entries = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && mEntries.size() > 1)
+        {
+            Map.Entry<String, Long> eldest = entries.next();
+            file(eldest.getKey()).delete();
+            mBytes -= eldest.getValue();
+            entries.remove();
+        }
+    }
+
+    /* The entry stored under "key", past its header, marked as just used;
+       null if there is none */
+    private DataInputStream open(String key)
+    {
+        File file = file(key);
+        if (!mEntries.containsKey(key) && !file.isFile())
+        {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != MAGIC || !in.readUTF().equals(key))
+            {
+                throw new IOException(file + " is not a cached result");
+            }
+        }
+        catch (IOException ioe)
+        {
+            // Gone, or damaged: either way a miss
+            close(in);
+            remove(key);
+            return null;
+        }
+
+        // Another process may have stored it since we looked
+        if (!mEntries.containsKey(key))
+        {
+            mEntries.put(key, file.length());
+            mBytes += file.length();
+        }
+        mEntries.get(key);
+        file.setLastModified(System.currentTimeMillis());
+        return in;
+    }
+
+    private void remove(String key)
+    {
+        Long size = mEntries.remove(key);
+        if (size != null)
+        {
+            mBytes -= size;
+        }
+        file(key).delete();
+    }
+
+    private static void close(DataInputStream in)
+    {
+        try
+        {
+            if (in != null)
+            {
+                in.close();
+            }
+        }
+        catch (IOException ioe)
+        {
+        }
+    }
+
+    private File file(String key)
+    {
+        return new File(mDirectory, key + SUFFIX);
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return mEntries.size();
+    }
+
+    public synchronized long getBytes()
+    {
+        return mBytes;
+    }
+
+    public synchronized long getHits()
+    {
+        return mHits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return mMisses;
+    }
+
+    public synchronized String toString()
+    {
+        return mEntries.size() + " entries, " + mBytes + " bytes; " + mHits +
+               " hits, " + mMisses + " misses";
+    }
+
+    public final static void main(String[] argv) throws IOException
+    {
+        if (argv.length < 1)
+        {
+            System.out.println("Usage: java ResultCache <directory>");
+            System.exit(1);
+        }
+
+        ResultCache cache = new ResultCache(new File(argv[0]), Long.MAX_VALUE);
+        for (Map.Entry<String, Long> entry : cache.mEntries.entrySet())
+        {
+            System.out.println(entry.getKey() + "  " + entry.getValue());
+        }
+        System.out.println(cache);
+    }
+}
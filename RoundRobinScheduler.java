@@ -0,0 +1,44 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Sends each packet on the next path in turn, whatever the paths are like.
+ */
+public class RoundRobinScheduler implements PathScheduler
+{
+    private final int mPaths;
+    private int mNext;
+
+    public RoundRobinScheduler(int paths)
+    {
+        mPaths = paths;
+        mNext = 0;
+    }
+
+    public int choose(int[] inFlight)
+    {
+        int path = mNext;
+        mNext = (mNext + 1) % mPaths;
+        return path;
+    }
+
+    public void acked(int path, double rtt)
+    {
+    }
+
+    public String getName()
+    {
+        return "roundrobin";
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mNext);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mNext = in.readInt();
+    }
+}
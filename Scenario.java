@@ -0,0 +1,241 @@
+import java.io.IOException;
+
+/**
+ * Everything that defines a run except its seed, so that replication and
+ * sweep drivers can build as many independent simulators as they need.
+ * Traffic and impairments are named rather than held, since they keep
+ * per-run state.
+ */
+public class Scenario
+{
+    public static final String BERNOULLI = "bernoulli";
+    private static final double DEFAULT_BURST = 4.0;
+    private static final double DEFAULT_OUTAGE_PERIOD = 1000.0;
+
+    private final long mMessages;
+    private final double mLoss;
+    private final double mCorrupt;
+    private final double mDelay;
+    private String mProtocol = ProtocolRegistry.DEFAULT;
+    private String mTraffic = "uniform";
+    private String[] mImpairments = { BERNOULLI, BERNOULLI };  // Per destination
+    private int mMessageSize = NetworkSimulator.MAXDATASIZE;
+    private ProtocolConfig mConfig = new ProtocolConfig();
+
+    public Scenario(long messages, double loss, double corrupt, double delay)
+    {
+        mMessages = messages;
+        mLoss = loss;
+        mCorrupt = corrupt;
+        mDelay = delay;
+    }
+
+    public long getMessages()
+    {
+        return mMessages;
+    }
+
+    public double getLoss()
+    {
+        return mLoss;
+    }
+
+    public double getCorrupt()
+    {
+        return mCorrupt;
+    }
+
+    public double getDelay()
+    {
+        return mDelay;
+    }
+
+    public String getProtocol()
+    {
+        return mProtocol;
+    }
+
+    public void setProtocol(String protocol)
+    {
+        if (ProtocolRegistry.get(protocol) == null)
+        {
+            throw new IllegalArgumentException("unknown protocol " + protocol);
+        }
+
+        mProtocol = protocol;
+    }
+
+    public String getTraffic()
+    {
+        return mTraffic;
+    }
+
+    /**
+     * Selects the arrival process: uniform, poisson, pareto or cbr.
+     */
+    public void setTraffic(String traffic)
+    {
+        createTraffic(traffic, mDelay, mMessageSize);
+        mTraffic = traffic;
+    }
+
+    public String getImpairment(int destination)
+    {
+        return mImpairments[destination];
+    }
+
+    /**
+     * Selects how the links toward "destination" lose packets; see
+     * createImpairment().
+     */
+    public void setImpairment(int destination, String impairment)
+    {
+        createImpairment(impairment, mLoss, mCorrupt);
+        mImpairments[destination] = impairment;
+    }
+
+    public int getMessageSize()
+    {
+        return mMessageSize;
+    }
+
+    public void setMessageSize(int size)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("message size must be > 0");
+        }
+
+        mMessageSize = size;
+    }
+
+    public ProtocolConfig getConfig()
+    {
+        return mConfig;
+    }
+
+    /**
+     * A simulator for this scenario, ready to run with "seed".
+     */
+    public NetworkSimulator create(long seed)
+    {
+        NetworkSimulator simulator =
+            new NetworkSimulator(mMessages, mLoss, mCorrupt, mDelay, 0, seed);
+        simulator.setProtocol(mProtocol);
+        simulator.setConfig(mConfig.copy());
+        simulator.setTrafficSource(createTraffic(mTraffic, mDelay,
+                                                 mMessageSize));
+        for (int entity = NetworkSimulator.A; entity <= NetworkSimulator.B; entity++)
+        {
+            simulator.setImpairment(entity, createImpairment(
+                    mImpairments[entity], mLoss, mCorrupt));
+        }
+        return simulator;
+    }
+
+    public Statistics run(long seed)
+    {
+        NetworkSimulator simulator = create(seed);
+        simulator.runSimulator();
+        return simulator.getStatistics();
+    }
+
+    public Scenario copy()
+    {
+        Scenario copy = new Scenario(mMessages, mLoss, mCorrupt, mDelay);
+        copy.mProtocol = mProtocol;
+        copy.mTraffic = mTraffic;
+        copy.mImpairments = mImpairments.clone();
+        copy.mMessageSize = mMessageSize;
+        copy.mConfig = mConfig.copy();
+        return copy;
+    }
+
+    public String toString()
+    {
+        return "messages=" + mMessages + " loss=" + mLoss + " corrupt=" +
+               mCorrupt + " delay=" + mDelay + " protocol=" + mProtocol +
+               " traffic=" + mTraffic + " size=" + mMessageSize + " " +
+               (mImpairments[0].equals(BERNOULLI) &&
+                mImpairments[1].equals(BERNOULLI) ? "" :
+                "impairment=" + mImpairments[1] + "/" + mImpairments[0] + " ") +
+               mConfig;
+    }
+
+    /**
+     * The impairment named by "spec", matched to a channel that loses
+     * "loss" and corrupts "corrupt" of its packets, or null for the
+     * independent losses of a plain link:
+     *
+     *   bernoulli                      independent losses
+     *   gilbert[:burst]                bursts a mean of "burst" packets long
+     *                                  (4), as often as needed to lose
+     *                                  "loss" of the packets
+     *   outage[:period[:duration]]     down for the last "duration" of
+     *                                  every "period" (1000), by default
+     *                                  loss * period, and lossless between
+     *   anything else                  a loss trace file to replay
+     */
+    public static Impairment createImpairment(String spec, double loss,
+                                              double corrupt)
+    {
+        String[] fields = spec.split(":");
+        try
+        {
+            if (spec.equals(BERNOULLI))
+            {
+                return null;
+            }
+            else if (fields[0].equals("gilbert") && fields.length <= 2)
+            {
+                double burst = fields.length > 1 ?
+                    Double.parseDouble(fields[1]) : DEFAULT_BURST;
+                return GilbertElliottImpairment.withMeanLoss(loss, corrupt,
+                                                             burst);
+            }
+            else if (fields[0].equals("outage") && fields.length <= 3)
+            {
+                double period = fields.length > 1 ?
+                    Double.parseDouble(fields[1]) : DEFAULT_OUTAGE_PERIOD;
+                double duration = fields.length > 2 ?
+                    Double.parseDouble(fields[2]) : loss * period;
+                // The outages already lose "loss" of the time
+                return new OutageImpairment(period, duration, 0.0);
+            }
+
+            return new TraceImpairment(spec);
+        }
+        catch (NumberFormatException nfe)
+        {
+            throw new IllegalArgumentException("bad impairment " + spec);
+        }
+        catch (IOException ioe)
+        {
+            throw new IllegalArgumentException("unknown impairment " + spec +
+                                               " (" + ioe.getMessage() + ")");
+        }
+    }
+
+    private static TrafficSource createTraffic(String name, double delay,
+                                               int size)
+    {
+        if (name.equals("uniform"))
+        {
+            return new UniformTraffic(delay, size);
+        }
+        else if (name.equals("poisson"))
+        {
+            return new PoissonTraffic(delay, size);
+        }
+        else if (name.equals("pareto"))
+        {
+            return ParetoOnOffTraffic.withMeanGap(delay, size);
+        }
+        else if (name.equals("cbr"))
+        {
+            return new ConstantBitrateTraffic(delay, size);
+        }
+
+        throw new IllegalArgumentException("unknown traffic model " + name);
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Runs the simulator with growing application message sizes and reports
+ * throughput and peak heap usage for each size.
+ *
+ * Usage: java SegmentationBenchmark [loss] [corrupt] [seed]
+ */
+public class SegmentationBenchmark
+{
+    private static final int[] SIZES = { 20, 100, 1000, 10000, 100000, 1000000 };
+    private static final long BYTES_PER_RUN = 2000000;
+    private static final int MAX_MESSAGES = 1000;
+
+    public final static void main(String[] argv)
+    {
+        double loss = argv.length > 0 ? Double.parseDouble(argv[0]) : 0.0;
+        double corrupt = argv.length > 1 ? Double.parseDouble(argv[1]) : 0.0;
+        long seed = argv.length > 2 ? Long.parseLong(argv[2]) : 1L;
+
+        System.out.println("size(bytes)  messages  delivered  bytes/time-unit" +
+                           "  MB/s(wall)  peak-heap(MB)");
+
+        PrintStream out = System.out;
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+
+        for (int size : SIZES)
+        {
+            int messages = (int)Math.max(1, Math.min(MAX_MESSAGES,
+                                                     BYTES_PER_RUN / size));
+            StudentNetworkSimulator simulator =
+                new StudentNetworkSimulator(messages, loss, corrupt, 1000.0,
+                                            0, seed);
+            simulator.setMessageSize(size);
+
+            System.gc();
+            resetPeaks();
+
+            System.setOut(quiet);
+            long start = System.nanoTime();
+            simulator.runSimulator();
+            long elapsed = System.nanoTime() - start;
+            System.setOut(out);
+
+            double bytes = simulator.getDeliveredBytes();
+            System.out.println(String.format("%11d  %8d  %9d  %15.3f  %10.3f  %13.1f",
+                               size, messages, simulator.getDeliveredMessages(),
+                               bytes / simulator.getSimulatedTime(),
+                               bytes / (elapsed / 1e9) / 1e6,
+                               peakHeap() / 1e6));
+        }
+    }
+
+    private static void resetPeaks()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        return peak;
+    }
+}
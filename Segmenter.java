@@ -0,0 +1,103 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Splits application messages larger than MAXDATASIZE into Messages that fit
+ * a single packet.  Each segment starts with a one character header telling
+ * the receiver whether more segments follow.  Segments are cut lazily as the
+ * transport asks for them, so a queued message is never copied in full.
+ */
+public class Segmenter implements Checkpointable
+{
+    public static final char MORE = '+';
+    public static final char LAST = '.';
+    public static final int SEGMENT_DATA = NetworkSimulator.MAXDATASIZE - 1;
+
+    private final ArrayDeque<String> mPending = new ArrayDeque<String>();
+    private final char[] mSegment = new char[NetworkSimulator.MAXDATASIZE];
+    private int mOffset;                    // Offset into the head message
+    private long mPendingBytes;             // Bytes not yet handed down
+
+    public void add(String data)
+    {
+        mPending.add(data);
+        mPendingBytes += data.length();
+    }
+
+    public boolean hasNext()
+    {
+        return !mPending.isEmpty();
+    }
+
+    public long getPendingBytes()
+    {
+        return mPendingBytes;
+    }
+
+    /**
+     * Cuts the next segment from the head of the queue.
+     */
+    public Message next()
+    {
+        String data = mPending.peek();
+        int length = Math.min(SEGMENT_DATA, data.length() - mOffset);
+        boolean last = mOffset + length >= data.length();
+
+        mSegment[0] = last ? LAST : MORE;
+        data.getChars(mOffset, mOffset + length, mSegment, 1);
+        mOffset += length;
+        mPendingBytes -= length;
+
+        if (last)
+        {
+            mPending.poll();
+            mOffset = 0;
+        }
+
+        return new Message(new String(mSegment, 0, length + 1));
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mPending.size());
+        for (String data : mPending)
+        {
+            writeLong(out, data);
+        }
+        out.writeInt(mOffset);
+        out.writeLong(mPendingBytes);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mPending.clear();
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            mPending.add(readLong(in));
+        }
+        mOffset = in.readInt();
+        mPendingBytes = in.readLong();
+    }
+
+    /* writeUTF is limited to 64KB, and messages can be larger */
+    static void writeLong(DataOutput out, String data) throws IOException
+    {
+        out.writeInt(data.length());
+        out.writeChars(data);
+    }
+
+    static String readLong(DataInput in) throws IOException
+    {
+        char[] data = new char[in.readInt()];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = in.readChar();
+        }
+
+        return new String(data);
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The sender's unacknowledged packets, oldest first, kept in a circular
+ * array of primitive slots.  Slots are addressed by their offset from the
+ * oldest packet, so the protocol can index them straight from a sequence
+ * number.  Nothing is allocated or locked after construction.
+ */
+public class SendWindow implements Checkpointable
+{
+    private final Packet[] mPackets;
+    private final double[] mSendTimes;
+    private final int[] mRetransmits;
+    private final boolean[] mAcked;
+    private final int mMask;
+    private int mHead;                      // Slot of the oldest packet
+    private int mCount;                     // Packets currently held
+
+    public SendWindow(int capacity)
+    {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        mPackets = new Packet[slots];
+        mSendTimes = new double[slots];
+        mRetransmits = new int[slots];
+        mAcked = new boolean[slots];
+        mMask = slots - 1;
+    }
+
+    public int capacity()
+    {
+        return mMask + 1;
+    }
+
+    public int size()
+    {
+        return mCount;
+    }
+
+    public boolean isEmpty()
+    {
+        return mCount == 0;
+    }
+
+    public boolean isFull()
+    {
+        return mCount > mMask;
+    }
+
+    /**
+     * Appends a newly sent packet.  Returns false if every slot is in use.
+     */
+    public boolean add(Packet packet, double time)
+    {
+        if (isFull())
+        {
+            return false;
+        }
+
+        int slot = (mHead + mCount) & mMask;
+        mPackets[slot] = packet;
+        mSendTimes[slot] = time;
+        mRetransmits[slot] = 0;
+        mAcked[slot] = false;
+        mCount++;
+
+        return true;
+    }
+
+    /**
+     * Drops the "count" oldest packets, typically after a cumulative ACK.
+     */
+    public void slide(int count)
+    {
+        count = Math.min(count, mCount);
+        for (int i = 0; i < count; i++)
+        {
+            mPackets[(mHead + i) & mMask] = null;
+        }
+
+        mHead = (mHead + count) & mMask;
+        mCount -= count;
+    }
+
+    public void clear()
+    {
+        slide(mCount);
+        mHead = 0;
+    }
+
+    public Packet packetAt(int offset)
+    {
+        return mPackets[(mHead + offset) & mMask];
+    }
+
+    public double sendTimeAt(int offset)
+    {
+        return mSendTimes[(mHead + offset) & mMask];
+    }
+
+    public int retransmitsAt(int offset)
+    {
+        return mRetransmits[(mHead + offset) & mMask];
+    }
+
+    /**
+     * Records that the packet at "offset" was sent again at "time".
+     */
+    public void retransmitted(int offset, double time)
+    {
+        int slot = (mHead + offset) & mMask;
+        mSendTimes[slot] = time;
+        mRetransmits[slot]++;
+    }
+
+    public void markAcked(int offset)
+    {
+        mAcked[(mHead + offset) & mMask] = true;
+    }
+
+    public boolean isAcked(int offset)
+    {
+        return mAcked[(mHead + offset) & mMask];
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mCount);
+        for (int i = 0; i < mCount; i++)
+        {
+            packetAt(i).write(out);
+            out.writeDouble(sendTimeAt(i));
+            out.writeInt(retransmitsAt(i));
+            out.writeBoolean(isAcked(i));
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        clear();
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            add(Packet.read(in), 0.0);
+
+            int slot = (mHead + i) & mMask;
+            mSendTimes[slot] = in.readDouble();
+            mRetransmits[slot] = in.readInt();
+            mAcked[slot] = in.readBoolean();
+        }
+    }
+}
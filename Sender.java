@@ -0,0 +1,33 @@
+/**
+ * The A side of a transport protocol.  The engine calls these methods in
+ * place of the old aInit/aOutput/aInput/aTimerInterrupt.
+ */
+public interface Sender extends Checkpointable
+{
+    // Called once before any other method
+    public void init();
+
+    // Layer 5 has a message to send
+    public void output(Message message);
+
+    // A (possibly corrupted) packet from B has arrived
+    public void input(Packet packet);
+
+    // The timer started through the host has expired
+    public void timerInterrupt();
+
+    // A timer started with a tag has expired
+    public void timerExpired(int tag);
+
+    // Whether output() would accept another message right now
+    public boolean isReady();
+
+    // Packets sent but not yet acknowledged
+    public int getOutstanding();
+
+    // Packets sent again so far
+    public long getRetransmissions();
+
+    // Adds this side's counters to the run statistics
+    public void report(Statistics statistics);
+}
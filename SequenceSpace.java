@@ -0,0 +1,75 @@
+/**
+ * A k-bit sequence number space.  Numbers wrap around after 2^k - 1 and are
+ * compared with serial-number arithmetic, so a run can send any number of
+ * packets without the counters overflowing.
+ */
+public class SequenceSpace
+{
+    private final int mBits;
+    private final int mMask;
+
+    public SequenceSpace(int bits)
+    {
+        if (bits < 1 || bits > 30)
+        {
+            throw new IllegalArgumentException("sequence bits must be in [1, 30]");
+        }
+
+        mBits = bits;
+        mMask = (1 << bits) - 1;
+    }
+
+    /**
+     * The smallest space that can number a window of the given size.
+     */
+    public static SequenceSpace forWindow(int window)
+    {
+        int bits = 1;
+        while ((1 << bits) <= window)
+            bits++;
+
+        return new SequenceSpace(bits);
+    }
+
+    public int getBits()
+    {
+        return mBits;
+    }
+
+    public int size()
+    {
+        return mMask + 1;
+    }
+
+    /**
+     * Whether "n" could have been produced by this space.  Corrupted headers
+     * often carry numbers that are not.
+     */
+    public boolean contains(int n)
+    {
+        return (n & ~mMask) == 0;
+    }
+
+    public int next(int n)
+    {
+        return (n + 1) & mMask;
+    }
+
+    public int previous(int n)
+    {
+        return (n - 1) & mMask;
+    }
+
+    public int add(int n, int steps)
+    {
+        return (n + steps) & mMask;
+    }
+
+    /**
+     * Number of forward steps from "from" to "to".
+     */
+    public int distance(int from, int to)
+    {
+        return (to - from) & mMask;
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An event list whose heap only holds the near future.  Simulated time is
+ * cut into buckets of "bucketWidth"; events in the next HOT_BUCKETS
+ * buckets live on a binary heap, and events in any later bucket are
+ * appended to a memory-mapped segment file.  As time reaches a segment it
+ * is read back onto the heap, so heap usage follows the events per window
+ * rather than the total number pending.
+ *
+ * Segment files come from a small pool and are kept open for reuse once
+ * read back, so at most MAX_SEGMENTS files ever exist; beyond that, far
+ * buckets share the segment of a neighbour.  close() deletes the files.
+ *
+ * Ties are broken by insertion order, like EventListImpl.  Events that
+ * refer to a live timer are never spilled.
+ */
+public class SpillingEventList implements EventList, Closeable
+{
+    private static final int INITIAL_SEGMENT = 1 << 16;
+    private static final int HOT_BUCKETS = 8;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final File mDirectory;
+    private final double mBucketWidth;
+
+    private final HeapEventList mHeap;      // The hot window
+    private long mNextSequence;
+    private long mHotBucket;                // First bucket of the hot window
+
+    // Spilled segments by the earliest bucket they hold, and emptied ones
+    // kept open for reuse
+    private final TreeMap<Long, Segment> mSegments;
+    private final ArrayDeque<Segment> mSpare;
+    private long mSpilled;                  // Events currently on disk
+
+    // Reused to serialize spilled events
+    private final Bytes mBytes;
+    private final DataOutputStream mOut;
+
+    public SpillingEventList(File directory, double bucketWidth)
+    {
+        if (!(bucketWidth > 0.0))
+        {
+            throw new IllegalArgumentException("bucket width must be > 0");
+        }
+        if (!directory.isDirectory())
+        {
+            throw new IllegalArgumentException(directory + " is not a directory");
+        }
+
+        mDirectory = directory;
+        mBucketWidth = bucketWidth;
+        mHeap = new HeapEventList();
+        mNextSequence = 0;
+        mHotBucket = 0;
+        mSegments = new TreeMap<Long, Segment>();
+        mSpare = new ArrayDeque<Segment>();
+        mSpilled = 0;
+        mBytes = new Bytes();
+        mOut = new DataOutputStream(mBytes);
+    }
+
+    // Events held on the heap and on disk
+    public int getHotEvents()
+    {
+        return mHeap.size();
+    }
+
+    public long getSpilledEvents()
+    {
+        return mSpilled;
+    }
+
+    public boolean add(Event e)
+    {
+        long bucket = bucketOf(e.getTime());
+        if (bucket < mHotBucket + HOT_BUCKETS || e.getTimer() != null)
+        {
+            mHeap.add(e, mNextSequence++);
+        }
+        else
+        {
+            spill(bucket, e, mNextSequence++);
+        }
+
+        return true;
+    }
+
+    public Event removeNext()
+    {
+        fill();
+        return mHeap.removeNext();
+    }
+
+    public double peekTime()
+    {
+        fill();
+        return mHeap.peekTime();
+    }
+
+    public String toString()
+    {
+        return mHeap + " and " + mSpilled + " spilled in " +
+               mSegments.size() + " segments";
+    }
+
+    /**
+     * Deletes the segment files.  Spilled events are lost, so this is for
+     * when the run is over.
+     */
+    public void close() throws IOException
+    {
+        for (Segment segment : mSegments.values())
+        {
+            segment.delete();
+        }
+        for (Segment segment : mSpare)
+        {
+            segment.delete();
+        }
+        mSegments.clear();
+        mSpare.clear();
+        mSpilled = 0;
+    }
+
+    /* Make sure the heap holds the earliest event, if there is one */
+    private void fill()
+    {
+        while (mHeap.size() > 0 || !mSegments.isEmpty())
+        {
+            // The window moves up to the earliest event, and every segment
+            // now inside it comes onto the heap.  Only a timer can sit on
+            // the heap beyond the window, so a segment may come first.
+            long first = mSegments.isEmpty() ? Long.MAX_VALUE
+                                             : mSegments.firstKey();
+            if (mHeap.size() > 0)
+            {
+                first = Math.min(first, bucketOf(mHeap.peekTime()));
+            }
+            mHotBucket = Math.max(mHotBucket, first);
+            if (mSegments.isEmpty() ||
+                mSegments.firstKey() >= mHotBucket + HOT_BUCKETS)
+            {
+                return;
+            }
+            load(mSegments.pollFirstEntry().getValue());
+        }
+    }
+
+    private void spill(long bucket, Event e, long sequence)
+    {
+        try
+        {
+            Segment segment = segmentFor(bucket);
+            mBytes.reset();
+            mOut.writeLong(sequence);
+            e.write(mOut);
+            segment.append(mBytes.array(), mBytes.size());
+            mSpilled++;
+        }
+        catch (IOException ioe)
+        {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /* The segment to spill an event in "bucket" to.  A segment is keyed by
+       the earliest bucket in it, so sharing one only brings events back
+       early, never late. */
+    private Segment segmentFor(long bucket) throws IOException
+    {
+        Segment segment = mSegments.get(bucket);
+        if (segment != null)
+        {
+            return segment;
+        }
+
+        if (mSegments.size() < MAX_SEGMENTS)
+        {
+            segment = mSpare.isEmpty()
+                ? new Segment(File.createTempFile("events-", ".seg", mDirectory))
+                : mSpare.poll();
+            mSegments.put(bucket, segment);
+            return segment;
+        }
+
+        Map.Entry<Long, Segment> earlier = mSegments.floorEntry(bucket);
+        if (earlier != null)
+        {
+            return earlier.getValue();
+        }
+        Map.Entry<Long, Segment> later = mSegments.pollFirstEntry();
+        mSegments.put(bucket, later.getValue());
+        return later.getValue();
+    }
+
+    private void load(Segment segment)
+    {
+        try
+        {
+            ByteBuffer buffer = segment.contents();
+            DataInputStream in = new DataInputStream(new BufferInput(buffer));
+            for (int i = 0; i < segment.mCount; i++)
+            {
+                long sequence = in.readLong();
+                mHeap.add(Event.read(in), sequence);
+            }
+
+            mSpilled -= segment.mCount;
+            segment.clear();
+            mSpare.add(segment);
+        }
+        catch (IOException ioe)
+        {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private long bucketOf(double time)
+    {
+        return (long)Math.floor(time / mBucketWidth);
+    }
+
+    /* Spilled events appended to a mapped file, which stays open while
+       the segment is reused */
+    private static class Segment
+    {
+        private final File mFile;
+        private final RandomAccessFile mRaf;
+        private final FileChannel mChannel;
+        private MappedByteBuffer mBuffer;
+        private int mCount;
+
+        Segment(File file) throws IOException
+        {
+            mFile = file;
+            mRaf = new RandomAccessFile(file, "rw");
+            mChannel = mRaf.getChannel();
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                   INITIAL_SEGMENT);
+            mCount = 0;
+        }
+
+        void append(byte[] bytes, int length) throws IOException
+        {
+            if (mBuffer.remaining() < length)
+            {
+                // Growing the mapping extends the file
+                int position = mBuffer.position();
+                long capacity = Math.max(2L * mBuffer.capacity(),
+                                         position + (long)length);
+                if (capacity > Integer.MAX_VALUE)
+                {
+                    throw new IOException("segment " + mFile + " is full");
+                }
+                mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                       capacity);
+                mBuffer.position(position);
+            }
+
+            mBuffer.put(bytes, 0, length);
+            mCount++;
+        }
+
+        ByteBuffer contents()
+        {
+            ByteBuffer contents = mBuffer.duplicate();
+            contents.flip();
+            return contents;
+        }
+
+        void clear()
+        {
+            mBuffer.clear();
+            mCount = 0;
+        }
+
+        void delete() throws IOException
+        {
+            mChannel.close();
+            mRaf.close();
+            mFile.delete();
+        }
+    }
+
+    /* Lets a spilled event be copied without allocating */
+    private static class Bytes extends ByteArrayOutputStream
+    {
+        Bytes()
+        {
+            super(128);
+        }
+
+        byte[] array()
+        {
+            return buf;
+        }
+    }
+
+    /* Reads a buffer through DataInputStream */
+    private static class BufferInput extends InputStream
+    {
+        private final ByteBuffer mBuffer;
+
+        BufferInput(ByteBuffer buffer)
+        {
+            mBuffer = buffer;
+        }
+
+        public int read()
+        {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len)
+        {
+            if (!mBuffer.hasRemaining())
+            {
+                return -1;
+            }
+
+            len = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, len);
+            return len;
+        }
+    }
+}
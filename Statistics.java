@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named results of one simulation run, kept in the order they were first
+ * reported.
+ */
+public class Statistics
+{
+    private final LinkedHashMap<String, Double> mValues =
+            new LinkedHashMap<String, Double>();
+
+    public void set(String name, double value)
+    {
+        mValues.put(name, value);
+    }
+
+    /**
+     * Adds "value" to the named counter, creating it if needed.  Lets both
+     * sides of a protocol contribute to the same total.
+     */
+    public void add(String name, double value)
+    {
+        Double old = mValues.get(name);
+        mValues.put(name, old == null ? value : old + value);
+    }
+
+    /**
+     * Returns the named value, or NaN if it was never reported.
+     */
+    public double get(String name)
+    {
+        Double value = mValues.get(name);
+        return value == null ? Double.NaN : value;
+    }
+
+    public boolean has(String name)
+    {
+        return mValues.containsKey(name);
+    }
+
+    public List<String> names()
+    {
+        return new ArrayList<String>(mValues.keySet());
+    }
+
+    public String toString()
+    {
+        StringBuilder out = new StringBuilder("Statistics");
+        for (Map.Entry<String, Double> entry : mValues.entrySet())
+        {
+            out.append('\n').append(entry.getKey()).append(": ")
+               .append(format(entry.getValue()));
+        }
+
+        return out.toString();
+    }
+
+    static String format(double value)
+    {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+        {
+            return Long.toString((long)value);
+        }
+
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writes a snapshot of the running simulation every "interval" units of
+ * simulated time, as CSV or, for a file ending in .json or .jsonl, as one
+ * JSON object per line.  Each row covers one window: throughput, goodput,
+ * packets, retransmissions and losses within it, the time-averaged number
+ * of packets in flight and the RTT percentiles of the ACKs received.
+ *
+ * Rows are formatted on the simulator thread and handed to a background
+ * writer through a bounded queue.  If the disk falls that far behind, rows
+ * are dropped and counted rather than blocking the event loop.
+ */
+public class TimeSeriesRecorder
+{
+    private static final int QUEUE_SIZE = 4096;
+    private static final String END = "";
+
+    private static final String[] COLUMNS = {
+        "time", "messages", "throughput", "goodput", "packets",
+        "retransmissions", "lost", "window", "rtt_samples",
+        "rtt_p50", "rtt_p90", "rtt_p99", "rtt_max"
+    };
+
+    private final NetworkSimulator mSimulator;
+    private final double mInterval;
+    private final boolean mJson;
+    private final Histogram mRtt;
+    private final ArrayBlockingQueue<String> mQueue;
+    private final Thread mWriterThread;
+    private final Writer mWriter;
+    private volatile IOException mError;
+    private boolean mClosed;
+    private long mDropped;
+
+    private double mWindowStart;            // Start of the window being collected
+    private double mLastTime;               // Time of the last event seen
+    private double mOccupancyArea;          // Integral of packets in flight over the window
+    private long mMessages;                 // Counter values at mWindowStart
+    private long mBytes;
+    private long mPackets;
+    private long mRetransmissions;
+    private long mLost;
+
+    public TimeSeriesRecorder(NetworkSimulator simulator, String path,
+                              double interval) throws IOException
+    {
+        if (!(interval > 0.0))
+        {
+            throw new IllegalArgumentException("interval must be > 0");
+        }
+
+        mSimulator = simulator;
+        mInterval = interval;
+        mJson = path.endsWith(".json") || path.endsWith(".jsonl");
+        mRtt = new Histogram();
+        mQueue = new ArrayBlockingQueue<String>(QUEUE_SIZE);
+        mWriter = new BufferedWriter(new FileWriter(path), 1 << 16);
+
+        if (!mJson)
+        {
+            mWriter.write(String.join(",", COLUMNS));
+            mWriter.write('\n');
+        }
+
+        mWriterThread = new Thread(this::drain, "time-series writer");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    public double getInterval()
+    {
+        return mInterval;
+    }
+
+    public long getDroppedRows()
+    {
+        return mDropped;
+    }
+
+    /**
+     * Starts the first window at "time" from the simulator's current
+     * counters.  Called when a run is started or restored.
+     */
+    public void begin(double time)
+    {
+        mWindowStart = time;
+        mLastTime = time;
+        mOccupancyArea = 0.0;
+        mRtt.reset();
+        mark();
+    }
+
+    public void recordRtt(double rtt)
+    {
+        mRtt.record(rtt);
+    }
+
+    /**
+     * Called by the engine before the event at "time" is processed, so the
+     * counters still describe everything up to, but not including, it.
+     */
+    public void advance(double time)
+    {
+        int occupancy = mSimulator.getWindowOccupancy();
+
+        while (time >= mWindowStart + mInterval)
+        {
+            double end = mWindowStart + mInterval;
+            mOccupancyArea += occupancy * (end - mLastTime);
+            mLastTime = end;
+            emit(end);
+        }
+
+        mOccupancyArea += occupancy * (time - mLastTime);
+        mLastTime = time;
+    }
+
+    /**
+     * Writes the final, possibly partial, window and closes the file.
+     */
+    public void close(double time) throws IOException
+    {
+        if (mClosed)
+        {
+            return;
+        }
+        mClosed = true;
+
+        advance(time);
+        if (time > mWindowStart)
+        {
+            emit(time);
+        }
+
+        try
+        {
+            mQueue.put(END);
+            mWriterThread.join();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (mError != null)
+        {
+            throw mError;
+        }
+        if (mDropped > 0)
+        {
+            System.out.println("TimeSeriesRecorder: dropped " + mDropped +
+                               " rows, the writer could not keep up");
+        }
+    }
+
+    /* Format one row for the window ending at "end" and start the next */
+    private void emit(double end)
+    {
+        double length = end - mWindowStart;
+        long messages = mSimulator.getDeliveredMessages() - mMessages;
+        long bytes = mSimulator.getDeliveredBytes() - mBytes;
+
+        double[] values = {
+            end,
+            messages,
+            messages / length,
+            bytes / length,
+            mSimulator.getPacketsSent() - mPackets,
+            mSimulator.getRetransmissions() - mRetransmissions,
+            mSimulator.getPacketsLost() - mLost,
+            mOccupancyArea / length,
+            mRtt.getCount(),
+            mRtt.getPercentile(50.0),
+            mRtt.getPercentile(90.0),
+            mRtt.getPercentile(99.0),
+            mRtt.getMax()
+        };
+
+        StringBuilder row = new StringBuilder(160);
+        if (mJson)
+        {
+            row.append('{');
+        }
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                row.append(',');
+            }
+            if (mJson)
+            {
+                row.append('"').append(COLUMNS[i]).append("\":");
+            }
+
+            double value = values[i];
+            if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            {
+                row.append((long)value);
+            }
+            else
+            {
+                row.append(value);
+            }
+        }
+        if (mJson)
+        {
+            row.append('}');
+        }
+
+        if (!mQueue.offer(row.toString()))
+        {
+            mDropped++;
+        }
+
+        mWindowStart = end;
+        mOccupancyArea = 0.0;
+        mRtt.reset();
+        mark();
+    }
+
+    /* Remember the counters at the start of a window */
+    private void mark()
+    {
+        mMessages = mSimulator.getDeliveredMessages();
+        mBytes = mSimulator.getDeliveredBytes();
+        mPackets = mSimulator.getPacketsSent();
+        mRetransmissions = mSimulator.getRetransmissions();
+        mLost = mSimulator.getPacketsLost();
+    }
+
+    /* Body of the writer thread */
+    private void drain()
+    {
+        while (true)
+        {
+            String row;
+            try
+            {
+                row = mQueue.take();
+            }
+            catch (InterruptedException ie)
+            {
+                break;
+            }
+            if (row == END)
+            {
+                break;
+            }
+
+            // After a failure keep taking rows so that close() never blocks
+            if (mError != null)
+            {
+                continue;
+            }
+
+            try
+            {
+                mWriter.write(row);
+                mWriter.write('\n');
+
+                // Let a reader tailing the file see rows while the run goes on
+                if (mQueue.isEmpty())
+                {
+                    mWriter.flush();
+                }
+            }
+            catch (IOException ioe)
+            {
+                mError = ioe;
+            }
+        }
+
+        try
+        {
+            mWriter.close();
+        }
+        catch (IOException ioe)
+        {
+            if (mError == null)
+            {
+                mError = ioe;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * A timer started through ProtocolHost.startTimer(entity, increment, tag).
+ * Pass it to ProtocolHost.stopTimer() to cancel it in constant time.
+ */
+public class TimerHandle
+{
+    static final int WAITING = 0;       // On the timing wheel
+    static final int QUEUED = 1;        // Moved to the event list, about to fire
+    static final int FIRED = 2;
+    static final int CANCELLED = 3;
+
+    private final int mEntity;
+    private final int mTag;
+    private final double mDeadline;
+
+    // Owned by TimingWheel
+    long mTick;
+    int mState;
+    TimerHandle mPrevious;
+    TimerHandle mNext;
+
+    TimerHandle(int entity, int tag, double deadline)
+    {
+        mEntity = entity;
+        mTag = tag;
+        mDeadline = deadline;
+    }
+
+    public int getEntity()
+    {
+        return mEntity;
+    }
+
+    public int getTag()
+    {
+        return mTag;
+    }
+
+    public double getDeadline()
+    {
+        return mDeadline;
+    }
+
+    // Whether the timer has neither fired nor been cancelled
+    public boolean isPending()
+    {
+        return mState == WAITING || mState == QUEUED;
+    }
+
+    public boolean isCancelled()
+    {
+        return mState == CANCELLED;
+    }
+
+    public String toString()
+    {
+        return "timer " + mTag + " at entity " + mEntity + " due " + mDeadline;
+    }
+}
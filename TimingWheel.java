@@ -0,0 +1,278 @@
+import java.util.List;
+
+/**
+ * A hashed timing wheel on simulated time.  Timers are hashed by their
+ * tick into a ring of slots, each a doubly linked list, so starting and
+ * cancelling one is O(1).  As the engine advances, the timers of each tick
+ * that comes due are moved to the event list as TIMERINTERRUPT events at
+ * their exact deadline; a timer cancelled before then never touches the
+ * event list at all.
+ */
+public class TimingWheel
+{
+    private final EventList mEvents;
+    private final double mTickLength;
+    private final TimerHandle[] mSlots;
+    private final int mMask;
+    private long mTick;                     // The next tick to be expired
+    private int mSize;                      // Timers still on the wheel
+    private double mEarliest;               // Their earliest deadline; NaN if unknown
+
+    public TimingWheel(EventList events, double tickLength, int slots)
+    {
+        if (!(tickLength > 0.0))
+        {
+            throw new IllegalArgumentException("tick length must be > 0");
+        }
+        if (slots < 1 || Integer.bitCount(slots) != 1)
+        {
+            throw new IllegalArgumentException("slots must be a power of two");
+        }
+
+        mEvents = events;
+        mTickLength = tickLength;
+        mSlots = new TimerHandle[slots];
+        mMask = slots - 1;
+        mTick = 0;
+        mSize = 0;
+        mEarliest = Double.POSITIVE_INFINITY;
+    }
+
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * Treats every tick before the one containing "time" as expired.  Used
+     * to position a new wheel when a run is restored.
+     */
+    public void setTime(double time)
+    {
+        mTick = Math.max(mTick, tickOf(time));
+    }
+
+    public TimerHandle schedule(int entity, int tag, double deadline)
+    {
+        TimerHandle timer = new TimerHandle(entity, tag, deadline);
+        timer.mTick = tickOf(deadline);
+
+        // A deadline in a tick already expired goes straight to the queue
+        if (timer.mTick < mTick)
+        {
+            queue(timer);
+            return timer;
+        }
+
+        int slot = (int)(timer.mTick & mMask);
+        timer.mState = TimerHandle.WAITING;
+        timer.mPrevious = null;
+        timer.mNext = mSlots[slot];
+        if (mSlots[slot] != null)
+        {
+            mSlots[slot].mPrevious = timer;
+        }
+        mSlots[slot] = timer;
+        mSize++;
+        mEarliest = Math.min(mEarliest, deadline);
+
+        return timer;
+    }
+
+    /**
+     * Cancels "timer".  Returns false if it had already fired or been
+     * cancelled.
+     */
+    public boolean cancel(TimerHandle timer)
+    {
+        if (timer.mState == TimerHandle.WAITING)
+        {
+            unlink(timer);
+        }
+        else if (timer.mState != TimerHandle.QUEUED)
+        {
+            return false;
+        }
+
+        // A queued timer stays in the event list; the engine skips it
+        timer.mState = TimerHandle.CANCELLED;
+        return true;
+    }
+
+    /**
+     * Moves every timer due in a tick that starts at or before "until" to
+     * the event list.  With an infinite "until" the earliest timers are
+     * moved, so an otherwise empty run still reaches them.
+     */
+    public void advance(double until)
+    {
+        if (mSize == 0)
+        {
+            if (until != Double.POSITIVE_INFINITY)
+            {
+                mTick = Math.max(mTick, tickOf(until) + 1);
+            }
+            return;
+        }
+
+        long last = until == Double.POSITIVE_INFINITY ? tickOf(earliestDeadline())
+                                                       : tickOf(until);
+        if (last < mTick)
+        {
+            return;
+        }
+
+        // A long quiet stretch costs one pass over the ring, not one step
+        // per tick
+        if (last - mTick >= mSlots.length)
+        {
+            for (int slot = 0; slot < mSlots.length; slot++)
+            {
+                expire(slot, last);
+            }
+        }
+        else
+        {
+            for (long tick = mTick; tick <= last && mSize > 0; tick++)
+            {
+                expire((int)(tick & mMask), tick);
+            }
+        }
+
+        mTick = last + 1;
+    }
+
+    /**
+     * Called by the engine when the event for a queued timer comes up.
+     * Returns false if the timer was cancelled in the meantime.
+     */
+    public boolean fire(TimerHandle timer)
+    {
+        if (timer.mState != TimerHandle.QUEUED)
+        {
+            return false;
+        }
+
+        timer.mState = TimerHandle.FIRED;
+        return true;
+    }
+
+    /**
+     * The earliest deadline of the timers still on the wheel, or infinity
+     * if there are none.  Kept as timers are started, and only looked up
+     * again once the earliest one leaves the wheel.
+     */
+    public double earliestDeadline()
+    {
+        if (Double.isNaN(mEarliest))
+        {
+            mEarliest = findEarliest();
+        }
+        return mEarliest;
+    }
+
+    /* Adds the timers still on the wheel to "timers" */
+    public void collect(List<TimerHandle> timers)
+    {
+        for (TimerHandle head : mSlots)
+        {
+            for (TimerHandle timer = head; timer != null; timer = timer.mNext)
+            {
+                timers.add(timer);
+            }
+        }
+    }
+
+    /* Queue the timers in "slot" that are due by tick "last" */
+    private void expire(int slot, long last)
+    {
+        TimerHandle timer = mSlots[slot];
+        while (timer != null)
+        {
+            TimerHandle next = timer.mNext;
+            if (timer.mTick <= last)
+            {
+                unlink(timer);
+                queue(timer);
+            }
+            timer = next;
+        }
+    }
+
+    private void queue(TimerHandle timer)
+    {
+        timer.mState = TimerHandle.QUEUED;
+
+        Event event = new Event(timer.getDeadline(),
+                                NetworkSimulator.TIMERINTERRUPT,
+                                timer.getEntity());
+        event.setTimer(timer);
+        mEvents.add(event);
+    }
+
+    private void unlink(TimerHandle timer)
+    {
+        if (timer.mPrevious != null)
+        {
+            timer.mPrevious.mNext = timer.mNext;
+        }
+        else
+        {
+            mSlots[(int)(timer.mTick & mMask)] = timer.mNext;
+        }
+        if (timer.mNext != null)
+        {
+            timer.mNext.mPrevious = timer.mPrevious;
+        }
+
+        timer.mPrevious = null;
+        timer.mNext = null;
+        mSize--;
+        if (timer.getDeadline() <= mEarliest)
+        {
+            mEarliest = Double.NaN;
+        }
+    }
+
+    /* Walk the ring from the next tick: the first tick that holds a timer
+       holds the earliest, so this stops as soon as it finds one.  Only
+       when every timer is more than a revolution away are all searched. */
+    private double findEarliest()
+    {
+        double earliest = Double.POSITIVE_INFINITY;
+        if (mSize == 0)
+        {
+            return earliest;
+        }
+
+        for (long tick = mTick; tick < mTick + mSlots.length; tick++)
+        {
+            for (TimerHandle timer = mSlots[(int)(tick & mMask)]; timer != null;
+                 timer = timer.mNext)
+            {
+                if (timer.mTick == tick)
+                {
+                    earliest = Math.min(earliest, timer.getDeadline());
+                }
+            }
+            if (earliest != Double.POSITIVE_INFINITY)
+            {
+                return earliest;
+            }
+        }
+
+        for (TimerHandle head : mSlots)
+        {
+            for (TimerHandle timer = head; timer != null; timer = timer.mNext)
+            {
+                earliest = Math.min(earliest, timer.getDeadline());
+            }
+        }
+        return earliest;
+    }
+
+    private long tickOf(double time)
+    {
+        return (long)Math.floor(time / mTickLength);
+    }
+}
@@ -0,0 +1,346 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A network of router nodes between A and B.  Nodes are numbered from 0;
+ * each endpoint is attached to one node, and every link added joins two
+ * nodes with a Link in each direction, with its own loss, corruption,
+ * delay and queue limit.
+ *
+ * Routes are static: build() gives every node the link toward each
+ * endpoint on a path with the fewest hops, by a breadth-first search from
+ * that endpoint.  Routers store and forward: a packet crosses one link,
+ * waits at the next node for its FORWARD event, and only then enters the
+ * next link.
+ *
+ * Everything is kept in flat arrays indexed by node or by directed link,
+ * 2k and 2k + 1 for the two directions of link k, so that topologies of
+ * thousands of nodes build in linear time and route in constant time.
+ * A link's Link, with its random streams, is only created when the first
+ * packet crosses it; its streams depend on nothing but its number.
+ */
+public class Topology implements Checkpointable
+{
+    // Stream numbers of topology links start past those of any path, so
+    // that they never draw what a direct channel does
+    private static final int FIRST_STREAM_PATH = 1 << 16;
+
+    private int mNodes;
+    private int mLinks;                     // Undirected links added so far
+    private int[] mFrom = new int[16];      // Per directed link
+    private int[] mTo = new int[16];
+    private double[] mLoss = new double[8]; // Per undirected link
+    private double[] mCorrupt = new double[8];
+    private double[] mMinDelay = new double[8];
+    private double[] mMaxDelay = new double[8];
+    private int[] mQueueLimit = new int[8];
+    private final int[] mAttached = { -1, -1 };
+
+    // Filled in by build()
+    private long mSeed;
+    private Link[] mChannels;               // Per directed link; null until used
+    private int[][] mNextHop;               // [endpoint][node]: directed link, or -1
+    private long[] mForwarded;              // Per node
+
+    public Topology(int nodes)
+    {
+        if (nodes < 1)
+        {
+            throw new IllegalArgumentException("a topology needs a node");
+        }
+
+        mNodes = nodes;
+    }
+
+    public int getNodeCount()
+    {
+        return mNodes;
+    }
+
+    public int getLinkCount()
+    {
+        return mLinks;
+    }
+
+    /**
+     * Joins nodes "u" and "v" with a link in each direction and returns
+     * its number.  A queue limit of 0 queues without limit.
+     */
+    public int addLink(int u, int v, double loss, double corrupt,
+                       double minDelay, double maxDelay, int queueLimit)
+    {
+        checkNode(u);
+        checkNode(v);
+        if (u == v)
+        {
+            throw new IllegalArgumentException("a link needs two nodes");
+        }
+        if (!(minDelay >= 0.0) || !(maxDelay >= minDelay) || queueLimit < 0)
+        {
+            throw new IllegalArgumentException("link delays must satisfy " +
+                    "0 <= min <= max and queue limits must be >= 0");
+        }
+
+        if (mLinks == mLoss.length)
+        {
+            int capacity = 2 * mLinks;
+            mFrom = Arrays.copyOf(mFrom, 2 * capacity);
+            mTo = Arrays.copyOf(mTo, 2 * capacity);
+            mLoss = Arrays.copyOf(mLoss, capacity);
+            mCorrupt = Arrays.copyOf(mCorrupt, capacity);
+            mMinDelay = Arrays.copyOf(mMinDelay, capacity);
+            mMaxDelay = Arrays.copyOf(mMaxDelay, capacity);
+            mQueueLimit = Arrays.copyOf(mQueueLimit, capacity);
+        }
+
+        int link = mLinks++;
+        mFrom[2 * link] = u;
+        mTo[2 * link] = v;
+        mFrom[2 * link + 1] = v;
+        mTo[2 * link + 1] = u;
+        mLoss[link] = loss;
+        mCorrupt[link] = corrupt;
+        mMinDelay[link] = minDelay;
+        mMaxDelay[link] = maxDelay;
+        mQueueLimit[link] = queueLimit;
+
+        return link;
+    }
+
+    // Connects endpoint A or B to "node"
+    public void attach(int entity, int node)
+    {
+        checkNode(node);
+        mAttached[entity] = node;
+    }
+
+    public int getNode(int entity)
+    {
+        return mAttached[entity];
+    }
+
+    /**
+     * Seeds the links' random streams with "seed" and computes the routes.
+     * The engine calls this when the topology is installed.
+     */
+    public void build(long seed)
+    {
+        if (mAttached[0] < 0 || mAttached[1] < 0)
+        {
+            throw new IllegalStateException("both endpoints must be attached");
+        }
+
+        mSeed = seed;
+        mChannels = new Link[2 * mLinks];
+        mForwarded = new long[mNodes];
+        route();
+    }
+
+    /* Breadth-first search from each endpoint over the links in adjacency
+       (compressed row) form; a node's next hop is the link it was reached
+       over, reversed */
+    private void route()
+    {
+        int[] start = new int[mNodes + 1];
+        for (int i = 0; i < 2 * mLinks; i++)
+        {
+            start[mFrom[i] + 1]++;
+        }
+        for (int node = 0; node < mNodes; node++)
+        {
+            start[node + 1] += start[node];
+        }
+        int[] out = new int[2 * mLinks];
+        int[] fill = Arrays.copyOf(start, mNodes);
+        for (int i = 0; i < 2 * mLinks; i++)
+        {
+            out[fill[mFrom[i]]++] = i;
+        }
+
+        mNextHop = new int[2][mNodes];
+        int[] queue = new int[mNodes];
+        for (int entity = 0; entity < 2; entity++)
+        {
+            int[] next = mNextHop[entity];
+            Arrays.fill(next, -1);
+            int root = mAttached[entity];
+            boolean[] seen = new boolean[mNodes];
+            seen[root] = true;
+
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+            while (head < tail)
+            {
+                int node = queue[head++];
+                for (int i = start[node]; i < start[node + 1]; i++)
+                {
+                    int neighbour = mTo[out[i]];
+                    if (!seen[neighbour])
+                    {
+                        seen[neighbour] = true;
+                        next[neighbour] = out[i] ^ 1;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The directed link a packet at "node" takes toward endpoint "entity",
+     * or -1 if there is no route.
+     */
+    public int nextHop(int node, int entity)
+    {
+        return mNextHop[entity][node];
+    }
+
+    public Link getChannel(int directedLink)
+    {
+        if (mChannels[directedLink] == null)
+        {
+            int link = directedLink / 2;
+            mChannels[directedLink] = new Link(mSeed, 0,
+                    FIRST_STREAM_PATH + directedLink, mLoss[link],
+                    mCorrupt[link], mMinDelay[link], mMaxDelay[link]);
+            mChannels[directedLink].setQueueLimit(mQueueLimit[link]);
+        }
+
+        return mChannels[directedLink];
+    }
+
+    // The node at the far end of a directed link
+    public int getTo(int directedLink)
+    {
+        return mTo[directedLink];
+    }
+
+    // Hops from "node" to endpoint "entity", or -1 if there is no route
+    public int getHops(int node, int entity)
+    {
+        int hops = 0;
+        while (node != mAttached[entity])
+        {
+            int link = mNextHop[entity][node];
+            if (link < 0)
+            {
+                return -1;
+            }
+            node = mTo[link];
+            hops++;
+        }
+
+        return hops;
+    }
+
+    public void forwarded(int node)
+    {
+        mForwarded[node]++;
+    }
+
+    public long getForwarded()
+    {
+        long forwarded = 0;
+        for (long count : mForwarded)
+        {
+            forwarded += count;
+        }
+
+        return forwarded;
+    }
+
+    public void report(Statistics statistics)
+    {
+        double queueing = 0.0;
+        long queued = 0;
+        long queueDrops = 0;
+        for (Link channel : mChannels)
+        {
+            if (channel == null)
+            {
+                continue;
+            }
+            queueing += channel.getQueueingDelay();
+            queued += channel.getQueued();
+            queueDrops += channel.getQueueDrops();
+        }
+
+        statistics.set("Routers", mNodes);
+        statistics.set("Hops from A to B", getHops(mAttached[0], 1));
+        statistics.set("Packets forwarded by routers", getForwarded());
+        statistics.set("Average queueing delay per hop",
+                       queued > 0 ? queueing / queued : 0.0);
+        statistics.set("Packets dropped at full router queues", queueDrops);
+    }
+
+    private void checkNode(int node)
+    {
+        if (node < 0 || node >= mNodes)
+        {
+            throw new IllegalArgumentException("no node " + node);
+        }
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mNodes);
+        out.writeInt(mLinks);
+        for (int link = 0; link < mLinks; link++)
+        {
+            out.writeInt(mFrom[2 * link]);
+            out.writeInt(mTo[2 * link]);
+            out.writeDouble(mLoss[link]);
+            out.writeDouble(mCorrupt[link]);
+            out.writeDouble(mMinDelay[link]);
+            out.writeDouble(mMaxDelay[link]);
+            out.writeInt(mQueueLimit[link]);
+        }
+        out.writeInt(mAttached[0]);
+        out.writeInt(mAttached[1]);
+
+        out.writeLong(mSeed);
+        for (Link channel : mChannels)
+        {
+            out.writeBoolean(channel != null);
+            if (channel != null)
+            {
+                channel.save(out);
+            }
+        }
+        for (long count : mForwarded)
+        {
+            out.writeLong(count);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mNodes = in.readInt();
+        mLinks = 0;
+        int links = in.readInt();
+        for (int link = 0; link < links; link++)
+        {
+            addLink(in.readInt(), in.readInt(), in.readDouble(),
+                    in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readInt());
+        }
+        mAttached[0] = in.readInt();
+        mAttached[1] = in.readInt();
+
+        build(in.readLong());
+        for (int i = 0; i < mChannels.length; i++)
+        {
+            if (in.readBoolean())
+            {
+                getChannel(i).restore(in);
+            }
+        }
+        for (int node = 0; node < mNodes; node++)
+        {
+            mForwarded[node] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Runs Go-Back-N across routed topologies.  First a chain of store and
+ * forward routers of growing length, each hop with its own loss and
+ * queue limit, to show what every extra hop costs; then random meshes of
+ * thousands of routers, to show that building the routes and forwarding
+ * packets stay cheap as the network grows.
+ *
+ * Usage: java TopologyBenchmark [messages] [delay] [hop loss] [queue limit]
+ *                               [seed]
+ */
+public class TopologyBenchmark
+{
+    private static final int[] CHAINS = { 1, 2, 4, 8, 16 };
+    private static final int[] MESHES = { 1000, 10000, 100000 };
+    private static final int MESH_DEGREE = 3;   // Extra links per node beyond the spanning tree
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 2000;
+        double delay = argv.length > 1 ? Double.parseDouble(argv[1]) : 10.0;
+        double loss = argv.length > 2 ? Double.parseDouble(argv[2]) : 0.01;
+        int limit = argv.length > 3 ? Integer.parseInt(argv[3]) : 8;
+        long seed = argv.length > 4 ? Long.parseLong(argv[4]) : 1L;
+
+        Scenario scenario = new Scenario(messages, 0.0, 0.0, delay);
+        System.out.println(scenario + " hop-loss=" + loss + " queue=" + limit +
+                           " seed=" + seed);
+        System.out.println("   routers  hops  msgs/time  retransmissions" +
+                           "  forwarded  queue-drops  build(ms)  run(ms)");
+
+        // Each hop takes a share of the direct channel's delay, so only
+        // the hops' own losses and queues set the chains apart
+        for (int hops : CHAINS)
+        {
+            Topology chain = new Topology(hops + 1);
+            for (int node = 0; node < hops; node++)
+            {
+                chain.addLink(node, node + 1, loss, loss,
+                              1.0 / hops, 10.0 / hops, limit);
+            }
+            chain.attach(NetworkSimulator.A, 0);
+            chain.attach(NetworkSimulator.B, hops);
+            run(scenario, chain, seed);
+        }
+
+        // A random spanning tree keeps every mesh connected; extra random
+        // links give it shortcuts
+        for (int nodes : MESHES)
+        {
+            RandomStream rand = new RandomStream(seed, nodes);
+            Topology mesh = new Topology(nodes);
+            for (int node = 1; node < nodes; node++)
+            {
+                mesh.addLink(node, (int)(rand.nextDouble() * node), loss, loss,
+                             0.1, 1.0, limit);
+            }
+            for (int i = 0; i < MESH_DEGREE * nodes; i++)
+            {
+                int u = (int)(rand.nextDouble() * nodes);
+                int v = (int)(rand.nextDouble() * nodes);
+                if (u != v)
+                {
+                    mesh.addLink(u, v, loss, loss, 0.1, 1.0, limit);
+                }
+            }
+            mesh.attach(NetworkSimulator.A, 0);
+            mesh.attach(NetworkSimulator.B, nodes - 1);
+            run(scenario, mesh, seed);
+        }
+    }
+
+    private static void run(Scenario scenario, Topology topology, long seed)
+    {
+        NetworkSimulator simulator = scenario.create(seed);
+
+        long start = System.nanoTime();
+        simulator.setTopology(topology);
+        long built = System.nanoTime();
+        simulator.runSimulator();
+        long finished = System.nanoTime();
+
+        Statistics result = simulator.getStatistics();
+        System.out.println(String.format("%10d  %4d  %9.4f  %15d  %9d  %11d  %9.1f  %7.1f",
+                topology.getNodeCount(),
+                (long)result.get("Hops from A to B"),
+                result.get("Throughput (messages per time unit)"),
+                (long)result.get("Number of re-transmissions"),
+                (long)result.get("Packets forwarded by routers"),
+                (long)result.get("Packets dropped at full router queues"),
+                (built - start) / 1e6, (finished - built) / 1e6));
+    }
+}
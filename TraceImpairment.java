@@ -0,0 +1,130 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Replays a recorded pattern of losses, one packet per character: '.' or
+ * '0' for a packet that got through, 'x' or '1' for one that was lost and
+ * 'c' for one that was corrupted.  Whitespace is ignored and '#' starts a
+ * comment that runs to the end of the line.  The pattern starts over when
+ * it runs out, so a short trace describes a periodic channel.
+ *
+ * Loss patterns are a byte a packet, small enough to load whole.
+ */
+public class TraceImpairment implements Impairment
+{
+    private static final byte DELIVERED = 0;
+    private static final byte LOST = 1;
+    private static final byte CORRUPTED = 2;
+
+    private final byte[] mPattern;
+    private long mPosition;                 // Packets replayed so far
+    private byte mCurrent;
+
+    public TraceImpairment(String path) throws IOException
+    {
+        this(parse(new String(Files.readAllBytes(Paths.get(path)),
+                              StandardCharsets.US_ASCII), path));
+    }
+
+    private TraceImpairment(byte[] pattern)
+    {
+        mPattern = pattern;
+    }
+
+    private static byte[] parse(String text, String path)
+    {
+        byte[] pattern = new byte[text.length()];
+        int length = 0;
+        boolean comment = false;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (comment)
+            {
+                comment = c != '\n';
+            }
+            else if (c == '#')
+            {
+                comment = true;
+            }
+            else if (c == '.' || c == '0')
+            {
+                pattern[length++] = DELIVERED;
+            }
+            else if (c == 'x' || c == '1')
+            {
+                pattern[length++] = LOST;
+            }
+            else if (c == 'c')
+            {
+                pattern[length++] = CORRUPTED;
+            }
+            else if (!Character.isWhitespace(c))
+            {
+                throw new IllegalArgumentException(path + ": unexpected '" +
+                                                   c + "' in loss trace");
+            }
+        }
+
+        if (length == 0)
+        {
+            throw new IllegalArgumentException(path + " holds no packets");
+        }
+
+        return Arrays.copyOf(pattern, length);
+    }
+
+    public void next(double time, RandomGenerator rand)
+    {
+        mCurrent = mPattern[(int)(mPosition++ % mPattern.length)];
+    }
+
+    public double getLoss(double loss)
+    {
+        return mCurrent == LOST ? 1.0 : 0.0;
+    }
+
+    public double getCorrupt(double corrupt)
+    {
+        return mCurrent == CORRUPTED ? 1.0 : 0.0;
+    }
+
+    public int getLength()
+    {
+        return mPattern.length;
+    }
+
+    public long getPosition()
+    {
+        return mPosition;
+    }
+
+    // Shares the pattern, which never changes
+    public Impairment copy()
+    {
+        return new TraceImpairment(mPattern);
+    }
+
+    public String toString()
+    {
+        return "trace(" + mPattern.length + " packets)";
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeLong(mPosition);
+        out.writeByte(mCurrent);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mPosition = in.readLong();
+        mCurrent = in.readByte();
+    }
+}
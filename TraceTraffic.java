@@ -0,0 +1,202 @@
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.random.RandomGenerator;
+
+/**
+ * Replays arrivals recorded in a binary trace file.  Each record is a
+ * big-endian double arrival time followed by an int message size.  The file
+ * is memory-mapped a window at a time, so traces larger than the heap (or
+ * than 2GB) stream through without being loaded.  Every message must be
+ * at least one byte long.
+ *
+ * To convert a text trace of "time size" lines:
+ *     java TraceTraffic trace.txt trace.bin
+ */
+public class TraceTraffic implements TrafficSource
+{
+    public static final int RECORD_SIZE = 12;
+    private static final long WINDOW_RECORDS = 1L << 22;
+
+    private final FileChannel mChannel;
+    private final long mRecords;
+    private final int mMaxSize;
+    private MappedByteBuffer mWindow;
+    private long mWindowStart;              // First record in the mapped window
+    private long mPosition;                 // Next record to read
+    private double mLastTime;               // Arrival time of the last record read
+    private int mPendingSize;               // Size of the arrival scheduled last
+
+    public TraceTraffic(String path) throws IOException
+    {
+        mChannel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        mRecords = mChannel.size() / RECORD_SIZE;
+        mWindowStart = -1;
+
+        int maxSize = 0;
+        for (long r = 0; r < mRecords; r++)
+        {
+            map(r);
+            int size = mWindow.getInt(offset(r) + 8);
+            if (size < 1)
+            {
+                mChannel.close();
+                throw new IOException("trace record " + r + " has size " +
+                                      size + "; sizes must be >= 1");
+            }
+            maxSize = Math.max(maxSize, size);
+        }
+        mMaxSize = maxSize;
+
+        mPosition = 0;
+        mLastTime = 0.0;
+    }
+
+    public double nextGap(RandomGenerator rand)
+    {
+        if (mPosition >= mRecords)
+        {
+            return -1.0;
+        }
+
+        map(mPosition);
+        double time = mWindow.getDouble(offset(mPosition));
+        mPendingSize = mWindow.getInt(offset(mPosition) + 8);
+        mPosition++;
+
+        double gap = Math.max(0.0, time - mLastTime);
+        mLastTime = time;
+        return gap;
+    }
+
+    public int nextSize(RandomGenerator rand)
+    {
+        return mPendingSize;
+    }
+
+    public int getMaxSize()
+    {
+        return mMaxSize;
+    }
+
+    public long getPosition()
+    {
+        return mPosition;
+    }
+
+    /**
+     * Rewinds or advances the replay so that "position" is the next record
+     * read.  Used when restoring a checkpoint.
+     */
+    public void setPosition(long position)
+    {
+        mPosition = position;
+        mLastTime = 0.0;
+        mPendingSize = 0;
+
+        if (position > 0)
+        {
+            map(position - 1);
+            mLastTime = mWindow.getDouble(offset(position - 1));
+            mPendingSize = mWindow.getInt(offset(position - 1) + 8);
+        }
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeLong(mPosition);
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        setPosition(in.readLong());
+    }
+
+    public void close() throws IOException
+    {
+        mChannel.close();
+    }
+
+    /* Make sure "record" is inside the mapped window */
+    private void map(long record)
+    {
+        if (mWindow != null && record >= mWindowStart &&
+            record < mWindowStart + WINDOW_RECORDS)
+        {
+            return;
+        }
+
+        mWindowStart = record - (record % WINDOW_RECORDS);
+        long records = Math.min(WINDOW_RECORDS, mRecords - mWindowStart);
+
+        try
+        {
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY,
+                                   mWindowStart * RECORD_SIZE,
+                                   records * RECORD_SIZE);
+        }
+        catch (IOException ioe)
+        {
+            throw new IllegalStateException("Unable to map trace: " +
+                                            ioe.getMessage());
+        }
+    }
+
+    private int offset(long record)
+    {
+        return (int)((record - mWindowStart) * RECORD_SIZE);
+    }
+
+    public final static void main(String[] argv) throws IOException
+    {
+        if (argv.length != 2)
+        {
+            System.out.println("Usage: java TraceTraffic <text trace> <binary trace>");
+            System.exit(1);
+        }
+
+        BufferedReader in = new BufferedReader(new FileReader(argv[0]));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                   new FileOutputStream(argv[1])));
+        long records = 0;
+        String line;
+
+        while ((line = in.readLine()) != null)
+        {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+            int size = Integer.parseInt(fields[1]);
+            if (size < 1)
+            {
+                // No half-written trace is left behind
+                in.close();
+                out.close();
+                new File(argv[1]).delete();
+                throw new IOException("trace record " + records + " has size " +
+                                      size + "; sizes must be >= 1");
+            }
+            out.writeDouble(Double.parseDouble(fields[0]));
+            out.writeInt(size);
+            records++;
+        }
+
+        in.close();
+        out.close();
+        System.out.println("Wrote " + records + " records to " + argv[1]);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Runs Go-Back-N against bulk cross traffic that, together with the
+ * protocol, offers its links more than they carry.  First with everything
+ * in one FIFO queue, then with deficit round robin giving the protocol's
+ * class a growing share of link time.  Data and ACKs travel on links of
+ * their own directions, so the protocol needs only the one class; the
+ * bulk flows load both directions.
+ *
+ * Usage: java TrafficClassBenchmark [messages] [delay] [cross rate]
+ *                                   [queue limit] [seed]
+ */
+public class TrafficClassBenchmark
+{
+    private static final double[] WEIGHTS = { 1.0, 2.0, 4.0, 8.0 };
+
+    public final static void main(String[] argv)
+    {
+        long messages = argv.length > 0 ? Long.parseLong(argv[0]) : 2000;
+        double delay = argv.length > 1 ? Double.parseDouble(argv[1]) : 20.0;
+        double rate = argv.length > 2 ? Double.parseDouble(argv[2]) : 0.15;
+        int limit = argv.length > 3 ? Integer.parseInt(argv[3]) : 32;
+        long seed = argv.length > 4 ? Long.parseLong(argv[4]) : 1L;
+
+        Scenario scenario = new Scenario(messages, 0.01, 0.01, delay);
+        System.out.println(scenario + " cross=" + rate + " queue=" + limit +
+                           " seed=" + seed);
+        System.out.println("scheduling          msgs/time  latency(p99)" +
+                           "  link-latency  bulk-bytes/time  bulk-drops");
+
+        // One class is a FIFO queue shared by everything
+        NetworkSimulator fifo = scenario.create(seed);
+        fifo.addTrafficClass("shared", 1.0, limit);
+        addBulk(fifo, 0, rate);
+        run("fifo", fifo, "shared", "shared");
+
+        for (double weight : WEIGHTS)
+        {
+            NetworkSimulator drr = scenario.create(seed);
+            drr.addTrafficClass("protocol", weight, limit);
+            int bulk = drr.addTrafficClass("bulk", 1.0, limit);
+            addBulk(drr, bulk, rate);
+            run("drr " + weight + ":1", drr, "protocol", "bulk");
+        }
+    }
+
+    private static void addBulk(NetworkSimulator simulator, int trafficClass,
+                                double rate)
+    {
+        simulator.addCrossTraffic(NetworkSimulator.B, trafficClass, rate);
+        simulator.addCrossTraffic(NetworkSimulator.A, trafficClass, rate);
+    }
+
+    private static void run(String label, NetworkSimulator simulator,
+                            String protocol, String bulk)
+    {
+        simulator.runSimulator();
+
+        Statistics result = simulator.getStatistics();
+        System.out.println(String.format("%-18s  %9.4f  %12.2f  %12.2f  %15.4f  %10d",
+                label,
+                result.get("Throughput (messages per time unit)"),
+                result.get("Message latency p99"),
+                result.get("Class " + protocol + " average latency"),
+                result.get("Class " + bulk + " throughput (bytes per time unit)"),
+                (long)result.get("Class " + bulk + " packets dropped at a full queue")));
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Generates the arrival process of messages from layer 5.  The engine asks
+ * for the gap to the next arrival when it schedules it, and for the size of
+ * a message when that arrival fires.  Sources with state of their own
+ * save it in checkpoints.
+ */
+public interface TrafficSource extends Checkpointable
+{
+    /**
+     * Time until the next message arrives, or a negative value if the source
+     * has no more messages.
+     */
+    public double nextGap(RandomGenerator rand);
+
+    /**
+     * Size in characters of the message that is arriving now.
+     */
+    public int nextSize(RandomGenerator rand);
+
+    /**
+     * The largest message this source will produce.
+     */
+    public int getMaxSize();
+}
@@ -0,0 +1,42 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/**
+ * The original arrival process: gaps uniform on [0, 2 * mean].
+ */
+public class UniformTraffic implements TrafficSource
+{
+    private final double mMean;
+    private final int mSize;
+
+    public UniformTraffic(double mean, int size)
+    {
+        mMean = mean;
+        mSize = size;
+    }
+
+    public double nextGap(RandomGenerator rand)
+    {
+        return 2 * mMean * rand.nextDouble();
+    }
+
+    public int nextSize(RandomGenerator rand)
+    {
+        return mSize;
+    }
+
+    public int getMaxSize()
+    {
+        return mSize;
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A parity packet protecting a block of up to MAX_BLOCK consecutive data
+ * packets: the XOR of their payloads, zero padded to the longest, with the
+ * XOR of their lengths.  Any one packet of the block can be rebuilt from
+ * the parity and the others.
+ *
+ * A parity packet carries the sequence number of the first packet of its
+ * block, and an acknum of FLAG, the block size and the length XOR, so the
+ * checksum protects all three.  The same object both builds a parity
+ * packet at the sender and rebuilds a lost packet at the receiver.
+ */
+public class XorParity implements Checkpointable
+{
+    public static final int FLAG = 1 << 30;
+    public static final int MAX_BLOCK = 255;
+
+    private final char[] mChars = new char[NetworkSimulator.MAXDATASIZE];
+    private int mFirst;                     // Sequence number of the first packet
+    private int mCount;                     // Payloads folded in so far
+    private int mWidth;                     // Longest payload folded in
+    private int mLengths;                   // XOR of the payload lengths
+
+    public static boolean isParity(Packet packet)
+    {
+        return (packet.getAcknum() & FLAG) != 0;
+    }
+
+    /**
+     * Starts a new block at the sender.
+     */
+    public void start(int first)
+    {
+        mFirst = first;
+        mCount = 0;
+        mWidth = 0;
+        mLengths = 0;
+        for (int i = 0; i < mChars.length; i++)
+        {
+            mChars[i] = 0;
+        }
+    }
+
+    /**
+     * Starts rebuilding from a received parity packet.
+     */
+    public void load(Packet parity)
+    {
+        start(parity.getSeqnum());
+        add(parity.getPayload());
+        mCount = (parity.getAcknum() >>> 8) & MAX_BLOCK;
+        mLengths = parity.getAcknum() & 0xff;
+    }
+
+    public void add(String payload)
+    {
+        int length = Math.min(payload.length(), mChars.length);
+        for (int i = 0; i < length; i++)
+        {
+            mChars[i] ^= payload.charAt(i);
+        }
+
+        mWidth = Math.max(mWidth, length);
+        mLengths ^= length;
+        mCount++;
+    }
+
+    public int getFirst()
+    {
+        return mFirst;
+    }
+
+    // Packets in the block
+    public int getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * The parity packet for the payloads added since start().
+     */
+    public Packet create(PacketCodec codec)
+    {
+        return codec.create(mFirst, FLAG | (mCount << 8) | mLengths,
+                            new String(mChars, 0, mWidth));
+    }
+
+    /**
+     * After load() and add() of every other packet of the block, the one
+     * that is missing.
+     */
+    public String getRecovered()
+    {
+        return new String(mChars, 0, Math.min(mLengths, mChars.length));
+    }
+
+    public void save(DataOutput out) throws IOException
+    {
+        out.writeInt(mFirst);
+        out.writeInt(mCount);
+        out.writeInt(mWidth);
+        out.writeInt(mLengths);
+        for (char c : mChars)
+        {
+            out.writeChar(c);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException
+    {
+        mFirst = in.readInt();
+        mCount = in.readInt();
+        mWidth = in.readInt();
+        mLengths = in.readInt();
+        for (int i = 0; i < mChars.length; i++)
+        {
+            mChars[i] = in.readChar();
+        }
+    }
+}